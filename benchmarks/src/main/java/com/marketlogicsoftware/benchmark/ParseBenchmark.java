@@ -0,0 +1,66 @@
+package com.marketlogicsoftware.benchmark;
+
+import com.marketlogicsoftware.Booking;
+import com.marketlogicsoftware.BookingParser;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parsing one record with Booking.fromString and with BookingParser.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ParseBenchmark {
+
+  private static final int RECORDS = 1024;
+
+  private Workload workload;
+  private BookingParser parser;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    workload = new Workload(RECORDS / 8, 8, 0.1, 0.05, 42);
+    parser = new BookingParser();
+  }
+
+  @Benchmark
+  public Booking fromString() {
+    int index = nextIndex();
+    return Booking.fromString(workload.bookingLine(index), workload.scheduleLine(index));
+  }
+
+  @Benchmark
+  public Booking parserToBooking() {
+    int index = nextIndex();
+    parser.parse(workload.bookingLine(index), workload.scheduleLine(index));
+    return parser.toBooking();
+  }
+
+  @Benchmark
+  public void parserFieldsOnly(Blackhole blackhole) {
+    int index = nextIndex();
+    parser.parse(workload.bookingLine(index), workload.scheduleLine(index));
+    blackhole.consume(parser.getStartMinute());
+    blackhole.consume(parser.getEmployeeIndex());
+  }
+
+  private int nextIndex() {
+    next = (next + 1) & (RECORDS - 1);
+    return next;
+  }
+}
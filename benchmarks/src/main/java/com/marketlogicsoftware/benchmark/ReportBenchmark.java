@@ -0,0 +1,79 @@
+package com.marketlogicsoftware.benchmark;
+
+import com.marketlogicsoftware.Booking;
+import com.marketlogicsoftware.OpenHoursRule;
+import com.marketlogicsoftware.Scheduler;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+import org.joda.time.LocalDate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Reading bookings back from a filled Scheduler.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReportBenchmark {
+
+  @Param({"3650"})
+  public int days;
+
+  @Param({"8"})
+  public int density;
+
+  private Scheduler scheduler;
+  private OutputStream sink;
+
+  @Setup
+  public void setUp() {
+    scheduler = Scheduler.withRules(OpenHoursRule.fromString(Workload.OPEN_HOURS));
+    new Workload(days, density, 0.1, 0.0, 42).bookings().forEach(scheduler::bookTry);
+    sink = new OutputStream() {
+      @Override
+      public void write(int b) {
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) {
+      }
+    };
+  }
+
+  @Benchmark
+  public void getBookingsGrouped(Blackhole blackhole) {
+    for (Entry<LocalDate, Collection<Booking>> day : scheduler.getBookingsGrouped().entrySet()) {
+      blackhole.consume(day.getKey());
+      for (Booking booking : day.getValue()) {
+        blackhole.consume(booking);
+      }
+    }
+  }
+
+  @Benchmark
+  public String output() {
+    return scheduler.output();
+  }
+
+  @Benchmark
+  public void outputStreamed() throws IOException {
+    scheduler.output(sink);
+  }
+}
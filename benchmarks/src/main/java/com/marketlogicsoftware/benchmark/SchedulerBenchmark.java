@@ -0,0 +1,75 @@
+package com.marketlogicsoftware.benchmark;
+
+import com.marketlogicsoftware.Booking;
+import com.marketlogicsoftware.OpenHoursRule;
+import com.marketlogicsoftware.Scheduler;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Booking a whole workload into an empty Scheduler, from Booking objects and from text.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SchedulerBenchmark {
+
+  @Param({"365"})
+  public int days;
+
+  @Param({"8", "32"})
+  public int density;
+
+  @Param({"0.1"})
+  public double conflictRatio;
+
+  @Param({"0.0", "0.2"})
+  public double collisionRatio;
+
+  private String text;
+  private List<Booking> bookings;
+
+  @Setup
+  public void setUp() {
+    Workload workload = new Workload(days, density, conflictRatio, collisionRatio, 42);
+    text = workload.text();
+    bookings = workload.bookings();
+  }
+
+  @Benchmark
+  public Scheduler bookTry() {
+    Scheduler scheduler = newScheduler();
+    for (Booking booking : bookings) {
+      scheduler.bookTry(booking);
+    }
+    return scheduler;
+  }
+
+  @Benchmark
+  public Scheduler bookAllInBookingOrder() throws IOException {
+    Scheduler scheduler = newScheduler();
+    scheduler.bookAllInBookingOrder(new BufferedReader(new StringReader(text)));
+    return scheduler;
+  }
+
+  private static Scheduler newScheduler() {
+    return Scheduler.withRules(OpenHoursRule.fromString(Workload.OPEN_HOURS));
+  }
+}
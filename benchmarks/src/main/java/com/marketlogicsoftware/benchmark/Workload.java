@@ -0,0 +1,80 @@
+package com.marketlogicsoftware.benchmark;
+
+import com.marketlogicsoftware.Booking;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.joda.time.DateTime;
+
+/**
+ * Synthetic input in the format of input.txt.
+ *
+ * Bookings are one hour long, between 09:00 and 17:00, so a day has room for 8 of them. Booking times increase
+ * through the input, which keeps it nearly sorted like real booking logs.
+ */
+public class Workload {
+
+  public static final String OPEN_HOURS = "0900 1730";
+  private static final int SLOTS_PER_DAY = 8;
+
+  private final List<String> bookingLines = new ArrayList<>();
+  private final List<String> scheduleLines = new ArrayList<>();
+
+  /**
+   * @param days number of days booked
+   * @param density bookings per day, everything above 8 always conflicts
+   * @param conflictRatio share of bookings targeting a slot already requested that day
+   * @param collisionRatio share of bookings made in the same second as the one before
+   * @param seed of the random generator, same seed gives same input
+   */
+  public Workload(int days, int density, double conflictRatio, double collisionRatio, long seed) {
+    Random random = new Random(seed);
+    DateTime firstDay = new DateTime(2015, 1, 1, 0, 0);
+    DateTime bookedTime = firstDay.minusDays(30);
+    for (int day = 0; day < days; day++) {
+      for (int booking = 0; booking < density; booking++) {
+        int slot = booking;
+        if (booking > 0 && (booking >= SLOTS_PER_DAY || random.nextDouble() < conflictRatio)) {
+          slot = random.nextInt(Math.min(booking, SLOTS_PER_DAY));
+        }
+        if (random.nextDouble() >= collisionRatio) {
+          bookedTime = bookedTime.plusSeconds(1 + random.nextInt(600));
+        }
+        DateTime start = firstDay.plusDays(day).plusHours(9 + slot);
+        bookingLines.add(bookedTime.toString("YYYY-MM-dd HH:mm:ss") + " EMP" + random.nextInt(1000));
+        scheduleLines.add(start.toString("YYYY-MM-dd HH:mm") + " 1");
+      }
+    }
+  }
+
+  public int size() {
+    return bookingLines.size();
+  }
+
+  public String bookingLine(int index) {
+    return bookingLines.get(index);
+  }
+
+  public String scheduleLine(int index) {
+    return scheduleLines.get(index);
+  }
+
+  /**
+   * @return all records without the open hours line.
+   */
+  public String text() {
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < size(); i++) {
+      text.append(bookingLines.get(i)).append('\n').append(scheduleLines.get(i)).append('\n');
+    }
+    return text.toString();
+  }
+
+  public List<Booking> bookings() {
+    List<Booking> bookings = new ArrayList<>(size());
+    for (int i = 0; i < size(); i++) {
+      bookings.add(Booking.fromString(bookingLines.get(i), scheduleLines.get(i)));
+    }
+    return bookings;
+  }
+}
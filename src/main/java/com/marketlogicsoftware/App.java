@@ -1,23 +1,63 @@
 package com.marketlogicsoftware;
 
 import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 /**
  * Entry point of the application. File operations goes here.
+ *
+ * With arguments "--serve port" bookings of the input file are made first, then a BookingServer takes further
+ * bookings on the given port until the process is stopped. With arguments "--shards count" the input file is booked
+ * by a ShardedBookingRunner in up to count worker processes. With arguments "--run-size count" the input file is
+ * booked by an ExternalSortBookingLoader keeping at most count records in memory. With arguments "--to-binary file"
+ * the input file is converted to the binary format of BinaryBookingWriter, with "--from-binary file" a file of that
+ * format is booked instead of the input file.
  */
 public class App {
 
   private static final String INPUT_FILE = "input.txt";
+  private static final String SERVE = "--serve";
+  private static final String SHARDS = "--shards";
+  private static final String RUN_SIZE = "--run-size";
+  private static final String TO_BINARY = "--to-binary";
+  private static final String FROM_BINARY = "--from-binary";
 
   public static void main(String[] Args) throws IOException {
-    try (BufferedReader reader = new BufferedReader(new FileReader(INPUT_FILE))) {
-      String openHoursLine = reader.readLine();
-      OpenHoursRule openHoursRule = OpenHoursRule.fromString(openHoursLine);
-      Scheduler scheduler = Scheduler.withRules(openHoursRule);
-      scheduler.bookAllInBookingOrder(reader);
-      System.out.println(scheduler.output());
+    if (Args.length == 2 && Args[0].equals(SHARDS)) {
+      new ShardedBookingRunner(Integer.parseInt(Args[1])).run(Paths.get(INPUT_FILE), System.out);
+      System.out.println();
+      return;
     }
+    if (Args.length == 2 && Args[0].equals(RUN_SIZE)) {
+      new ExternalSortBookingLoader(Integer.parseInt(Args[1]), Paths.get(System.getProperty("java.io.tmpdir")))
+          .load(Paths.get(INPUT_FILE)).output(System.out);
+      System.out.println();
+      return;
+    }
+    if (Args.length == 2 && Args[0].equals(TO_BINARY)) {
+      try (BufferedReader reader = Files.newBufferedReader(Paths.get(INPUT_FILE), StandardCharsets.UTF_8);
+          FileChannel out = FileChannel.open(Paths.get(Args[1]), StandardOpenOption.CREATE,
+              StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+        BinaryBookingConverter.toBinary(reader, out, BinaryBookingWriter.DEFAULT_BLOCK_SIZE, true);
+      }
+      return;
+    }
+    if (Args.length == 2 && Args[0].equals(FROM_BINARY)) {
+      BinaryBookingReader.load(Paths.get(Args[1])).output(System.out);
+      System.out.println();
+      return;
+    }
+    Scheduler scheduler = new MappedBookingLoader().load(Paths.get(INPUT_FILE));
+    if (Args.length == 2 && Args[0].equals(SERVE)) {
+      BookingServer.start(scheduler, Integer.parseInt(Args[1]));
+      return;
+    }
+    scheduler.output(System.out);
+    System.out.println();
   }
 }
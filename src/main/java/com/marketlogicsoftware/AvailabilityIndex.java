@@ -0,0 +1,66 @@
+package com.marketlogicsoftware;
+
+/**
+ * Keeps track of which time intervals are still free. Used by Scheduler to decide if a booking overlaps earlier
+ * ones.
+ *
+ * Intervals are open, (start, end), on primitive long instants. Two intervals sharing only an end point do not
+ * overlap. Everything is free in a new index. This is the same behaviour as the complement of a Guava RangeSet of
+ * open ranges, see RangeSetAvailabilityIndex.
+ */
+public interface AvailabilityIndex {
+
+  /**
+   * @return true if no booked interval overlaps (start, end).
+   * @throws IllegalArgumentException if start is not before end.
+   */
+  boolean encloses(long start, long end);
+
+  /**
+   * Marks (start, end) as booked.
+   *
+   * @throws IllegalArgumentException if start is not before end or the interval is not free.
+   */
+  void remove(long start, long end);
+
+  /**
+   * Makes a booked interval free again. Free neighbours of it join into one free gap.
+   *
+   * @throws IllegalArgumentException if (start, end) is not exactly an interval booked before.
+   */
+  void release(long start, long end);
+
+  /**
+   * Marks all intervals of the cursor as booked. They must be free and must not overlap each other.
+   *
+   * @throws IllegalArgumentException if some interval is not free.
+   */
+  default void removeAll(IntervalCursor intervals) {
+    while (intervals.next()) {
+      remove(intervals.start(), intervals.end());
+    }
+  }
+
+  /**
+   * @return a cursor over booked intervals ending after from, in time order. The index must not be changed while
+   * the cursor is in use.
+   */
+  IntervalCursor bookedAfter(long from);
+
+  /**
+   * Iterates booked intervals without allocating per interval.
+   */
+  interface IntervalCursor {
+
+    /**
+     * Moves to the next interval.
+     *
+     * @return false if there is none.
+     */
+    boolean next();
+
+    long start();
+
+    long end();
+  }
+}
@@ -0,0 +1,89 @@
+package com.marketlogicsoftware;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converts between the two line text records of App's input and the binary format of BinaryBookingWriter.
+ *
+ * Text to binary to text gives back the input, up to line endings and leading zeros of durations.
+ */
+public final class BinaryBookingConverter {
+
+  private static final long MILLIS_PER_HOUR = TimeUnit.HOURS.toMillis(1);
+
+  private BinaryBookingConverter() {
+  }
+
+  /**
+   * Converts the header line and all records of the reader. A dangling booking line at the end is ignored, as by
+   * Scheduler.bookAllInBookingOrder.
+   *
+   * @return number of bookings written.
+   */
+  public static long toBinary(BufferedReader reader, WritableByteChannel out, int blockSize, boolean compress)
+      throws IOException {
+    String header = reader.readLine();
+    BinaryBookingWriter writer = new BinaryBookingWriter(out, header == null ? "" : header, blockSize, compress);
+    BookingParser parser = new BookingParser();
+    long count = 0;
+    String bookingLine, scheduleLine;
+    while ((bookingLine = reader.readLine()) != null && (scheduleLine = reader.readLine()) != null) {
+      parser.parse(bookingLine, scheduleLine);
+      writer.write(parser.toBooking());
+      count++;
+    }
+    writer.finish();
+    return count;
+  }
+
+  /**
+   * Writes the header line and all bookings of the binary file as text records.
+   *
+   * @throws IllegalArgumentException if a booking does not last whole hours, which the text format can't express.
+   */
+  public static void toText(Path binary, Writer out) throws IOException {
+    try (BinaryBookingReader reader = BinaryBookingReader.open(binary)) {
+      out.write(reader.getHeader());
+      out.write('\n');
+      StringBuilder record = new StringBuilder();
+      try {
+        reader.forEach(booking -> {
+          record.setLength(0);
+          appendRecord(record, booking);
+          try {
+            out.append(record);
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      }
+    }
+    out.flush();
+  }
+
+  /**
+   * Appends the booking in the format read by Booking.fromString, both lines terminated.
+   */
+  static void appendRecord(StringBuilder out, Booking booking) {
+    long millis = booking.getEndTime().getMillis() - booking.getStartTime().getMillis();
+    if (millis % MILLIS_PER_HOUR != 0) {
+      throw new IllegalArgumentException("Not representable in text format: " + booking);
+    }
+    Booking.bookedTimeFormatter.printTo(out, booking.getBookedTime());
+    out.append(' ').append(booking.getBookedBy()).append('\n');
+    Booking.scheduleFormatter.printTo(out, booking.getStartTime());
+    out.append(' ').append(millis / MILLIS_PER_HOUR);
+    if (!booking.getResourceId().equals(Booking.DEFAULT_RESOURCE)) {
+      out.append(' ').append(booking.getResourceId());
+    }
+    out.append('\n');
+  }
+}
@@ -0,0 +1,101 @@
+package com.marketlogicsoftware;
+
+import java.nio.ByteBuffer;
+import org.joda.time.DateTime;
+
+/**
+ * Layout of the binary booking format of BinaryBookingWriter and BinaryBookingReader. All numbers are big endian.
+ *
+ * File: magic, version, then blocks, then the footer, then the offset of the footer and magic again.
+ * Block: record count, stored length, flags, first start minute, last end minute, then stored length bytes of
+ * records, deflated if flags say so. Readers skip a block by its stored length, or by its time range.
+ * Record: booked time as epoch seconds, start as epoch minutes, duration in minutes, employee id index, resource id
+ * index. Records have a fixed width, so record i of a block starts at i * RECORD_SIZE.
+ * Footer: id dictionary, header line, block count, record count.
+ */
+final class BinaryBookingFormat {
+
+  static final int MAGIC = 0x424b4246;
+  static final int VERSION = 1;
+  static final int FILE_HEADER_SIZE = 2 * Integer.BYTES;
+  static final int TRAILER_SIZE = Long.BYTES + Integer.BYTES;
+
+  static final int BLOCK_HEADER_SIZE = 5 * Integer.BYTES;
+  static final int DEFLATED = 1;
+
+  static final int RECORD_SIZE = Long.BYTES + 4 * Integer.BYTES;
+  static final int BOOKED_OFFSET = 0;
+  static final int START_OFFSET = Long.BYTES;
+  static final int DURATION_OFFSET = START_OFFSET + Integer.BYTES;
+  static final int EMPLOYEE_OFFSET = DURATION_OFFSET + Integer.BYTES;
+  static final int RESOURCE_OFFSET = EMPLOYEE_OFFSET + Integer.BYTES;
+
+  private static final long MILLIS_PER_SECOND = 1000;
+  private static final long MILLIS_PER_MINUTE = 60 * MILLIS_PER_SECOND;
+
+  private BinaryBookingFormat() {
+  }
+
+  /**
+   * Puts the booking at the position of the buffer, which must have RECORD_SIZE bytes remaining. Nothing is put if
+   * it throws.
+   *
+   * @throws IllegalArgumentException if times are not whole seconds and minutes, as in the text format, or out of
+   * range.
+   */
+  static void put(ByteBuffer buffer, Booking booking, int employee, int resource) {
+    long booked = booking.getBookedTime().getMillis();
+    long start = booking.getStartTime().getMillis();
+    long end = booking.getEndTime().getMillis();
+    if (booked % MILLIS_PER_SECOND != 0 || start % MILLIS_PER_MINUTE != 0 || end % MILLIS_PER_MINUTE != 0
+        || end < start) {
+      throw new IllegalArgumentException("Not representable in binary format: " + booking);
+    }
+    int startMinute = toMinute(start, booking);
+    int durationMinutes = toMinute(end - start, booking);
+    buffer.putLong(booked / MILLIS_PER_SECOND)
+        .putInt(startMinute)
+        .putInt(durationMinutes)
+        .putInt(employee)
+        .putInt(resource);
+  }
+
+  /**
+   * @return start of record i of the block as epoch minutes.
+   */
+  static int startMinute(ByteBuffer records, int i) {
+    return records.getInt(i * RECORD_SIZE + START_OFFSET);
+  }
+
+  /**
+   * @return end of record i of the block as epoch minutes.
+   */
+  static long endMinute(ByteBuffer records, int i) {
+    return (long) startMinute(records, i) + records.getInt(i * RECORD_SIZE + DURATION_OFFSET);
+  }
+
+  /**
+   * Reads record i of the block, in the default time zone. Buffer position is not changed.
+   */
+  static Booking get(ByteBuffer records, int i, EmployeeDictionary ids) {
+    int record = i * RECORD_SIZE;
+    return new Booking(
+        new DateTime(records.getLong(record + BOOKED_OFFSET) * MILLIS_PER_SECOND),
+        ids.name(records.getInt(record + EMPLOYEE_OFFSET)),
+        new DateTime(toMillis(startMinute(records, i))),
+        new DateTime(toMillis(endMinute(records, i))),
+        ids.name(records.getInt(record + RESOURCE_OFFSET)));
+  }
+
+  static long toMillis(long minute) {
+    return minute * MILLIS_PER_MINUTE;
+  }
+
+  private static int toMinute(long millis, Booking booking) {
+    long minute = millis / MILLIS_PER_MINUTE;
+    if (minute != (int) minute) {
+      throw new IllegalArgumentException("Not representable in binary format: " + booking);
+    }
+    return (int) minute;
+  }
+}
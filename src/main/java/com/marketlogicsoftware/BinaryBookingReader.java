@@ -0,0 +1,302 @@
+package com.marketlogicsoftware;
+
+import static com.marketlogicsoftware.BinaryBookingFormat.BLOCK_HEADER_SIZE;
+import static com.marketlogicsoftware.BinaryBookingFormat.DEFLATED;
+import static com.marketlogicsoftware.BinaryBookingFormat.RECORD_SIZE;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import org.joda.time.DateTime;
+
+/**
+ * Reads files written by BinaryBookingWriter, see BinaryBookingFormat.
+ *
+ * Open reads the footer and walks the block headers only. Records of a block are read when it is first used: stored
+ * blocks are memory mapped and read in place through a ByteBuffer view, deflated blocks are inflated into a heap
+ * buffer. Range reads skip blocks whose time range does not overlap, without touching their records. Times are read
+ * in the default time zone.
+ *
+ * Not thread safe.
+ */
+public final class BinaryBookingReader implements Closeable {
+
+  private final FileChannel channel;
+  private final EmployeeDictionary ids = new EmployeeDictionary();
+  private final String header;
+  private final long size;
+  private final List<Block> blocks;
+
+  private BinaryBookingReader(FileChannel channel) throws IOException {
+    this.channel = channel;
+    long fileSize = channel.size();
+    if (fileSize < BinaryBookingFormat.FILE_HEADER_SIZE + BinaryBookingFormat.TRAILER_SIZE) {
+      throw new IOException("Not a binary booking file");
+    }
+    ByteBuffer start = read(0, BinaryBookingFormat.FILE_HEADER_SIZE);
+    if (start.getInt() != BinaryBookingFormat.MAGIC) {
+      throw new IOException("Not a binary booking file");
+    }
+    int version = start.getInt();
+    if (version != BinaryBookingFormat.VERSION) {
+      throw new IOException("Unsupported version " + version);
+    }
+    ByteBuffer trailer = read(fileSize - BinaryBookingFormat.TRAILER_SIZE, BinaryBookingFormat.TRAILER_SIZE);
+    long footerOffset = trailer.getLong();
+    if (trailer.getInt() != BinaryBookingFormat.MAGIC || footerOffset < BinaryBookingFormat.FILE_HEADER_SIZE
+        || footerOffset > fileSize - BinaryBookingFormat.TRAILER_SIZE) {
+      throw new IOException("Truncated binary booking file");
+    }
+
+    ByteBuffer footer = channel.map(MapMode.READ_ONLY, footerOffset,
+        fileSize - BinaryBookingFormat.TRAILER_SIZE - footerOffset);
+    int idCount = footer.getInt();
+    for (int i = 0; i < idCount; i++) {
+      if (ids.intern(getString(footer)) != i) {
+        throw new IOException("Duplicate id in dictionary");
+      }
+    }
+    this.header = getString(footer);
+    int blockCount = footer.getInt();
+    this.size = footer.getLong();
+
+    List<Block> blocks = new ArrayList<>(blockCount);
+    long position = BinaryBookingFormat.FILE_HEADER_SIZE;
+    while (position < footerOffset) {
+      ByteBuffer blockHeader = read(position, BLOCK_HEADER_SIZE);
+      Block block = new Block(position + BLOCK_HEADER_SIZE, blockHeader.getInt(), blockHeader.getInt(),
+          blockHeader.getInt(), blockHeader.getInt(), blockHeader.getInt());
+      blocks.add(block);
+      position = block.offset + block.storedLength;
+    }
+    if (position != footerOffset || blocks.size() != blockCount) {
+      throw new IOException("Corrupt block headers");
+    }
+    this.blocks = Collections.unmodifiableList(blocks);
+  }
+
+  public static BinaryBookingReader open(Path path) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      return new BinaryBookingReader(channel);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Reads open hours from the header of the file, see CalendarRule.fromHeader, and books all records.
+   *
+   * @return a new Scheduler with all bookings of the file made.
+   */
+  public static Scheduler load(Path path) throws IOException {
+    try (BinaryBookingReader reader = open(path)) {
+      Scheduler scheduler = Scheduler.withRules(CalendarRule.fromHeader(reader.getHeader()));
+      reader.bookAllInBookingOrder(scheduler);
+      return scheduler;
+    }
+  }
+
+  /**
+   * @return first line of the text format the file was written with, the open hours.
+   */
+  public String getHeader() {
+    return header;
+  }
+
+  /**
+   * @return number of bookings in the file.
+   */
+  public long size() {
+    return size;
+  }
+
+  public List<Block> getBlocks() {
+    return blocks;
+  }
+
+  /**
+   * Tries to book all bookings of the file, like Scheduler.bookAllInBookingOrder.
+   */
+  public void bookAllInBookingOrder(Scheduler scheduler) throws IOException {
+    scheduler.bookAll(readAll());
+  }
+
+  /**
+   * @return all bookings in file order.
+   */
+  public List<Booking> readAll() throws IOException {
+    List<Booking> bookings = new ArrayList<>((int) Math.min(size, Integer.MAX_VALUE));
+    forEach(bookings::add);
+    return bookings;
+  }
+
+  public void forEach(Consumer<Booking> action) throws IOException {
+    for (Block block : blocks) {
+      block.forEach(action);
+    }
+  }
+
+  /**
+   * Passes bookings overlapping (from, to) in file order. Skips blocks which can not hold any.
+   */
+  public void forEachOverlapping(DateTime from, DateTime to, Consumer<Booking> action) throws IOException {
+    long fromMillis = from.getMillis();
+    long toMillis = to.getMillis();
+    for (Block block : blocks) {
+      if (BinaryBookingFormat.toMillis(block.firstStartMinute) >= toMillis
+          || BinaryBookingFormat.toMillis(block.lastEndMinute) <= fromMillis) {
+        continue;
+      }
+      ByteBuffer records = block.records();
+      for (int i = 0; i < block.size; i++) {
+        if (BinaryBookingFormat.toMillis(BinaryBookingFormat.startMinute(records, i)) < toMillis
+            && BinaryBookingFormat.toMillis(BinaryBookingFormat.endMinute(records, i)) > fromMillis) {
+          action.accept(BinaryBookingFormat.get(records, i, ids));
+        }
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  private ByteBuffer read(long position, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new IOException("Truncated binary booking file");
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private static String getString(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * A block of fixed width records, see BinaryBookingFormat.
+   */
+  public final class Block {
+
+    private final long offset;
+    private final int size;
+    private final int storedLength;
+    private final int flags;
+    private final int firstStartMinute;
+    private final int lastEndMinute;
+    private ByteBuffer records;
+
+    private Block(long offset, int size, int storedLength, int flags, int firstStartMinute, int lastEndMinute)
+        throws IOException {
+      if (size <= 0 || size > Integer.MAX_VALUE / RECORD_SIZE || storedLength < 0
+          || (flags & DEFLATED) == 0 && storedLength != size * RECORD_SIZE) {
+        throw new IOException("Corrupt block header at " + offset);
+      }
+      this.offset = offset;
+      this.size = size;
+      this.storedLength = storedLength;
+      this.flags = flags;
+      this.firstStartMinute = firstStartMinute;
+      this.lastEndMinute = lastEndMinute;
+    }
+
+    /**
+     * @return number of bookings in the block.
+     */
+    public int size() {
+      return size;
+    }
+
+    public boolean isDeflated() {
+      return (flags & DEFLATED) != 0;
+    }
+
+    /**
+     * @return earliest start time of the bookings in the block.
+     */
+    public DateTime getFirstStart() {
+      return new DateTime(BinaryBookingFormat.toMillis(firstStartMinute));
+    }
+
+    /**
+     * @return latest end time of the bookings in the block.
+     */
+    public DateTime getLastEnd() {
+      return new DateTime(BinaryBookingFormat.toMillis(lastEndMinute));
+    }
+
+    /**
+     * @return booking i of the block.
+     */
+    public Booking get(int i) throws IOException {
+      if (i < 0 || i >= size) {
+        throw new IllegalArgumentException("No booking " + i + " in block of " + size);
+      }
+      return BinaryBookingFormat.get(records(), i, ids);
+    }
+
+    public void forEach(Consumer<Booking> action) throws IOException {
+      ByteBuffer records = records();
+      for (int i = 0; i < size; i++) {
+        action.accept(BinaryBookingFormat.get(records, i, ids));
+      }
+    }
+
+    /**
+     * @return read only view of the records, size() * BinaryBookingFormat.RECORD_SIZE bytes. Mapped from the file
+     * for stored blocks.
+     */
+    public ByteBuffer records() throws IOException {
+      if (records == null) {
+        ByteBuffer stored = channel.map(MapMode.READ_ONLY, offset, storedLength);
+        records = isDeflated() ? inflate(stored) : stored;
+      }
+      return records.asReadOnlyBuffer();
+    }
+
+    private ByteBuffer inflate(ByteBuffer stored) throws IOException {
+      byte[] input = new byte[storedLength];
+      stored.get(input);
+      byte[] output = new byte[size * RECORD_SIZE];
+      Inflater inflater = new Inflater();
+      try {
+        inflater.setInput(input);
+        int length = 0;
+        while (length < output.length && !inflater.finished()) {
+          int inflated = inflater.inflate(output, length, output.length - length);
+          if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+            break;
+          }
+          length += inflated;
+        }
+        if (length != output.length || !inflater.finished()) {
+          throw new IOException("Corrupt block at " + offset);
+        }
+      } catch (DataFormatException e) {
+        throw new IOException("Corrupt block at " + offset, e);
+      } finally {
+        inflater.end();
+      }
+      return ByteBuffer.wrap(output);
+    }
+  }
+}
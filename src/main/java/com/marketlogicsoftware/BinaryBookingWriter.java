@@ -0,0 +1,197 @@
+package com.marketlogicsoftware;
+
+import static com.marketlogicsoftware.BinaryBookingFormat.BLOCK_HEADER_SIZE;
+import static com.marketlogicsoftware.BinaryBookingFormat.DEFLATED;
+import static com.marketlogicsoftware.BinaryBookingFormat.RECORD_SIZE;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.zip.Deflater;
+
+/**
+ * Writes bookings in the binary format read by BinaryBookingReader, see BinaryBookingFormat.
+ *
+ * Records are collected in blocks of blockSize bookings. Employee and resource ids share one EmployeeDictionary,
+ * which is written to the footer by finish. With compression every block is deflated on its own, and stored as is
+ * if that does not make it smaller, so a reader can still decode any block without the ones before it.
+ *
+ * Not thread safe. Does not close the channel.
+ */
+public class BinaryBookingWriter {
+
+  public static final int DEFAULT_BLOCK_SIZE = 4096;
+
+  private final WritableByteChannel channel;
+  private final String header;
+  private final Deflater deflater;
+  private final EmployeeDictionary ids = new EmployeeDictionary();
+
+  private final ByteBuffer records;
+  private byte[] deflated;
+  private int firstStartMinute = Integer.MAX_VALUE;
+  private long lastEndMinute = Long.MIN_VALUE;
+  private long position;
+  private int blockCount;
+  private long recordCount;
+  private boolean finished;
+
+  /**
+   * @param header first line of the text format, the open hours. Kept in the footer, see
+   * BinaryBookingReader.getHeader.
+   * @param blockSize number of bookings per block.
+   * @param compress deflates blocks if true.
+   */
+  public BinaryBookingWriter(WritableByteChannel channel, String header, int blockSize, boolean compress)
+      throws IOException {
+    if (blockSize <= 0 || blockSize > Integer.MAX_VALUE / RECORD_SIZE) {
+      throw new IllegalArgumentException("Block size out of range: " + blockSize);
+    }
+    this.channel = channel;
+    this.header = header;
+    this.deflater = compress ? new Deflater(Deflater.BEST_SPEED) : null;
+    this.records = ByteBuffer.allocate(blockSize * RECORD_SIZE);
+    ids.intern(Booking.DEFAULT_RESOURCE);
+    write((ByteBuffer) ByteBuffer.allocate(BinaryBookingFormat.FILE_HEADER_SIZE)
+        .putInt(BinaryBookingFormat.MAGIC)
+        .putInt(BinaryBookingFormat.VERSION)
+        .flip());
+  }
+
+  /**
+   * @throws IllegalArgumentException if booked time is not whole seconds or schedule is not whole minutes.
+   */
+  public void write(Booking booking) throws IOException {
+    if (finished) {
+      throw new IllegalStateException("Already finished");
+    }
+    BinaryBookingFormat.put(records, booking, ids.intern(booking.getBookedBy()), ids.intern(booking.getResourceId()));
+    int i = records.position() / RECORD_SIZE - 1;
+    firstStartMinute = Math.min(firstStartMinute, BinaryBookingFormat.startMinute(records, i));
+    lastEndMinute = Math.max(lastEndMinute, BinaryBookingFormat.endMinute(records, i));
+    if (!records.hasRemaining()) {
+      writeBlock();
+    }
+  }
+
+  public void writeAll(Iterable<Booking> bookings) throws IOException {
+    for (Booking booking : bookings) {
+      write(booking);
+    }
+  }
+
+  /**
+   * Writes all bookings made by the scheduler up to now, in the order of Scheduler.output. Blocks then cover
+   * consecutive time ranges, which lets readers skip most of them for a range.
+   */
+  public void writeAll(Scheduler scheduler) throws IOException {
+    for (Collection<Booking> day : scheduler.getBookingsGrouped().values()) {
+      writeAll(day);
+    }
+  }
+
+  /**
+   * Writes the last block and the footer. Nothing can be written after.
+   */
+  public void finish() throws IOException {
+    if (finished) {
+      return;
+    }
+    writeBlock();
+    finished = true;
+    long footerOffset = position;
+    ByteBuffer footer = ByteBuffer.allocate(1024);
+    footer = putInt(footer, ids.size());
+    for (int i = 0; i < ids.size(); i++) {
+      footer = putString(footer, ids.name(i));
+    }
+    footer = putString(footer, header);
+    footer = putInt(footer, blockCount);
+    footer = ensureRemaining(footer, Long.BYTES + BinaryBookingFormat.TRAILER_SIZE);
+    footer.putLong(recordCount)
+        .putLong(footerOffset)
+        .putInt(BinaryBookingFormat.MAGIC);
+    footer.flip();
+    write(footer);
+    if (deflater != null) {
+      deflater.end();
+    }
+  }
+
+  private void writeBlock() throws IOException {
+    int count = records.position() / RECORD_SIZE;
+    if (count == 0) {
+      return;
+    }
+    records.flip();
+    int flags = 0;
+    ByteBuffer payload = records;
+    if (deflater != null) {
+      int length = deflate();
+      if (length < records.remaining()) {
+        flags = DEFLATED;
+        payload = ByteBuffer.wrap(deflated, 0, length);
+      }
+    }
+    write((ByteBuffer) ByteBuffer.allocate(BLOCK_HEADER_SIZE)
+        .putInt(count)
+        .putInt(payload.remaining())
+        .putInt(flags)
+        .putInt(firstStartMinute)
+        .putInt((int) Math.min(lastEndMinute, Integer.MAX_VALUE))
+        .flip());
+    write(payload);
+    records.clear();
+    firstStartMinute = Integer.MAX_VALUE;
+    lastEndMinute = Long.MIN_VALUE;
+    blockCount++;
+    recordCount += count;
+  }
+
+  /**
+   * Deflates the records into deflated.
+   *
+   * @return deflated length, at least the records length if deflating does not pay off.
+   */
+  private int deflate() {
+    int limit = records.remaining();
+    if (deflated == null) {
+      deflated = new byte[records.capacity()];
+    }
+    deflater.reset();
+    deflater.setInput(records.array(), 0, limit);
+    deflater.finish();
+    int length = 0;
+    while (!deflater.finished() && length < limit) {
+      length += deflater.deflate(deflated, length, limit - length);
+    }
+    return deflater.finished() ? length : limit;
+  }
+
+  private void write(ByteBuffer buffer) throws IOException {
+    position += buffer.remaining();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  private static ByteBuffer putInt(ByteBuffer buffer, int value) {
+    return ensureRemaining(buffer, Integer.BYTES).putInt(value);
+  }
+
+  private static ByteBuffer putString(ByteBuffer buffer, String value) {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    return ensureRemaining(buffer, Integer.BYTES + bytes.length).putInt(bytes.length).put(bytes);
+  }
+
+  private static ByteBuffer ensureRemaining(ByteBuffer buffer, int bytes) {
+    if (buffer.remaining() >= bytes) {
+      return buffer;
+    }
+    ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+    buffer.flip();
+    return larger.put(buffer);
+  }
+}
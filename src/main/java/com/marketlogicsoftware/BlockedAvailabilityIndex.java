@@ -0,0 +1,316 @@
+package com.marketlogicsoftware;
+
+import java.util.Arrays;
+
+/**
+ * AvailabilityIndex keeping booked intervals in sorted primitive arrays.
+ *
+ * Booked intervals never overlap, so sorting them by start also sorts them by end. The only interval that can
+ * overlap (start, end) is then the last one starting before end. Intervals are stored in blocks of at most
+ * BLOCK_SIZE entries: a binary search over the first start of every block, and another one inside the block find
+ * it. Inserting or releasing shifts at most one block plus the block table, which stays small. A block filled by appending is
+ * not split in half but followed by a new one, so bookings made in time order fill blocks completely.
+ *
+ * Lookups don't allocate. Not thread safe.
+ */
+public class BlockedAvailabilityIndex implements AvailabilityIndex {
+
+  static final int BLOCK_SIZE = 256;
+  private static final int MERGE_FRACTION = 8;
+
+  private long[][] starts = new long[4][];
+  private long[][] ends = new long[4][];
+  private int[] counts = new int[4];
+  private int blockCount;
+
+  @Override
+  public boolean encloses(long start, long end) {
+    checkInterval(start, end);
+    int block = lastBlockStartingBefore(end);
+    if (block < 0) {
+      return true;
+    }
+    int index = lastIndexStartingBefore(block, end);
+    return ends[block][index] <= start;
+  }
+
+  @Override
+  public void remove(long start, long end) {
+    checkInterval(start, end);
+    int block = lastBlockStartingBefore(end);
+    int index = -1;
+    if (block < 0) {
+      block = 0;
+    } else {
+      index = lastIndexStartingBefore(block, end);
+      if (ends[block][index] > start) {
+        throw new IllegalArgumentException(String.format("(%d, %d) is not available", start, end));
+      }
+    }
+    if (blockCount == 0) {
+      insertBlock(0);
+    }
+    insert(block, index + 1, start, end);
+  }
+
+  /**
+   * Deletes the interval from its block, and the block if it gets empty.
+   */
+  @Override
+  public void release(long start, long end) {
+    checkInterval(start, end);
+    int block = lastBlockStartingBefore(start + 1);
+    int index = block < 0 ? -1 : lastIndexStartingBefore(block, start + 1);
+    if (index < 0 || starts[block][index] != start || ends[block][index] != end) {
+      throw new IllegalArgumentException(String.format("(%d, %d) is not booked", start, end));
+    }
+    int count = counts[block] - 1;
+    System.arraycopy(starts[block], index + 1, starts[block], index, count - index);
+    System.arraycopy(ends[block], index + 1, ends[block], index, count - index);
+    counts[block] = count;
+    if (count == 0) {
+      deleteBlock(block);
+    }
+  }
+
+  /**
+   * Intervals must come in time order. A batch as large as a fraction of the index is merged into new blocks in
+   * linear time. The index is left unchanged if some interval is not free.
+   */
+  @Override
+  public void removeAll(IntervalCursor intervals) {
+    int size = size();
+    long[] batchStarts = new long[16];
+    long[] batchEnds = new long[batchStarts.length];
+    int batchSize = 0;
+    while (intervals.next()) {
+      if (batchSize == batchStarts.length) {
+        batchStarts = Arrays.copyOf(batchStarts, batchSize * 2);
+        batchEnds = Arrays.copyOf(batchEnds, batchSize * 2);
+      }
+      checkInterval(intervals.start(), intervals.end());
+      if (batchSize > 0 && batchEnds[batchSize - 1] > intervals.start()) {
+        throw new IllegalArgumentException("Intervals are not in time order or overlap");
+      }
+      batchStarts[batchSize] = intervals.start();
+      batchEnds[batchSize] = intervals.end();
+      batchSize++;
+    }
+    if (batchSize < size / MERGE_FRACTION) {
+      for (int i = 0; i < batchSize; i++) {
+        if (!encloses(batchStarts[i], batchEnds[i])) {
+          throw new IllegalArgumentException(String.format("(%d, %d) is not available", batchStarts[i],
+              batchEnds[i]));
+        }
+      }
+      for (int i = 0; i < batchSize; i++) {
+        remove(batchStarts[i], batchEnds[i]);
+      }
+    } else {
+      merge(batchStarts, batchEnds, batchSize);
+    }
+  }
+
+  private void merge(long[] batchStarts, long[] batchEnds, int batchSize) {
+    BlockedAvailabilityIndex merged = new BlockedAvailabilityIndex();
+    IntervalCursor existing = bookedAfter(Long.MIN_VALUE);
+    boolean hasExisting = existing.next();
+    int next = 0;
+    long lastEnd = Long.MIN_VALUE;
+    while (hasExisting || next < batchSize) {
+      long start;
+      long end;
+      if (!hasExisting || (next < batchSize && batchStarts[next] < existing.start())) {
+        start = batchStarts[next];
+        end = batchEnds[next];
+        next++;
+      } else {
+        start = existing.start();
+        end = existing.end();
+        hasExisting = existing.next();
+      }
+      if (lastEnd > start) {
+        throw new IllegalArgumentException(String.format("(%d, %d) is not available", start, end));
+      }
+      merged.append(start, end);
+      lastEnd = end;
+    }
+    starts = merged.starts;
+    ends = merged.ends;
+    counts = merged.counts;
+    blockCount = merged.blockCount;
+  }
+
+  /**
+   * Adds an interval after all others, filling the last block.
+   */
+  private void append(long start, long end) {
+    if (blockCount == 0 || counts[blockCount - 1] == BLOCK_SIZE) {
+      insertBlock(blockCount);
+    }
+    int block = blockCount - 1;
+    starts[block][counts[block]] = start;
+    ends[block][counts[block]] = end;
+    counts[block]++;
+  }
+
+  @Override
+  public IntervalCursor bookedAfter(long from) {
+    int block = lastBlockStartingBefore(from + 1);
+    int index = 0;
+    if (block < 0) {
+      block = 0;
+    } else {
+      index = lastIndexStartingBefore(block, from + 1);
+      if (ends[block][index] <= from) {
+        index++;
+      }
+    }
+    return new BlockCursor(block, index);
+  }
+
+  /**
+   * @return number of booked intervals.
+   */
+  public int size() {
+    int size = 0;
+    for (int i = 0; i < blockCount; i++) {
+      size += counts[i];
+    }
+    return size;
+  }
+
+  private void insert(int block, int index, long start, long end) {
+    if (counts[block] == BLOCK_SIZE) {
+      if (block == blockCount - 1 && index == BLOCK_SIZE) {
+        insertBlock(blockCount);
+        block++;
+        index = 0;
+      } else {
+        split(block);
+        if (index > counts[block]) {
+          index -= counts[block];
+          block++;
+        }
+      }
+    }
+    int count = counts[block];
+    System.arraycopy(starts[block], index, starts[block], index + 1, count - index);
+    System.arraycopy(ends[block], index, ends[block], index + 1, count - index);
+    starts[block][index] = start;
+    ends[block][index] = end;
+    counts[block] = count + 1;
+  }
+
+  private void split(int block) {
+    insertBlock(block + 1);
+    int half = BLOCK_SIZE / 2;
+    System.arraycopy(starts[block], half, starts[block + 1], 0, BLOCK_SIZE - half);
+    System.arraycopy(ends[block], half, ends[block + 1], 0, BLOCK_SIZE - half);
+    counts[block] = half;
+    counts[block + 1] = BLOCK_SIZE - half;
+  }
+
+  private void insertBlock(int block) {
+    if (blockCount == starts.length) {
+      starts = Arrays.copyOf(starts, blockCount * 2);
+      ends = Arrays.copyOf(ends, blockCount * 2);
+      counts = Arrays.copyOf(counts, blockCount * 2);
+    }
+    System.arraycopy(starts, block, starts, block + 1, blockCount - block);
+    System.arraycopy(ends, block, ends, block + 1, blockCount - block);
+    System.arraycopy(counts, block, counts, block + 1, blockCount - block);
+    starts[block] = new long[BLOCK_SIZE];
+    ends[block] = new long[BLOCK_SIZE];
+    counts[block] = 0;
+    blockCount++;
+  }
+
+  private void deleteBlock(int block) {
+    blockCount--;
+    System.arraycopy(starts, block + 1, starts, block, blockCount - block);
+    System.arraycopy(ends, block + 1, ends, block, blockCount - block);
+    System.arraycopy(counts, block + 1, counts, block, blockCount - block);
+    starts[blockCount] = null;
+    ends[blockCount] = null;
+  }
+
+  /**
+   * @return last block whose first interval starts before value, -1 if there is none.
+   */
+  private int lastBlockStartingBefore(long value) {
+    int low = 0;
+    int high = blockCount - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      if (starts[middle][0] < value) {
+        low = middle + 1;
+      } else {
+        high = middle - 1;
+      }
+    }
+    return high;
+  }
+
+  /**
+   * @return last index of the block starting before value. The block must have one.
+   */
+  private int lastIndexStartingBefore(int block, long value) {
+    long[] blockStarts = starts[block];
+    int low = 0;
+    int high = counts[block] - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      if (blockStarts[middle] < value) {
+        low = middle + 1;
+      } else {
+        high = middle - 1;
+      }
+    }
+    return high;
+  }
+
+  private static void checkInterval(long start, long end) {
+    if (start >= end) {
+      throw new IllegalArgumentException(String.format("Invalid interval: (%d, %d)", start, end));
+    }
+  }
+
+  /**
+   * Positioned before the interval at block, index. Moves over the end of a block to the next one.
+   */
+  private final class BlockCursor implements IntervalCursor {
+
+    private int block;
+    private int index;
+    private boolean started;
+
+    BlockCursor(int block, int index) {
+      this.block = block;
+      this.index = index;
+    }
+
+    @Override
+    public boolean next() {
+      if (started) {
+        index++;
+      }
+      started = true;
+      while (block < blockCount && index >= counts[block]) {
+        block++;
+        index = 0;
+      }
+      return block < blockCount;
+    }
+
+    @Override
+    public long start() {
+      return starts[block][index];
+    }
+
+    @Override
+    public long end() {
+      return ends[block][index];
+    }
+  }
+}
@@ -15,6 +15,11 @@ import org.joda.time.format.DateTimeFormatter;
  */
 public class Booking implements Comparable<Booking> {
 
+  /**
+   * Resource of bookings which don't name one. Single resource schedulers book everything on it.
+   */
+  public static final String DEFAULT_RESOURCE = "";
+
   static final DateTimeFormatter bookedTimeFormatter = DateTimeFormat.forPattern("YYYY-MM-dd HH:mm:ss");
   static final DateTimeFormatter scheduleFormatter = DateTimeFormat.forPattern("YYYY-MM-dd HH:mm");
 
@@ -22,30 +27,37 @@ public class Booking implements Comparable<Booking> {
   private final String bookedBy;
   private final DateTime startTime;
   private final DateTime endTime;
+  private final String resourceId;
 
   public Booking(DateTime bookedTime, String bookedBy, DateTime startTime, DateTime endTime) {
+    this(bookedTime, bookedBy, startTime, endTime, DEFAULT_RESOURCE);
+  }
+
+  public Booking(DateTime bookedTime, String bookedBy, DateTime startTime, DateTime endTime, String resourceId) {
     this.bookedTime = bookedTime;
     this.bookedBy = bookedBy;
     this.startTime = startTime;
     this.endTime = endTime;
+    this.resourceId = resourceId;
   }
 
   /**
    * Static factory method to instantiate Booking class.
    *
    * @param bookingLine Example: "2015-08-17 10:17:06 EMP001"
-   * @param scheduleLine Example: "2015-08-21 09:00 2"
+   * @param scheduleLine Example: "2015-08-21 09:00 2", optionally followed by a resource id: "2015-08-21 09:00 2 ROOM1"
    * @return new instance
    */
   public static Booking fromString(String bookingLine, String scheduleLine) {
     String[] bookingLineSplitted = bookingLine.split(" ");
     String[] scheduleLineSplitted = scheduleLine.split(" ");
-    if (bookingLineSplitted.length == 3 && scheduleLineSplitted.length == 3) {
+    if (bookingLineSplitted.length == 3 && (scheduleLineSplitted.length == 3 || scheduleLineSplitted.length == 4)) {
       DateTime bookedTime = bookedTimeFormatter.parseDateTime(bookingLineSplitted[0] + " " + bookingLineSplitted[1]);
       String bookedBy = bookingLineSplitted[2];
       DateTime startTime = scheduleFormatter.parseDateTime(scheduleLineSplitted[0] + " " + scheduleLineSplitted[1]);
       DateTime endTime = startTime.plusHours(Integer.valueOf(scheduleLineSplitted[2]));
-      return new Booking(bookedTime, bookedBy, startTime, endTime);
+      String resourceId = scheduleLineSplitted.length == 4 ? scheduleLineSplitted[3] : DEFAULT_RESOURCE;
+      return new Booking(bookedTime, bookedBy, startTime, endTime, resourceId);
     } else {
       throw new IllegalArgumentException(String.format("Bad arguments: [%s,%s]", bookingLine, scheduleLine));
     }
@@ -67,6 +79,24 @@ public class Booking implements Comparable<Booking> {
     return endTime;
   }
 
+  public String getResourceId() {
+    return resourceId;
+  }
+
+  /**
+   * @return same booking on the given resource.
+   */
+  public Booking withResourceId(String resourceId) {
+    return new Booking(bookedTime, bookedBy, startTime, endTime, resourceId);
+  }
+
+  /**
+   * @return same booking moved to the given start and end times.
+   */
+  public Booking withSchedule(DateTime startTime, DateTime endTime) {
+    return new Booking(bookedTime, bookedBy, startTime, endTime, resourceId);
+  }
+
   public Range<DateTime> asRange() {
     return Range.open(startTime, endTime);
   }
@@ -78,6 +108,7 @@ public class Booking implements Comparable<Booking> {
         ", bookedBy='" + bookedBy + '\'' +
         ", startTime=" + startTime +
         ", endTime=" + endTime +
+        ", resourceId='" + resourceId + '\'' +
         '}';
   }
 
@@ -101,7 +132,10 @@ public class Booking implements Comparable<Booking> {
     if (!getStartTime().equals(booking.getStartTime())) {
       return false;
     }
-    return getEndTime().equals(booking.getEndTime());
+    if (!getEndTime().equals(booking.getEndTime())) {
+      return false;
+    }
+    return getResourceId().equals(booking.getResourceId());
   }
 
   @Override
@@ -110,6 +144,7 @@ public class Booking implements Comparable<Booking> {
     result = 31 * result + getBookedBy().hashCode();
     result = 31 * result + getStartTime().hashCode();
     result = 31 * result + getEndTime().hashCode();
+    result = 31 * result + getResourceId().hashCode();
     return result;
   }
 
@@ -138,6 +173,12 @@ public class Booking implements Comparable<Booking> {
     } else if (this.bookedTime.compareTo(that.bookedTime) > 0) {
       return 1;
     }
+
+    if (this.resourceId.compareTo(that.resourceId) < 0) {
+      return -1;
+    } else if (this.resourceId.compareTo(that.resourceId) > 0) {
+      return 1;
+    }
     return 0;
   }
 }
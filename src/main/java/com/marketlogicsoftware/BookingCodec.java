@@ -0,0 +1,56 @@
+package com.marketlogicsoftware;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.joda.time.DateTime;
+
+/**
+ * Binary form of a Booking: booked, start and end time as epoch millis, then employee and resource ids as length
+ * prefixed UTF-8. Times are exact, and are read back in the default time zone.
+ */
+final class BookingCodec {
+
+  private BookingCodec() {
+  }
+
+  /**
+   * Puts the booking at the position of the buffer.
+   *
+   * @return the given buffer, or a larger copy of it if the booking did not fit.
+   */
+  static ByteBuffer put(ByteBuffer buffer, Booking booking) {
+    byte[] bookedBy = booking.getBookedBy().getBytes(StandardCharsets.UTF_8);
+    byte[] resourceId = booking.getResourceId().getBytes(StandardCharsets.UTF_8);
+    int size = 3 * Long.BYTES + 2 * Integer.BYTES + bookedBy.length + resourceId.length;
+    if (buffer.remaining() < size) {
+      ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + size));
+      buffer.flip();
+      buffer = larger.put(buffer);
+    }
+    buffer.putLong(booking.getBookedTime().getMillis())
+        .putLong(booking.getStartTime().getMillis())
+        .putLong(booking.getEndTime().getMillis())
+        .putInt(bookedBy.length)
+        .put(bookedBy)
+        .putInt(resourceId.length)
+        .put(resourceId);
+    return buffer;
+  }
+
+  /**
+   * Reads a booking at the position of the buffer, and moves the position after it.
+   */
+  static Booking get(ByteBuffer buffer) {
+    DateTime bookedTime = new DateTime(buffer.getLong());
+    DateTime startTime = new DateTime(buffer.getLong());
+    DateTime endTime = new DateTime(buffer.getLong());
+    String bookedBy = getString(buffer);
+    return new Booking(bookedTime, bookedBy, startTime, endTime, getString(buffer));
+  }
+
+  private static String getString(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,486 @@
+package com.marketlogicsoftware;
+
+import com.marketlogicsoftware.AvailabilityIndex.IntervalCursor;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps the bookings of a Scheduler in a directory, so that it survives restarts.
+ *
+ * Every accepted, cancelled or rescheduled booking is appended to a binary journal. A reschedule is one record, so
+ * it is recovered completely or not at all. Appends are buffered and a background thread writes and
+ * fsyncs them every commit interval, so a burst of bookings costs one fsync (group commit). A booking is durable once
+ * sync returns, or at most one commit interval after it was made. With a commit interval of zero every booking is
+ * synced before bookTry returns.
+ *
+ * Once the journal holds compactionThreshold records, booked intervals and bookings of the Scheduler are written to
+ * a new snapshot, which replaces the old one by an atomic rename, and a new journal is started. Snapshot and journal
+ * carry a generation number, so a crash between the two steps never replays a journal twice. Recovery maps the
+ * snapshot, bulk loads it and replays the journal written after it. A torn record at the end of the journal, left
+ * by a crash during a write, fails its checksum and is dropped.
+ *
+ * The Scheduler is used from the thread making bookings only, also for compaction. Times are restored in the default
+ * time zone.
+ */
+public final class BookingJournal implements BookingListener, Closeable {
+
+  public static final int DEFAULT_COMPACTION_THRESHOLD = 1_000_000;
+  public static final long DEFAULT_COMMIT_INTERVAL_MILLIS = 10;
+
+  private static final int JOURNAL_MAGIC = 0x424b4a31;
+  private static final int SNAPSHOT_MAGIC = 0x424b5331;
+  private static final String SNAPSHOT = "snapshot";
+  private static final String JOURNAL_PREFIX = "journal-";
+  private static final int HEADER_SIZE = Integer.BYTES + Long.BYTES;
+  private static final int RECORD_HEADER_SIZE = 2 * Integer.BYTES;
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final byte BOOKED = 1;
+  private static final byte CANCELLED = 2;
+  private static final byte RESCHEDULED = 3;
+
+  private final Path directory;
+  private final int compactionThreshold;
+  private final CRC32 crc = new CRC32();
+  private ScheduledExecutorService committer;
+  private Scheduler scheduler;
+
+  private long generation;
+  private FileChannel journal;
+  private int journalRecords;
+  private ByteBuffer pending = ByteBuffer.allocate(BUFFER_SIZE);
+  private ByteBuffer record = ByteBuffer.allocate(256);
+  private boolean dirty;
+  private volatile IOException commitFailure;
+
+  private BookingJournal(Path directory, int compactionThreshold) {
+    this.directory = directory;
+    this.compactionThreshold = compactionThreshold;
+  }
+
+  /**
+   * Same as open with default compaction threshold and commit interval.
+   */
+  public static BookingJournal open(Path directory, Scheduler.Builder builder) throws IOException {
+    return open(directory, builder, DEFAULT_COMPACTION_THRESHOLD, DEFAULT_COMMIT_INTERVAL_MILLIS);
+  }
+
+  /**
+   * Builds a Scheduler journaled to the given directory, recovering its bookings if there are any. The directory is
+   * created if it does not exist. Rules are not tested on recovered bookings.
+   *
+   * @param builder configures the Scheduler, except for bookings. The journal is added as its listener.
+   * @param compactionThreshold number of journal records after which a snapshot is written
+   * @param commitIntervalMillis maximum time a booking waits for its fsync, zero to fsync every booking
+   */
+  public static BookingJournal open(Path directory, Scheduler.Builder builder, int compactionThreshold,
+      long commitIntervalMillis) throws IOException {
+    if (compactionThreshold <= 0 || commitIntervalMillis < 0) {
+      throw new IllegalArgumentException(
+          String.format("Bad arguments: [%d,%d]", compactionThreshold, commitIntervalMillis));
+    }
+    Files.createDirectories(directory);
+    BookingJournal bookingJournal = new BookingJournal(directory, compactionThreshold);
+    bookingJournal.recover(builder.listener(bookingJournal).build());
+    if (commitIntervalMillis > 0) {
+      bookingJournal.startCommitter(commitIntervalMillis);
+    }
+    return bookingJournal;
+  }
+
+  /**
+   * @return the journaled Scheduler.
+   */
+  public Scheduler scheduler() {
+    return scheduler;
+  }
+
+  /**
+   * Appends the booking to the journal. Called by the Scheduler.
+   *
+   * @throws UncheckedIOException if the journal can't be written.
+   */
+  @Override
+  public synchronized void booked(Booking booking) {
+    try {
+      append(BOOKED, booking, null);
+      commit();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Appends the batch to the journal before compacting, as the Scheduler already holds all of it.
+   */
+  @Override
+  public synchronized void bookedAll(List<Booking> bookings) {
+    try {
+      for (Booking booking : bookings) {
+        append(BOOKED, booking, null);
+      }
+      commit();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public synchronized void cancelled(Booking booking) {
+    try {
+      append(CANCELLED, booking, null);
+      commit();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public synchronized void rescheduled(Booking booking, Booking moved) {
+    try {
+      append(RESCHEDULED, booking, moved);
+      commit();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Record payload is the type followed by the booking, and the moved booking for RESCHEDULED.
+   */
+  private void append(byte type, Booking booking, Booking moved) throws IOException {
+    checkCommitFailure();
+    record.clear();
+    record.put(type);
+    record = BookingCodec.put(record, booking);
+    if (moved != null) {
+      record = BookingCodec.put(record, moved);
+    }
+    record.flip();
+    crc.reset();
+    crc.update(record.duplicate());
+    if (pending.remaining() < RECORD_HEADER_SIZE + record.remaining()) {
+      writePending();
+      if (pending.capacity() < RECORD_HEADER_SIZE + record.remaining()) {
+        pending = ByteBuffer.allocate(RECORD_HEADER_SIZE + record.remaining());
+      }
+    }
+    pending.putInt(record.remaining())
+        .putInt((int) crc.getValue())
+        .put(record);
+    dirty = true;
+    journalRecords++;
+  }
+
+  private void commit() throws IOException {
+    if (committer == null) {
+      sync();
+    }
+    if (journalRecords >= compactionThreshold) {
+      compact();
+    }
+  }
+
+  /**
+   * Makes all bookings made up to now durable.
+   */
+  public synchronized void sync() throws IOException {
+    writePending();
+    if (dirty) {
+      journal.force(false);
+      dirty = false;
+    }
+  }
+
+  /**
+   * Writes a snapshot of the Scheduler and starts an empty journal. Must be called from the booking thread.
+   */
+  public synchronized void compact() throws IOException {
+    sync();
+    long next = generation + 1;
+    Path temporary = directory.resolve(SNAPSHOT + ".tmp");
+    try (FileChannel snapshot = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      writeSnapshot(snapshot, next);
+      snapshot.force(true);
+    }
+    Files.move(temporary, directory.resolve(SNAPSHOT), StandardCopyOption.ATOMIC_MOVE);
+    syncDirectory();
+    FileChannel nextJournal = createJournal(next);
+    journal.close();
+    Files.delete(journalPath(generation));
+    journal = nextJournal;
+    generation = next;
+    journalRecords = 0;
+  }
+
+  /**
+   * Syncs the journal and releases it. The Scheduler must not book anymore.
+   */
+  @Override
+  public void close() throws IOException {
+    if (committer != null) {
+      committer.shutdown();
+      try {
+        committer.awaitTermination(1, TimeUnit.MINUTES);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    synchronized (this) {
+      try {
+        sync();
+      } finally {
+        journal.close();
+      }
+    }
+  }
+
+  private void startCommitter(long commitIntervalMillis) {
+    committer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "booking-journal-commit");
+      thread.setDaemon(true);
+      return thread;
+    });
+    committer.scheduleWithFixedDelay(() -> {
+      try {
+        sync();
+      } catch (IOException e) {
+        commitFailure = e;
+      }
+    }, commitIntervalMillis, commitIntervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  private void checkCommitFailure() throws IOException {
+    if (commitFailure != null) {
+      throw new IOException("Journal commit failed", commitFailure);
+    }
+  }
+
+  private void writePending() throws IOException {
+    pending.flip();
+    while (pending.hasRemaining()) {
+      journal.write(pending);
+    }
+    pending.clear();
+  }
+
+  private void recover(Scheduler scheduler) throws IOException {
+    this.scheduler = scheduler;
+    Path snapshot = directory.resolve(SNAPSHOT);
+    if (Files.exists(snapshot)) {
+      generation = readSnapshot(snapshot);
+    }
+    Path path = journalPath(generation);
+    if (Files.exists(path) && Files.size(path) >= HEADER_SIZE) {
+      journal = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      long end = replay(journal);
+      journal.truncate(end);
+      journal.position(end);
+    } else {
+      journal = createJournal(generation);
+    }
+    deleteOtherJournals();
+    scheduler.publishSnapshot();
+  }
+
+  /**
+   * Books all intact records of the journal.
+   *
+   * @return position after the last intact record.
+   */
+  private long replay(FileChannel channel) throws IOException {
+    MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+    if (buffer.getInt() != JOURNAL_MAGIC || buffer.getLong() != generation) {
+      throw new IOException("Not a journal of generation " + generation + ": " + journalPath(generation));
+    }
+    while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+      int length = buffer.getInt();
+      int checksum = buffer.getInt();
+      if (length < 0 || length > buffer.remaining()) {
+        return buffer.position() - RECORD_HEADER_SIZE;
+      }
+      ByteBuffer payload = buffer.slice();
+      payload.limit(length);
+      crc.reset();
+      crc.update(payload.duplicate());
+      if ((int) crc.getValue() != checksum) {
+        return buffer.position() - RECORD_HEADER_SIZE;
+      }
+      apply(payload);
+      buffer.position(buffer.position() + length);
+      journalRecords++;
+    }
+    return buffer.position();
+  }
+
+  private void apply(ByteBuffer payload) throws IOException {
+    byte type = payload.get();
+    Booking booking = BookingCodec.get(payload);
+    if (type == BOOKED) {
+      scheduler.restore(booking);
+    } else if (type == CANCELLED) {
+      scheduler.restoreCancel(booking);
+    } else if (type == RESCHEDULED) {
+      scheduler.restoreCancel(booking);
+      scheduler.restore(BookingCodec.get(payload));
+    } else {
+      throw new IOException("Unknown journal record type: " + type);
+    }
+  }
+
+  private FileChannel createJournal(long journalGeneration) throws IOException {
+    FileChannel channel = FileChannel.open(journalPath(journalGeneration), StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(JOURNAL_MAGIC).putLong(journalGeneration);
+    header.flip();
+    while (header.hasRemaining()) {
+      channel.write(header);
+    }
+    channel.force(true);
+    syncDirectory();
+    return channel;
+  }
+
+  private void deleteOtherJournals() throws IOException {
+    Path current = journalPath(generation);
+    try (DirectoryStream<Path> journals = Files.newDirectoryStream(directory, JOURNAL_PREFIX + "*")) {
+      for (Path path : journals) {
+        if (!path.equals(current)) {
+          Files.delete(path);
+        }
+      }
+    }
+  }
+
+  private Path journalPath(long journalGeneration) {
+    return directory.resolve(JOURNAL_PREFIX + journalGeneration);
+  }
+
+  /**
+   * Snapshot layout: magic, generation, interval count, intervals as start and end millis in time order, booking
+   * count, bookings in BookingCodec form.
+   */
+  private void writeSnapshot(FileChannel channel, long snapshotGeneration) throws IOException {
+    int intervalCount = 0;
+    for (IntervalCursor intervals = scheduler.bookedIntervals(); intervals.next(); ) {
+      intervalCount++;
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    buffer.putInt(SNAPSHOT_MAGIC).putLong(snapshotGeneration).putInt(intervalCount);
+    for (IntervalCursor intervals = scheduler.bookedIntervals(); intervals.next(); ) {
+      buffer = drainIfFull(channel, buffer);
+      buffer.putLong(intervals.start()).putLong(intervals.end());
+    }
+    buffer = drainIfFull(channel, buffer);
+    buffer.putInt(scheduler.getBookings().size());
+    for (Booking booking : scheduler.getBookings()) {
+      buffer = BookingCodec.put(drainIfFull(channel, buffer), booking);
+    }
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  private static ByteBuffer drainIfFull(FileChannel channel, ByteBuffer buffer) throws IOException {
+    if (buffer.remaining() < BUFFER_SIZE / 16) {
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      buffer.clear();
+    }
+    return buffer;
+  }
+
+  /**
+   * @return generation of the snapshot.
+   */
+  private long readSnapshot(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.getInt() != SNAPSHOT_MAGIC) {
+        throw new IOException("Not a snapshot: " + path);
+      }
+      long snapshotGeneration = buffer.getLong();
+      int intervalCount = buffer.getInt();
+      long intervalBytes = (long) intervalCount * 2 * Long.BYTES;
+      if (intervalCount < 0 || intervalBytes > buffer.remaining()) {
+        throw new IOException("Corrupt snapshot: " + path);
+      }
+      ByteBuffer intervals = buffer.slice();
+      buffer.position(buffer.position() + (int) intervalBytes);
+      int bookingCount = buffer.getInt();
+      List<Booking> bookings = new ArrayList<>(bookingCount);
+      for (int i = 0; i < bookingCount; i++) {
+        bookings.add(BookingCodec.get(buffer));
+      }
+      scheduler.restore(new BufferCursor(intervals, intervalCount), bookings);
+      return snapshotGeneration;
+    }
+  }
+
+  /**
+   * Makes a rename in the directory durable. Not every platform can open a directory, there it is left to the OS.
+   */
+  private void syncDirectory() {
+    try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+      channel.force(true);
+    } catch (IOException e) {
+      // not supported on this platform
+    }
+  }
+
+  /**
+   * Intervals stored as pairs of longs.
+   */
+  private static final class BufferCursor implements IntervalCursor {
+
+    private final ByteBuffer buffer;
+    private int remaining;
+    private long start;
+    private long end;
+
+    BufferCursor(ByteBuffer buffer, int count) {
+      this.buffer = buffer;
+      this.remaining = count;
+    }
+
+    @Override
+    public boolean next() {
+      if (remaining == 0) {
+        return false;
+      }
+      remaining--;
+      start = buffer.getLong();
+      end = buffer.getLong();
+      return true;
+    }
+
+    @Override
+    public long start() {
+      return start;
+    }
+
+    @Override
+    public long end() {
+      return end;
+    }
+  }
+}
@@ -0,0 +1,35 @@
+package com.marketlogicsoftware;
+
+import java.util.List;
+
+/**
+ * Notified by a Scheduler about bookings it accepts, see Scheduler.Builder.listener.
+ */
+public interface BookingListener {
+
+  /**
+   * Called on the booking thread after the booking is made.
+   */
+  void booked(Booking booking);
+
+  /**
+   * Called after a batch of Scheduler.bookAll is made, with the accepted bookings in booking order.
+   */
+  default void bookedAll(List<Booking> bookings) {
+    bookings.forEach(this::booked);
+  }
+
+  /**
+   * Called after a booking is cancelled. Does nothing unless overridden.
+   */
+  default void cancelled(Booking booking) {
+  }
+
+  /**
+   * Called after a booking is moved by Scheduler.reschedule.
+   */
+  default void rescheduled(Booking booking, Booking moved) {
+    cancelled(booking);
+    booked(moved);
+  }
+}
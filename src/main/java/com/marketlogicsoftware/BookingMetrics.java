@@ -0,0 +1,117 @@
+package com.marketlogicsoftware;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Counters and latency histograms of the booking pipeline: parsing records, testing rules, testing availability
+ * and writing output, plus bookings accepted and rejected by reason.
+ *
+ * Given to a Scheduler through its Builder. A Scheduler without metrics skips all measuring behind a null check of
+ * a final field, so disabled metrics cost nothing measurable. Safe to share between threads and Schedulers.
+ */
+public class BookingMetrics implements BookingMetricsMXBean {
+
+  private static final Logger LOG = LoggerFactory.getLogger(BookingMetrics.class);
+  private static final String DOMAIN = "com.marketlogicsoftware";
+
+  private final LongAdder accepted = new LongAdder();
+  private final LongAdder rejectedByRule = new LongAdder();
+  private final LongAdder rejectedOverlap = new LongAdder();
+  private final LatencyHistogram parse = new LatencyHistogram();
+  private final LatencyHistogram rule = new LatencyHistogram();
+  private final LatencyHistogram availability = new LatencyHistogram();
+  private final LatencyHistogram output = new LatencyHistogram();
+
+  /**
+   * Registers these metrics at the platform MBean server.
+   *
+   * @param name distinguishes Schedulers of one JVM
+   * @return name of the registered bean, to unregister it.
+   */
+  public ObjectName register(String name) throws JMException {
+    ObjectName objectName = new ObjectName(DOMAIN + ":type=BookingMetrics,name=" + ObjectName.quote(name));
+    ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+    LOG.info("Registered booking metrics as {}", objectName);
+    return objectName;
+  }
+
+  void recordOutcome(BookingOutcome outcome) {
+    switch (outcome) {
+      case ACCEPTED:
+        accepted.increment();
+        break;
+      case REJECTED_BY_RULE:
+        rejectedByRule.increment();
+        break;
+      default:
+        rejectedOverlap.increment();
+    }
+  }
+
+  void recordParse(long nanos) {
+    parse.record(nanos);
+  }
+
+  void recordRule(long nanos) {
+    rule.record(nanos);
+  }
+
+  void recordAvailability(long nanos) {
+    availability.record(nanos);
+  }
+
+  void recordOutput(long nanos) {
+    output.record(nanos);
+  }
+
+  @Override
+  public long getAccepted() {
+    return accepted.sum();
+  }
+
+  @Override
+  public long getRejectedByRule() {
+    return rejectedByRule.sum();
+  }
+
+  @Override
+  public long getRejectedOverlap() {
+    return rejectedOverlap.sum();
+  }
+
+  @Override
+  public LatencySummary getParseLatency() {
+    return LatencySummary.of(parse);
+  }
+
+  @Override
+  public LatencySummary getRuleLatency() {
+    return LatencySummary.of(rule);
+  }
+
+  @Override
+  public LatencySummary getAvailabilityLatency() {
+    return LatencySummary.of(availability);
+  }
+
+  @Override
+  public LatencySummary getOutputLatency() {
+    return LatencySummary.of(output);
+  }
+
+  @Override
+  public void reset() {
+    accepted.reset();
+    rejectedByRule.reset();
+    rejectedOverlap.reset();
+    parse.reset();
+    rule.reset();
+    availability.reset();
+    output.reset();
+  }
+}
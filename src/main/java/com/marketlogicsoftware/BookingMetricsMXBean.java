@@ -0,0 +1,26 @@
+package com.marketlogicsoftware;
+
+/**
+ * JMX view of BookingMetrics. Latencies are in nanoseconds.
+ */
+public interface BookingMetricsMXBean {
+
+  long getAccepted();
+
+  long getRejectedByRule();
+
+  long getRejectedOverlap();
+
+  LatencySummary getParseLatency();
+
+  LatencySummary getRuleLatency();
+
+  LatencySummary getAvailabilityLatency();
+
+  LatencySummary getOutputLatency();
+
+  /**
+   * Clears all counters and histograms.
+   */
+  void reset();
+}
@@ -0,0 +1,84 @@
+package com.marketlogicsoftware;
+
+/**
+ * Stable sort of booking indexes by a primitive key, normally booked time.
+ *
+ * Natural merge sort: the input is cut into ascending runs, strictly descending runs are reversed, then runs are
+ * merged pairwise. Booking logs are nearly sorted by booked time, so there are few runs and sorting is close to
+ * O(n); an already sorted input is a single run and costs one pass. Equal keys keep their input order, so no
+ * booking is lost or reordered on a timestamp collision.
+ */
+final class BookingOrder {
+
+  private BookingOrder() {
+  }
+
+  /**
+   * Sorts indexes by keys[index], keeping the order of indexes with equal keys.
+   */
+  static void sort(int[] indexes, long[] keys) {
+    int length = indexes.length;
+    if (length < 2) {
+      return;
+    }
+    int[] runEnds = new int[length + 1];
+    int runs = 0;
+    int start = 0;
+    while (start < length) {
+      int end = start + 1;
+      if (end < length && keys[indexes[end]] < keys[indexes[start]]) {
+        while (end < length && keys[indexes[end]] < keys[indexes[end - 1]]) {
+          end++;
+        }
+        reverse(indexes, start, end);
+      } else {
+        while (end < length && keys[indexes[end]] >= keys[indexes[end - 1]]) {
+          end++;
+        }
+      }
+      runEnds[runs++] = end;
+      start = end;
+    }
+
+    int[] source = indexes;
+    int[] target = new int[length];
+    while (runs > 1) {
+      int merged = 0;
+      int from = 0;
+      for (int run = 0; run < runs; run += 2) {
+        int middle = runEnds[run];
+        int to = run + 1 < runs ? runEnds[run + 1] : middle;
+        merge(source, target, keys, from, middle, to);
+        runEnds[merged++] = to;
+        from = to;
+      }
+      runs = merged;
+      int[] swap = source;
+      source = target;
+      target = swap;
+    }
+    if (source != indexes) {
+      System.arraycopy(source, 0, indexes, 0, length);
+    }
+  }
+
+  private static void merge(int[] source, int[] target, long[] keys, int from, int middle, int to) {
+    int left = from;
+    int right = middle;
+    for (int i = from; i < to; i++) {
+      if (right >= to || (left < middle && keys[source[left]] <= keys[source[right]])) {
+        target[i] = source[left++];
+      } else {
+        target[i] = source[right++];
+      }
+    }
+  }
+
+  private static void reverse(int[] indexes, int from, int to) {
+    for (int i = from, j = to - 1; i < j; i++, j--) {
+      int swap = indexes[i];
+      indexes[i] = indexes[j];
+      indexes[j] = swap;
+    }
+  }
+}
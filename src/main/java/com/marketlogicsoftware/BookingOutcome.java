@@ -0,0 +1,16 @@
+package com.marketlogicsoftware;
+
+/**
+ * Result of trying a booking.
+ */
+public enum BookingOutcome {
+  ACCEPTED,
+  /**
+   * Some BookingRule did not match.
+   */
+  REJECTED_BY_RULE,
+  /**
+   * Overlaps a booking made before.
+   */
+  REJECTED_OVERLAP
+}
@@ -0,0 +1,282 @@
+package com.marketlogicsoftware;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.joda.time.DateTime;
+
+/**
+ * Parses the two line booking records straight into primitive fields.
+ *
+ * Accepts the same records as Booking.fromString. Records of the usual fixed layout are parsed on a fast path:
+ * <pre>
+ *   YYYY-MM-DD HH:MM:SS EMPLOYEE
+ *   YYYY-MM-DD HH:MM HOURS [RESOURCE]
+ * </pre>
+ * No intermediate strings, regexes or formatters are used there. Employee ids are interned through an
+ * EmployeeDictionary, so a known id costs nothing either. Resource ids are interned the same way. Records the fast
+ * path does not take, like trailing spaces or a signed duration, are handed to Booking.fromString. Results of the
+ * last parse are kept in this instance, read them with the getters or materialize a Booking with toBooking.
+ *
+ * Malformed records throw the same IllegalArgumentException as Booking.fromString.
+ *
+ * Not thread safe. Use one parser per thread, they may share nothing.
+ */
+public final class BookingParser {
+
+  private static final int DATE_LENGTH = "YYYY-MM-DD".length();
+  private static final int BOOKED_PREFIX_LENGTH = "YYYY-MM-DD HH:MM:SS ".length();
+  private static final int SCHEDULE_PREFIX_LENGTH = "YYYY-MM-DD HH:MM ".length();
+  private static final int MAX_DURATION_DIGITS = 6;
+
+  private final EmployeeDictionary employees;
+  private final ResourceDictionary resources = new ResourceDictionary();
+  private final ByteChars byteChars = new ByteChars();
+
+  private long bookedSecond;
+  private long startMinute;
+  private long durationMinutes;
+  private int employeeIndex;
+  private int resourceStart;
+  private int resourceIndex;
+  private Booking parsed;
+
+  public BookingParser() {
+    this(new EmployeeDictionary());
+  }
+
+  public BookingParser(EmployeeDictionary employees) {
+    this.employees = employees;
+  }
+
+  /**
+   * @param bookingLine Example: "2015-08-17 10:17:06 EMP001"
+   * @param scheduleLine Example: "2015-08-21 09:00 2"
+   */
+  public void parse(CharSequence bookingLine, CharSequence scheduleLine) {
+    if (!parseBookingLine(bookingLine, 0, bookingLine.length())
+        || !parseScheduleLine(scheduleLine, 0, scheduleLine.length())) {
+      parseSlowly(bookingLine.toString(), scheduleLine.toString());
+      return;
+    }
+    parsed = null;
+    employeeIndex = employees.intern(bookingLine, BOOKED_PREFIX_LENGTH, bookingLine.length());
+    resourceIndex = resourceStart < 0 ? -1 : resources.intern(scheduleLine, resourceStart, scheduleLine.length());
+  }
+
+  /**
+   * Same as parse(CharSequence, CharSequence) for lines stored as UTF-8 in a buffer. Line terminators must not be
+   * included in the ranges. Buffer position is not changed.
+   */
+  public void parse(ByteBuffer buffer, int bookingStart, int bookingEnd, int scheduleStart, int scheduleEnd) {
+    byteChars.buffer = buffer;
+    if (!parseBookingLine(byteChars, bookingStart, bookingEnd)
+        || !parseScheduleLine(byteChars, scheduleStart, scheduleEnd)) {
+      parseSlowly(decode(buffer, bookingStart, bookingEnd), decode(buffer, scheduleStart, scheduleEnd));
+      return;
+    }
+    parsed = null;
+    employeeIndex = employees.intern(buffer, bookingStart + BOOKED_PREFIX_LENGTH, bookingEnd);
+    resourceIndex = resourceStart < 0 ? -1 : resources.intern(buffer, resourceStart, scheduleEnd);
+  }
+
+  /**
+   * @return last parsed record as a new Booking.
+   */
+  public Booking toBooking() {
+    if (parsed != null) {
+      return parsed;
+    }
+    DateTime startTime = LocalEpoch.minuteToDateTime(startMinute);
+    return new Booking(LocalEpoch.secondToDateTime(bookedSecond), getEmployee(), startTime,
+        startTime.plusMinutes((int) durationMinutes), getResourceId());
+  }
+
+  /**
+   * @return booked time in seconds since local epoch.
+   */
+  public long getBookedSecond() {
+    return bookedSecond;
+  }
+
+  /**
+   * @return start time in minutes since local epoch.
+   */
+  public long getStartMinute() {
+    return startMinute;
+  }
+
+  public long getDurationMinutes() {
+    return durationMinutes;
+  }
+
+  public int getEmployeeIndex() {
+    return employeeIndex;
+  }
+
+  public String getEmployee() {
+    return employees.name(employeeIndex);
+  }
+
+  /**
+   * @return resource id of the record, Booking.DEFAULT_RESOURCE if it has none.
+   */
+  public String getResourceId() {
+    return resourceIndex < 0 ? Booking.DEFAULT_RESOURCE : resources.name(resourceIndex);
+  }
+
+  public EmployeeDictionary getEmployees() {
+    return employees;
+  }
+
+  /**
+   * Parses a record the fast path does not take with Booking.fromString, and fills the fields from the Booking.
+   */
+  private void parseSlowly(String bookingLine, String scheduleLine) {
+    Booking booking = Booking.fromString(bookingLine, scheduleLine);
+    bookedSecond = Math.floorDiv(LocalEpoch.localMillis(booking.getBookedTime()), 1000);
+    startMinute = Math.floorDiv(LocalEpoch.localMillis(booking.getStartTime()), 60 * 1000);
+    durationMinutes = (booking.getEndTime().getMillis() - booking.getStartTime().getMillis()) / (60 * 1000);
+    employeeIndex = employees.intern(booking.getBookedBy());
+    resourceIndex = booking.getResourceId().equals(Booking.DEFAULT_RESOURCE)
+        ? -1 : resources.intern(booking.getResourceId());
+    parsed = booking;
+  }
+
+  private boolean parseBookingLine(CharSequence line, int start, int end) {
+    if (end - start <= BOOKED_PREFIX_LENGTH || line.charAt(start + 16) != ':'
+        || line.charAt(start + 19) != ' ') {
+      return false;
+    }
+    long epochDay = parseDate(line, start);
+    long minuteOfDay = parseTime(line, start + DATE_LENGTH + 1);
+    int second = twoDigits(line, start + 17);
+    if (epochDay == Long.MIN_VALUE || minuteOfDay < 0 || second < 0 || second > 59) {
+      return false;
+    }
+    for (int i = start + BOOKED_PREFIX_LENGTH; i < end; i++) {
+      if (line.charAt(i) == ' ') {
+        return false;
+      }
+    }
+    bookedSecond = (epochDay * LocalEpoch.MINUTES_PER_DAY + minuteOfDay) * 60 + second;
+    return true;
+  }
+
+  private boolean parseScheduleLine(CharSequence line, int start, int end) {
+    if (end - start <= SCHEDULE_PREFIX_LENGTH || line.charAt(start + 16) != ' ') {
+      return false;
+    }
+    int durationEnd = start + SCHEDULE_PREFIX_LENGTH;
+    while (durationEnd < end && line.charAt(durationEnd) != ' ') {
+      durationEnd++;
+    }
+    int digits = durationEnd - start - SCHEDULE_PREFIX_LENGTH;
+    if (digits <= 0 || digits > MAX_DURATION_DIGITS) {
+      return false;
+    }
+    resourceStart = -1;
+    if (durationEnd < end) {
+      if (durationEnd + 1 == end) {
+        return false;
+      }
+      for (int i = durationEnd + 1; i < end; i++) {
+        if (line.charAt(i) == ' ') {
+          return false;
+        }
+      }
+      resourceStart = durationEnd + 1;
+    }
+    long epochDay = parseDate(line, start);
+    long minuteOfDay = parseTime(line, start + DATE_LENGTH + 1);
+    if (epochDay == Long.MIN_VALUE || minuteOfDay < 0) {
+      return false;
+    }
+    int hours = 0;
+    for (int i = start + SCHEDULE_PREFIX_LENGTH; i < durationEnd; i++) {
+      int digit = line.charAt(i) - '0';
+      if (digit < 0 || digit > 9) {
+        return false;
+      }
+      hours = hours * 10 + digit;
+    }
+    startMinute = epochDay * LocalEpoch.MINUTES_PER_DAY + minuteOfDay;
+    durationMinutes = hours * 60;
+    return true;
+  }
+
+  /**
+   * @return epoch day of "YYYY-MM-DD " at offset, Long.MIN_VALUE if it is not a valid date.
+   */
+  private static long parseDate(CharSequence line, int offset) {
+    int century = twoDigits(line, offset);
+    int yearOfCentury = twoDigits(line, offset + 2);
+    int month = twoDigits(line, offset + 5);
+    int day = twoDigits(line, offset + 8);
+    if (century < 0 || yearOfCentury < 0 || line.charAt(offset + 4) != '-' || line.charAt(offset + 7) != '-'
+        || line.charAt(offset + 10) != ' ') {
+      return Long.MIN_VALUE;
+    }
+    int year = century * 100 + yearOfCentury;
+    if (year < 1 || month < 1 || month > 12 || day < 1 || day > LocalEpoch.daysInMonth(year, month)) {
+      return Long.MIN_VALUE;
+    }
+    return LocalEpoch.daysFromCivil(year, month, day);
+  }
+
+  /**
+   * @return minute of day of "HH:MM" at offset, -1 if it is not a valid time.
+   */
+  private static int parseTime(CharSequence line, int offset) {
+    int hour = twoDigits(line, offset);
+    int minute = twoDigits(line, offset + 3);
+    if (hour < 0 || hour > 23 || minute < 0 || minute > 59 || line.charAt(offset + 2) != ':') {
+      return -1;
+    }
+    return hour * 60 + minute;
+  }
+
+  private static int twoDigits(CharSequence line, int offset) {
+    int high = line.charAt(offset) - '0';
+    int low = line.charAt(offset + 1) - '0';
+    if (high < 0 || high > 9 || low < 0 || low > 9) {
+      return -1;
+    }
+    return high * 10 + low;
+  }
+
+  private static String decode(ByteBuffer buffer, int start, int end) {
+    byte[] bytes = new byte[end - start];
+    for (int i = start; i < end; i++) {
+      bytes[i - start] = buffer.get(i);
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Presents a byte buffer as chars, so both inputs share one parsing code path. Bytes above ASCII never match a
+   * digit or separator, so UTF-8 input needs no decoding up to the employee id.
+   */
+  private static final class ByteChars implements CharSequence {
+
+    private ByteBuffer buffer;
+
+    @Override
+    public int length() {
+      return buffer.limit();
+    }
+
+    @Override
+    public char charAt(int index) {
+      return (char) (buffer.get(index) & 0xFF);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+      StringBuilder chars = new StringBuilder(end - start);
+      for (int i = start; i < end; i++) {
+        chars.append(charAt(i));
+      }
+      return chars;
+    }
+  }
+}
@@ -6,4 +6,24 @@ package com.marketlogicsoftware;
 public interface BookingRule {
 
   boolean test(Booking booking);
+
+  /**
+   * A stateless rule gives the same answer for a booking whatever was booked before, and may be tested from any
+   * thread. Scheduler.bookAll tests such rules in parallel before booking anything.
+   *
+   * @return true if the rule is stateless. False unless overridden, which is always safe.
+   */
+  default boolean isStateless() {
+    return false;
+  }
+
+  /**
+   * Rules which only look at booking times can compile to a test on primitives, which Schedulers use instead of
+   * test. The compiled rule must accept exactly the bookings test accepts.
+   *
+   * @return a compiled rule, calling test unless overridden. Null is taken as not compiled.
+   */
+  default CompiledRule compile() {
+    return CompiledRule.fallback(this);
+  }
 }
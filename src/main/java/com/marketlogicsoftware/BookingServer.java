@@ -0,0 +1,413 @@
+package com.marketlogicsoftware;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Serves a resident Scheduler over a local socket with a line protocol.
+ *
+ * A client sends booking records in the two line format of the input file and gets one line per record:
+ * ACCEPTED, REJECTED RULE, REJECTED OVERLAP or ERROR followed by a message. The line QUERY is answered with all
+ * bookings in the format of Scheduler.output, followed by a line END. Responses come in request order, so clients
+ * may pipeline requests.
+ *
+ * One thread runs an NIO selector loop: it accepts connections, splits input into records, parses them and queues
+ * them. Another thread owns the Scheduler. It drains the queue in batches and books consecutive records with one
+ * bookAll call, so records of one batch are tried in order of booking time, same as in an input file. Responses
+ * go back to the selector thread, which writes them. A connection with too many requests in flight is not read
+ * until responses catch up.
+ */
+public class BookingServer implements Closeable {
+
+  static final int MAX_BATCH = 4096;
+  private static final Logger LOG = LoggerFactory.getLogger(BookingServer.class);
+  private static final int MAX_IN_FLIGHT = 1024;
+  private static final int MAX_LINE = 8192;
+  private static final String QUERY = "QUERY";
+
+  private final Scheduler scheduler;
+  private final ServerSocketChannel serverChannel;
+  private final Selector selector;
+  private final BlockingQueue<Request> requests = new LinkedBlockingQueue<>();
+  private final Queue<Connection> pendingWrites = new ConcurrentLinkedQueue<>();
+  private final BookingParser parser = new BookingParser();
+  private final Thread selectorThread;
+  private final Thread workerThread;
+  private volatile boolean running = true;
+
+  private BookingServer(Scheduler scheduler, int port) throws IOException {
+    this.scheduler = scheduler;
+    this.selector = Selector.open();
+    this.serverChannel = ServerSocketChannel.open();
+    serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    serverChannel.configureBlocking(false);
+    serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    this.selectorThread = new Thread(this::selectLoop, "booking-server-selector");
+    this.workerThread = new Thread(this::workLoop, "booking-server-worker");
+  }
+
+  /**
+   * Starts serving on the loopback interface. The Scheduler must not be used by anyone else until the server is
+   * closed.
+   *
+   * @param port to listen on, 0 for any free port
+   */
+  public static BookingServer start(Scheduler scheduler, int port) throws IOException {
+    BookingServer server = new BookingServer(scheduler, port);
+    server.selectorThread.start();
+    server.workerThread.start();
+    LOG.info("Serving bookings on port {}", server.getPort());
+    return server;
+  }
+
+  public int getPort() {
+    return serverChannel.socket().getLocalPort();
+  }
+
+  /**
+   * Stops both threads and closes all connections. Queued requests are dropped.
+   */
+  @Override
+  public void close() throws IOException {
+    running = false;
+    selector.wakeup();
+    try {
+      selectorThread.join();
+      workerThread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    for (SelectionKey key : selector.keys()) {
+      key.channel().close();
+    }
+    selector.close();
+  }
+
+  private void selectLoop() {
+    try {
+      while (running) {
+        selector.select();
+        Connection connection;
+        while ((connection = pendingWrites.poll()) != null) {
+          connection.write();
+        }
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          if (!key.isValid()) {
+            continue;
+          }
+          if (key.isAcceptable()) {
+            accept();
+          } else {
+            Connection selected = (Connection) key.attachment();
+            if (key.isReadable()) {
+              selected.read();
+            }
+            if (key.isValid() && key.isWritable()) {
+              selected.write();
+            }
+          }
+        }
+      }
+    } catch (IOException e) {
+      LOG.error("Selector loop failed", e);
+      running = false;
+    }
+  }
+
+  private void accept() throws IOException {
+    SocketChannel channel = serverChannel.accept();
+    if (channel != null) {
+      channel.configureBlocking(false);
+      Connection connection = new Connection(channel);
+      connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+    }
+  }
+
+  private void workLoop() {
+    List<Request> batch = new ArrayList<>();
+    try {
+      while (running) {
+        Request first = requests.poll(100, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+        requests.drainTo(batch, MAX_BATCH - 1);
+        process(batch);
+        batch.clear();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Answers a batch of requests. Runs of bookings are booked together, queries and errors end a run so that
+   * responses keep request order.
+   */
+  private void process(List<Request> batch) {
+    Map<Connection, StringBuilder> responses = new IdentityHashMap<>();
+    Map<Connection, Integer> answered = new IdentityHashMap<>();
+    List<Request> run = new ArrayList<>();
+    for (Request request : batch) {
+      if (request.booking != null) {
+        run.add(request);
+        continue;
+      }
+      book(run, responses);
+      run.clear();
+      StringBuilder response = responses.computeIfAbsent(request.connection, connection -> new StringBuilder());
+      if (request.error != null) {
+        response.append("ERROR ").append(request.error).append('\n');
+      } else {
+        response.append(scheduler.output()).append("END\n");
+      }
+    }
+    book(run, responses);
+    for (Request request : batch) {
+      answered.merge(request.connection, 1, Integer::sum);
+    }
+    for (Entry<Connection, StringBuilder> entry : responses.entrySet()) {
+      Connection connection = entry.getKey();
+      connection.send(entry.getValue().toString().getBytes(StandardCharsets.UTF_8), answered.get(connection));
+    }
+    selector.wakeup();
+  }
+
+  /**
+   * Books a run of records with one bookAll call. If it throws, records tried before keep their outcome and the
+   * others are booked one at a time, so only a record which throws on its own answers ERROR.
+   */
+  private void book(List<Request> run, Map<Connection, StringBuilder> responses) {
+    if (run.isEmpty()) {
+      return;
+    }
+    Booking[] bookings = new Booking[run.size()];
+    for (int i = 0; i < bookings.length; i++) {
+      bookings[i] = run.get(i).booking;
+    }
+    BookingOutcome[] outcomes = new BookingOutcome[bookings.length];
+    String[] errors = new String[bookings.length];
+    try {
+      scheduler.bookAll(bookings, outcomes);
+    } catch (RuntimeException e) {
+      LOG.error("Booking failed", e);
+      bookSingly(bookings, outcomes, errors);
+    }
+    for (int i = 0; i < outcomes.length; i++) {
+      responses.computeIfAbsent(run.get(i).connection, connection -> new StringBuilder())
+          .append(outcomes[i] == null ? errors[i] : response(outcomes[i])).append('\n');
+    }
+  }
+
+  /**
+   * Books the bookings without an outcome one at a time in booking order, setting the error of those that throw.
+   */
+  private void bookSingly(Booking[] bookings, BookingOutcome[] outcomes, String[] errors) {
+    List<Integer> untried = new ArrayList<>();
+    for (int i = 0; i < bookings.length; i++) {
+      if (outcomes[i] == null) {
+        untried.add(i);
+      }
+    }
+    untried.sort(Comparator.comparing(i -> bookings[i].getBookedTime()));
+    BookingOutcome[] outcome = new BookingOutcome[1];
+    for (int i : untried) {
+      outcome[0] = null;
+      try {
+        scheduler.bookAll(new Booking[]{bookings[i]}, outcome);
+        outcomes[i] = outcome[0];
+      } catch (RuntimeException e) {
+        LOG.error("Booking failed", e);
+        errors[i] = "ERROR " + e.getMessage();
+      }
+    }
+  }
+
+  private static String response(BookingOutcome outcome) {
+    switch (outcome) {
+      case ACCEPTED:
+        return "ACCEPTED";
+      case REJECTED_BY_RULE:
+        return "REJECTED RULE";
+      default:
+        return "REJECTED OVERLAP";
+    }
+  }
+
+  /**
+   * A booking to make, a query if booking and error are null, or an error to report.
+   */
+  private static final class Request {
+
+    private final Connection connection;
+    private final Booking booking;
+    private final String error;
+
+    Request(Connection connection, Booking booking, String error) {
+      this.connection = connection;
+      this.booking = booking;
+      this.error = error;
+    }
+  }
+
+  /**
+   * State of a client. Fields without synchronization are used by the selector thread only.
+   */
+  private final class Connection {
+
+    private final SocketChannel channel;
+    private final ByteBuffer input = ByteBuffer.allocate(MAX_LINE);
+    private final Queue<ByteBuffer> output = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private SelectionKey key;
+    private String bookingLine;
+    private boolean inputClosed;
+
+    Connection(SocketChannel channel) {
+      this.channel = channel;
+    }
+
+    void read() {
+      try {
+        int read = channel.read(input);
+        if (read < 0) {
+          inputClosed = true;
+          key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+          closeIfDone();
+          return;
+        }
+        splitLines();
+      } catch (IOException | RuntimeException e) {
+        LOG.debug("Dropping connection", e);
+        close();
+      }
+    }
+
+    private void splitLines() {
+      input.flip();
+      int lineStart = 0;
+      for (int i = 0; i < input.limit(); i++) {
+        if (input.get(i) == '\n') {
+          int lineEnd = i > lineStart && input.get(i - 1) == '\r' ? i - 1 : i;
+          byte[] line = new byte[lineEnd - lineStart];
+          input.position(lineStart);
+          input.get(line);
+          onLine(new String(line, StandardCharsets.UTF_8));
+          lineStart = i + 1;
+        }
+      }
+      input.position(lineStart);
+      input.compact();
+      if (!input.hasRemaining()) {
+        throw new IllegalStateException("Line longer than " + MAX_LINE + " bytes");
+      }
+    }
+
+    private void onLine(String line) {
+      if (bookingLine != null) {
+        String first = bookingLine;
+        bookingLine = null;
+        enqueue(parse(first, line));
+      } else if (line.equals(QUERY)) {
+        enqueue(new Request(this, null, null));
+      } else if (!line.isEmpty() && Character.isDigit(line.charAt(0))) {
+        bookingLine = line;
+      } else {
+        enqueue(new Request(this, null, "Unknown command: " + line));
+      }
+    }
+
+    private Request parse(String first, String second) {
+      try {
+        parser.parse(first, second);
+        return new Request(this, parser.toBooking(), null);
+      } catch (IllegalArgumentException e) {
+        return new Request(this, null, e.getMessage());
+      }
+    }
+
+    private void enqueue(Request request) {
+      if (inFlight.incrementAndGet() >= MAX_IN_FLIGHT) {
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+      }
+      requests.add(request);
+    }
+
+    /**
+     * Called by the worker thread with responses of the given number of requests.
+     */
+    void send(byte[] response, int requestCount) {
+      output.add(ByteBuffer.wrap(response));
+      inFlight.addAndGet(-requestCount);
+      pendingWrites.add(this);
+    }
+
+    void write() {
+      if (!key.isValid()) {
+        return;
+      }
+      try {
+        ByteBuffer buffer;
+        while ((buffer = output.peek()) != null) {
+          channel.write(buffer);
+          if (buffer.hasRemaining()) {
+            key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            return;
+          }
+          output.poll();
+        }
+        int interest = key.interestOps() & ~SelectionKey.OP_WRITE;
+        if (!inputClosed && inFlight.get() < MAX_IN_FLIGHT) {
+          interest |= SelectionKey.OP_READ;
+        }
+        key.interestOps(interest);
+        closeIfDone();
+      } catch (IOException e) {
+        LOG.debug("Dropping connection", e);
+        close();
+      }
+    }
+
+    private void closeIfDone() {
+      if (inputClosed && inFlight.get() == 0 && output.isEmpty()) {
+        close();
+      }
+    }
+
+    private void close() {
+      key.cancel();
+      try {
+        channel.close();
+      } catch (IOException e) {
+        LOG.debug("Closing connection failed", e);
+      }
+    }
+  }
+}
@@ -0,0 +1,55 @@
+package com.marketlogicsoftware;
+
+import java.util.Collection;
+import java.util.NavigableMap;
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+
+/**
+ * Keeps the bookings made by a Scheduler, grouped by the date they start on.
+ *
+ * Bookings of a date are kept in their natural order and equal bookings are kept once, like a TreeMultimap. See
+ * TreeBookingStore and CompactBookingStore.
+ *
+ * Range queries return read only live views ordered like values(). Iterating k bookings of a view costs
+ * O(log n + k), views must not be iterated while bookings are added or removed.
+ */
+public interface BookingStore {
+
+  /**
+   * @return false if an equal booking is already stored.
+   */
+  boolean add(Booking booking);
+
+  /**
+   * @return false if no equal booking is stored.
+   */
+  boolean remove(Booking booking);
+
+  /**
+   * @return number of stored bookings.
+   */
+  int size();
+
+  /**
+   * @return a live view of all bookings, ordered by date and then naturally.
+   */
+  Collection<Booking> values();
+
+  /**
+   * @return a live view of all bookings grouped by their start date.
+   */
+  NavigableMap<LocalDate, Collection<Booking>> grouped();
+
+  /**
+   * @return a view of bookings starting at or after from and before to.
+   * @throws IllegalArgumentException if from is after to.
+   */
+  Collection<Booking> startingBetween(DateTime from, DateTime to);
+
+  /**
+   * @return a view of bookings of the employee starting at or after from and before to.
+   * @throws IllegalArgumentException if from is after to.
+   */
+  Collection<Booking> byEmployee(String employee, DateTime from, DateTime to);
+}
@@ -0,0 +1,60 @@
+package com.marketlogicsoftware;
+
+import com.google.common.collect.Iterators;
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NavigableMap;
+import java.util.function.Supplier;
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+
+/**
+ * Helpers for the lazy query views of BookingStores.
+ */
+final class BookingViews {
+
+  /**
+   * Days the start date of a booking made in another time zone can be off from its date in the default time zone.
+   */
+  private static final int DATE_MARGIN = 2;
+
+  private BookingViews() {
+  }
+
+  /**
+   * @return a read only collection creating a new iterator whenever it is iterated. Size counts the elements.
+   */
+  static <E> Collection<E> lazy(Supplier<Iterator<E>> iterators) {
+    return new AbstractCollection<E>() {
+      @Override
+      public Iterator<E> iterator() {
+        return Iterators.unmodifiableIterator(iterators.get());
+      }
+
+      @Override
+      public int size() {
+        int size = 0;
+        for (Iterator<E> iterator = iterator(); iterator.hasNext(); iterator.next()) {
+          size++;
+        }
+        return size;
+      }
+    };
+  }
+
+  /**
+   * @return a view of the days which may hold bookings starting at or after from and before to.
+   */
+  static <V> NavigableMap<LocalDate, V> daysBetween(NavigableMap<LocalDate, V> days, DateTime from, DateTime to) {
+    LocalDate first = new LocalDate(from.getMillis()).minusDays(DATE_MARGIN);
+    LocalDate last = new LocalDate(to.getMillis()).plusDays(DATE_MARGIN);
+    return days.subMap(first, true, last, true);
+  }
+
+  static void checkRange(DateTime from, DateTime to) {
+    if (from.isAfter(to)) {
+      throw new IllegalArgumentException(String.format("Invalid range: [%s, %s)", from, to));
+    }
+  }
+}
@@ -0,0 +1,229 @@
+package com.marketlogicsoftware;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import org.joda.time.Interval;
+import org.joda.time.LocalDate;
+import org.joda.time.LocalTime;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+
+/**
+ * Open hours which depend on the date: hours per weekday, closed days and one-off exceptions.
+ *
+ * Written as an extension of the header line, clauses separated by semicolons. The first clause holds the default
+ * hours, the others override them for weekdays or single dates. Date clauses win over weekday clauses, later
+ * clauses win over earlier ones of the same kind:
+ *
+ * <pre>
+ * 0900 1730; MON-THU 0800 1800; SAT 1000 1400; SUN closed; 2015-12-25 closed; 2015-12-24 0900 1300
+ * </pre>
+ *
+ * Windows are precomputed into arrays of millis of day: one entry per weekday, and one per date clause, sorted by
+ * date. A booking is tested with a binary search of the dates, a table lookup and the same comparisons as
+ * OpenHoursRule.
+ *
+ * Immutable.
+ */
+public class CalendarRule implements WindowedBookingRule {
+
+  private static final DateTimeFormatter timeFormatter = DateTimeFormat.forPattern("HHmm");
+  private static final DateTimeFormatter dateFormatter = ISODateTimeFormat.date();
+  private static final List<String> WEEKDAYS = Arrays.asList("MON", "TUE", "WED", "THU", "FRI", "SAT", "SUN");
+  private static final String CLOSED = "closed";
+  private static final int CLOSED_OPEN = Integer.MAX_VALUE;
+  private static final int CLOSED_CLOSE = -1;
+
+  private final String definition;
+  private final int[] weekdayOpens = new int[7];
+  private final int[] weekdayCloses = new int[7];
+  private final long[] days;
+  private final int[] dayOpens;
+  private final int[] dayCloses;
+
+  private CalendarRule(String definition, String[][] weekdayClauses, List<String[]> dateClauses) {
+    this.definition = definition;
+    for (int weekday = 0; weekday < 7; weekday++) {
+      setWindow(weekdayOpens, weekdayCloses, weekday, weekdayClauses[weekday], 0);
+    }
+    SortedMap<Long, String[]> clausesByDay = new TreeMap<>();
+    for (String[] clause : dateClauses) {
+      clausesByDay.put(epochDay(parseDate(clause[0], definition)), clause);
+    }
+    this.days = new long[clausesByDay.size()];
+    this.dayOpens = new int[days.length];
+    this.dayCloses = new int[days.length];
+    int index = 0;
+    for (Map.Entry<Long, String[]> entry : clausesByDay.entrySet()) {
+      days[index] = entry.getKey();
+      setWindow(dayOpens, dayCloses, index, entry.getValue(), 1);
+      index++;
+    }
+  }
+
+  /**
+   * Rule of a header line: an OpenHoursRule for plain "0900 1730", a CalendarRule if there are more clauses.
+   */
+  public static WindowedBookingRule fromHeader(String header) {
+    return header.contains(";") ? fromString(header) : OpenHoursRule.fromString(header);
+  }
+
+  /**
+   * Static factory method.
+   *
+   * @param definition Example "0900 1730; SAT-SUN closed; 2015-12-24 0900 1300"
+   */
+  public static CalendarRule fromString(String definition) {
+    String[] clauses = definition.split(";");
+    String[][] weekdayClauses = new String[7][];
+    Arrays.fill(weekdayClauses, defaultClause(clauses[0].trim(), definition));
+    List<String[]> dateClauses = new ArrayList<>();
+    for (int i = 1; i < clauses.length; i++) {
+      String[] clause = clauses[i].trim().split("\\s+");
+      checkClause(clause, definition);
+      if (Character.isDigit(clause[0].charAt(0))) {
+        parseDate(clause[0], definition);
+        dateClauses.add(clause);
+      } else {
+        String[] range = clause[0].toUpperCase(Locale.ROOT).split("-");
+        int from = WEEKDAYS.indexOf(range[0]);
+        int to = range.length == 2 ? WEEKDAYS.indexOf(range[1]) : from;
+        if (range.length > 2 || from < 0 || to < from) {
+          throw new IllegalArgumentException(definition + " can not be parsed");
+        }
+        for (int weekday = from; weekday <= to; weekday++) {
+          weekdayClauses[weekday] = Arrays.copyOfRange(clause, 1, clause.length);
+        }
+      }
+    }
+    return new CalendarRule(definition, weekdayClauses, dateClauses);
+  }
+
+  private static String[] defaultClause(String clause, String definition) {
+    String[] times = clause.split("\\s+");
+    if (times.length != 2) {
+      throw new IllegalArgumentException(definition + " can not be parsed");
+    }
+    parseTime(times[0], definition);
+    parseTime(times[1], definition);
+    return times;
+  }
+
+  private static void checkClause(String[] clause, String definition) {
+    boolean closed = clause.length == 2 && clause[1].equalsIgnoreCase(CLOSED);
+    boolean hours = clause.length == 3 && clause[0].length() > 0;
+    if (!closed && !hours) {
+      throw new IllegalArgumentException(definition + " can not be parsed");
+    }
+    if (hours) {
+      parseTime(clause[1], definition);
+      parseTime(clause[2], definition);
+    }
+  }
+
+  /**
+   * Sets the window at index from a validated clause. Times of the clause start at offset, "closed" closes it.
+   */
+  private void setWindow(int[] opens, int[] closes, int index, String[] clause, int offset) {
+    if (clause[offset].equalsIgnoreCase(CLOSED)) {
+      opens[index] = CLOSED_OPEN;
+      closes[index] = CLOSED_CLOSE;
+    } else {
+      opens[index] = parseTime(clause[offset], definition).getMillisOfDay();
+      closes[index] = parseTime(clause[offset + 1], definition).getMillisOfDay();
+    }
+  }
+
+  private static LocalTime parseTime(String time, String definition) {
+    try {
+      return timeFormatter.parseLocalTime(time);
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException(definition + " can not be parsed", e);
+    }
+  }
+
+  private static LocalDate parseDate(String date, String definition) {
+    try {
+      return dateFormatter.parseLocalDate(date);
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException(definition + " can not be parsed", e);
+    }
+  }
+
+  private static long epochDay(LocalDate date) {
+    return LocalEpoch.daysFromCivil(date.getYear(), date.getMonthOfYear(), date.getDayOfMonth());
+  }
+
+  @Override
+  public boolean test(Booking booking) {
+    return test(LocalEpoch.localMillis(booking.getStartTime()), LocalEpoch.localMillis(booking.getEndTime()));
+  }
+
+  private boolean test(long startMillis, long endMillis) {
+    long day = Math.floorDiv(startMillis, LocalEpoch.MILLIS_PER_DAY);
+    long dayStart = day * LocalEpoch.MILLIS_PER_DAY;
+    return endMillis >= dayStart && endMillis - dayStart < LocalEpoch.MILLIS_PER_DAY
+        && startMillis - dayStart >= open(day) && endMillis - dayStart <= close(day);
+  }
+
+  /**
+   * @return opening millis of day of the given epoch day, Integer.MAX_VALUE if it is closed.
+   */
+  private int open(long day) {
+    int index = Arrays.binarySearch(days, day);
+    return index >= 0 ? dayOpens[index] : weekdayOpens[LocalEpoch.dayOfWeek(day) - 1];
+  }
+
+  /**
+   * @return closing millis of day of the given epoch day, -1 if it is closed.
+   */
+  private int close(long day) {
+    int index = Arrays.binarySearch(days, day);
+    return index >= 0 ? dayCloses[index] : weekdayCloses[LocalEpoch.dayOfWeek(day) - 1];
+  }
+
+  @Override
+  public boolean isStateless() {
+    return true;
+  }
+
+  @Override
+  public CompiledRule compile() {
+    return new CompiledRule() {
+      @Override
+      public boolean test(long startMillis, long endMillis, Booking booking) {
+        return CalendarRule.this.test(startMillis, endMillis);
+      }
+
+      @Override
+      public int cost() {
+        return PRIMITIVE_COST;
+      }
+    };
+  }
+
+  @Override
+  public Interval window(LocalDate date) {
+    long day = epochDay(date);
+    int open = open(day);
+    int close = close(day);
+    if (close < open) {
+      return null;
+    }
+    return new Interval(date.toDateTime(LocalTime.fromMillisOfDay(open)),
+        date.toDateTime(LocalTime.fromMillisOfDay(close)));
+  }
+
+  @Override
+  public String toString() {
+    return "CalendarRule{" +
+        "definition='" + definition + '\'' +
+        '}';
+  }
+}
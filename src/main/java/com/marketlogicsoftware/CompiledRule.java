@@ -0,0 +1,44 @@
+package com.marketlogicsoftware;
+
+/**
+ * A BookingRule tested on primitive fields of a booking, see BookingRule.compile.
+ *
+ * Times are wall-clock millis since local epoch in the time zone of the booking, see LocalEpoch.localMillis. They
+ * are computed once per booking and shared by all rules.
+ */
+public interface CompiledRule {
+
+  /**
+   * Cost of a rule comparing a few primitives.
+   */
+  int PRIMITIVE_COST = 1;
+
+  /**
+   * Cost of a rule which has to look at Booking objects.
+   */
+  int OBJECT_COST = 100;
+
+  boolean test(long startMillis, long endMillis, Booking booking);
+
+  /**
+   * @return relative cost of a test. Cheaper rules are tested first.
+   */
+  int cost();
+
+  /**
+   * @return a compiled rule calling the test of the given rule.
+   */
+  static CompiledRule fallback(BookingRule rule) {
+    return new CompiledRule() {
+      @Override
+      public boolean test(long startMillis, long endMillis, Booking booking) {
+        return rule.test(booking);
+      }
+
+      @Override
+      public int cost() {
+        return OBJECT_COST;
+      }
+    };
+  }
+}
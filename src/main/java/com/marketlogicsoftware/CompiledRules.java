@@ -0,0 +1,101 @@
+package com.marketlogicsoftware;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * All rules of a Scheduler compiled into one predicate.
+ *
+ * Daily windows, like the one of OpenHoursRule, are intersected into one window at compile time. Testing it takes
+ * a same-day check on day numbers and two millis-of-day comparisons. Other compiled rules follow, cheapest first,
+ * rules which are not compiled come last. So rules may be tested in another order than they were given, and not at
+ * all once one fails.
+ *
+ * Immutable if the compiled rules are.
+ */
+final class CompiledRules {
+
+  private final boolean windowed;
+  private final long openMillis;
+  private final long closeMillis;
+  private final CompiledRule[] rules;
+
+  private CompiledRules(boolean windowed, long openMillis, long closeMillis, CompiledRule[] rules) {
+    this.windowed = windowed;
+    this.openMillis = openMillis;
+    this.closeMillis = closeMillis;
+    this.rules = rules;
+  }
+
+  static CompiledRules compile(List<? extends BookingRule> ruleList) {
+    boolean windowed = false;
+    long openMillis = Long.MIN_VALUE;
+    long closeMillis = Long.MAX_VALUE;
+    List<CompiledRule> rules = new ArrayList<>();
+    for (BookingRule rule : ruleList) {
+      CompiledRule compiled = rule.compile();
+      if (compiled == null) {
+        compiled = CompiledRule.fallback(rule);
+      }
+      if (compiled instanceof DailyWindow) {
+        DailyWindow window = (DailyWindow) compiled;
+        windowed = true;
+        openMillis = Math.max(openMillis, window.openMillis);
+        closeMillis = Math.min(closeMillis, window.closeMillis);
+      } else {
+        rules.add(compiled);
+      }
+    }
+    rules.sort(Comparator.comparingInt(CompiledRule::cost));
+    return new CompiledRules(windowed, openMillis, closeMillis, rules.toArray(new CompiledRule[0]));
+  }
+
+  /**
+   * @return true if the booking matches all rules.
+   */
+  boolean test(Booking booking) {
+    long startMillis = LocalEpoch.localMillis(booking.getStartTime());
+    long endMillis = LocalEpoch.localMillis(booking.getEndTime());
+    if (windowed) {
+      long dayStart = Math.floorDiv(startMillis, LocalEpoch.MILLIS_PER_DAY) * LocalEpoch.MILLIS_PER_DAY;
+      if (endMillis < dayStart || endMillis - dayStart >= LocalEpoch.MILLIS_PER_DAY
+          || startMillis - dayStart < openMillis || endMillis - dayStart > closeMillis) {
+        return false;
+      }
+    }
+    for (CompiledRule rule : rules) {
+      if (!rule.test(startMillis, endMillis, booking)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Bookings must start and end on the same day, start at or after openMillis and end at or before closeMillis of
+   * that day.
+   */
+  static final class DailyWindow implements CompiledRule {
+
+    private final long openMillis;
+    private final long closeMillis;
+
+    DailyWindow(long openMillis, long closeMillis) {
+      this.openMillis = openMillis;
+      this.closeMillis = closeMillis;
+    }
+
+    @Override
+    public boolean test(long startMillis, long endMillis, Booking booking) {
+      long dayStart = Math.floorDiv(startMillis, LocalEpoch.MILLIS_PER_DAY) * LocalEpoch.MILLIS_PER_DAY;
+      return endMillis >= dayStart && endMillis - dayStart < LocalEpoch.MILLIS_PER_DAY
+          && startMillis - dayStart >= openMillis && endMillis - dayStart <= closeMillis;
+    }
+
+    @Override
+    public int cost() {
+      return PRIMITIVE_COST;
+    }
+  }
+}
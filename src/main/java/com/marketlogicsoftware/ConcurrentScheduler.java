@@ -0,0 +1,246 @@
+package com.marketlogicsoftware;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+import org.joda.time.LocalDate;
+
+/**
+ * Thread safe variant of Scheduler.
+ *
+ * Availability and bookings are striped per day. Each day has its own AvailabilityIndex, bookings and lock, so
+ * bookings of different days never contend. OpenHoursRule rejects bookings spanning days, so a booking normally
+ * locks exactly one day. Without such a rule a booking locks every day it touches, in date order to avoid
+ * deadlocks, and its interval is added to the index of each of them. Two overlapping bookings always share a day,
+ * so checking and booking under the locks of all touched days is atomic.
+ *
+ * Rules are tested before taking any lock, so they must not depend on state changed by booking.
+ */
+public class ConcurrentScheduler {
+
+  private final CompiledRules rules;
+  private final Supplier<AvailabilityIndex> indexFactory;
+  private final ConcurrentSkipListMap<LocalDate, Day> days = new ConcurrentSkipListMap<>();
+
+  private ConcurrentScheduler(List<BookingRule> ruleList, Supplier<AvailabilityIndex> indexFactory) {
+    this.rules = CompiledRules.compile(ruleList);
+    this.indexFactory = indexFactory;
+  }
+
+  /**
+   * Static factory method.
+   */
+  public static ConcurrentScheduler withRules(BookingRule... rules) {
+    return withRules(BlockedAvailabilityIndex::new, rules);
+  }
+
+  /**
+   * @param indexFactory creates the empty index of every day.
+   */
+  public static ConcurrentScheduler withRules(Supplier<AvailabilityIndex> indexFactory, BookingRule... rules) {
+    return new ConcurrentScheduler(new ArrayList<>(Arrays.asList(rules)), indexFactory);
+  }
+
+  /**
+   * Try to book the given booking. Safe to call from any thread.
+   *
+   * @param booking to be tried
+   * @return true if it is successfull.
+   */
+  public boolean bookTry(Booking booking) {
+    if (!rulesMatch(booking)) {
+      return false;
+    }
+    if (!booking.getStartTime().isBefore(booking.getEndTime())) {
+      throw new IllegalArgumentException("Invalid booking interval: " + booking);
+    }
+    List<Day> touchedDays = lockDays(datesOf(booking));
+    try {
+      if (!enclose(booking, touchedDays)) {
+        return false;
+      }
+      remove(booking, touchedDays);
+      touchedDays.get(0).bookings.add(booking);
+      return true;
+    } finally {
+      touchedDays.forEach(day -> day.lock.unlock());
+    }
+  }
+
+  /**
+   * Cancels a booking made before. Safe to call from any thread.
+   *
+   * @return false if the booking was not made.
+   */
+  public boolean cancel(Booking booking) {
+    List<Day> touchedDays = lockDays(datesOf(booking));
+    try {
+      if (!touchedDays.get(0).bookings.remove(booking)) {
+        return false;
+      }
+      release(booking, touchedDays);
+      return true;
+    } finally {
+      touchedDays.forEach(day -> day.lock.unlock());
+    }
+  }
+
+  /**
+   * Same as Scheduler.reschedule. Safe to call from any thread. Locks the days of the old and the new interval
+   * together, so the move is atomic.
+   */
+  public Optional<Booking> reschedule(Booking booking, DateTime newStart, Duration newDuration) {
+    if (newDuration.getMillis() <= 0) {
+      throw new IllegalArgumentException("Duration must be positive: " + newDuration);
+    }
+    Booking moved = booking.withSchedule(newStart, newStart.plus(newDuration));
+    if (!rulesMatch(moved)) {
+      return Optional.empty();
+    }
+    List<LocalDate> oldDates = datesOf(booking);
+    List<LocalDate> newDates = datesOf(moved);
+    TreeSet<LocalDate> dates = new TreeSet<>(oldDates);
+    dates.addAll(newDates);
+    List<Day> lockedDays = lockDays(dates);
+    try {
+      List<Day> oldDays = oldDates.stream().map(days::get).collect(Collectors.toList());
+      List<Day> newDays = newDates.stream().map(days::get).collect(Collectors.toList());
+      if (!oldDays.get(0).bookings.contains(booking)) {
+        return Optional.empty();
+      }
+      release(booking, oldDays);
+      if (!enclose(moved, newDays)) {
+        remove(booking, oldDays);
+        return Optional.empty();
+      }
+      remove(moved, newDays);
+      oldDays.get(0).bookings.remove(booking);
+      newDays.get(0).bookings.add(moved);
+      return Optional.of(moved);
+    } finally {
+      lockedDays.forEach(day -> day.lock.unlock());
+    }
+  }
+
+  private static boolean enclose(Booking booking, List<Day> touchedDays) {
+    long start = booking.getStartTime().getMillis();
+    long end = booking.getEndTime().getMillis();
+    for (Day day : touchedDays) {
+      if (!day.availableTimes.encloses(start, end)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static void remove(Booking booking, List<Day> touchedDays) {
+    for (Day day : touchedDays) {
+      day.availableTimes.remove(booking.getStartTime().getMillis(), booking.getEndTime().getMillis());
+    }
+  }
+
+  private static void release(Booking booking, List<Day> touchedDays) {
+    for (Day day : touchedDays) {
+      day.availableTimes.release(booking.getStartTime().getMillis(), booking.getEndTime().getMillis());
+    }
+  }
+
+  /**
+   * @return true if the booking matches all rules.
+   */
+  private boolean rulesMatch(Booking booking) {
+    return rules.test(booking);
+  }
+
+  /**
+   * @return every date from start to end of the booking, in order.
+   */
+  private static List<LocalDate> datesOf(Booking booking) {
+    LocalDate first = booking.getStartTime().toLocalDate();
+    LocalDate last = booking.getEndTime().toLocalDate();
+    List<LocalDate> dates = new ArrayList<>(1);
+    for (LocalDate date = first; !date.isAfter(last); date = date.plusDays(1)) {
+      dates.add(date);
+    }
+    return dates;
+  }
+
+  /**
+   * Locks the days of the given dates. Dates must be in order, so that locks are always taken in date order.
+   *
+   * @return locked days, in date order.
+   */
+  private List<Day> lockDays(Collection<LocalDate> dates) {
+    List<Day> lockedDays = new ArrayList<>(dates.size());
+    for (LocalDate date : dates) {
+      Day day = days.computeIfAbsent(date, key -> new Day(indexFactory.get()));
+      day.lock.lock();
+      lockedDays.add(day);
+    }
+    return lockedDays;
+  }
+
+  /**
+   * @return a copy of all valid bookings in any order.
+   */
+  public Collection<Booking> getBookings() {
+    List<Booking> bookings = new ArrayList<>();
+    getBookingsGrouped().values().forEach(bookings::addAll);
+    return Collections.unmodifiableCollection(bookings);
+  }
+
+  /**
+   * Every day is copied under its own lock, so the result is consistent per day but not across days.
+   *
+   * @return a copy of all bookings made grouped by their date.
+   */
+  public NavigableMap<LocalDate, Collection<Booking>> getBookingsGrouped() {
+    NavigableMap<LocalDate, Collection<Booking>> grouped = new TreeMap<>();
+    for (Entry<LocalDate, Day> entry : days.entrySet()) {
+      Day day = entry.getValue();
+      day.lock.lock();
+      try {
+        if (!day.bookings.isEmpty()) {
+          grouped.put(entry.getKey(), Collections.unmodifiableCollection(new ArrayList<>(day.bookings)));
+        }
+      } finally {
+        day.lock.unlock();
+      }
+    }
+    return Collections.unmodifiableNavigableMap(grouped);
+  }
+
+  /**
+   * Same as Scheduler.output.
+   */
+  public String output() {
+    return Scheduler.output(getBookingsGrouped());
+  }
+
+  /**
+   * Bookings starting on a day and intervals touching it.
+   */
+  private static final class Day {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final AvailabilityIndex availableTimes;
+    private final TreeSet<Booking> bookings = new TreeSet<>();
+
+    Day(AvailabilityIndex availableTimes) {
+      this.availableTimes = availableTimes;
+    }
+  }
+}
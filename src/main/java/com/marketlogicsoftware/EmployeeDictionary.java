@@ -0,0 +1,16 @@
+package com.marketlogicsoftware;
+
+/**
+ * Maps employee ids to dense int indexes and back, see IdDictionary.
+ *
+ * There are only a handful of employees compared to the number of bookings, which makes this the main saving of
+ * BookingParser.
+ *
+ * Not thread safe.
+ */
+public final class EmployeeDictionary extends IdDictionary {
+
+  public EmployeeDictionary() {
+    super("employee");
+  }
+}
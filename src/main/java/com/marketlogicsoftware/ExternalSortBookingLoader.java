@@ -0,0 +1,373 @@
+package com.marketlogicsoftware;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Loads inputs larger than the heap. Produces the same bookings as Scheduler.bookAllInBookingOrder.
+ *
+ * Records are parsed in runs of runSize bookings. Every full run is stably sorted by booked time and spilled to a
+ * temporary file as length prefixed BookingCodec records. The last run stays in memory. Runs are merged with a
+ * priority queue on their first bookings, earlier runs first on equal booked times, so ties keep input order.
+ *
+ * At most fanIn runs are merged at once. Spilled runs have a level, 0 when spilled: whenever the last fanIn runs
+ * have the same level, they are merged into one run of the next level, so every record is rewritten O(log(n /
+ * runSize) / log(fanIn)) times. Before the final pass, which merges straight into Scheduler.bookTry, the last runs
+ * are merged until at most fanIn remain. Run files are opened when a merge first reads them. Heap use and open
+ * files are thus bounded by one run, fanIn read buffers and a write buffer, whatever the size of the input.
+ */
+public class ExternalSortBookingLoader {
+
+  static final int DEFAULT_RUN_SIZE = 1 << 20;
+  static final int DEFAULT_FAN_IN = 64;
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final Comparator<Booking> BY_BOOKED_TIME = Comparator.comparing(Booking::getBookedTime);
+
+  private final int runSize;
+  private final int fanIn;
+  private final Path directory;
+
+  public ExternalSortBookingLoader() {
+    this(DEFAULT_RUN_SIZE, Paths.get(System.getProperty("java.io.tmpdir")));
+  }
+
+  /**
+   * @param runSize number of bookings sorted in memory at once.
+   * @param directory where runs are spilled to.
+   */
+  public ExternalSortBookingLoader(int runSize, Path directory) {
+    this(runSize, DEFAULT_FAN_IN, directory);
+  }
+
+  /**
+   * @param fanIn maximum number of runs merged at once.
+   */
+  ExternalSortBookingLoader(int runSize, int fanIn, Path directory) {
+    if (runSize <= 0 || fanIn < 2) {
+      throw new IllegalArgumentException(String.format("Bad arguments: [%d,%d]", runSize, fanIn));
+    }
+    this.runSize = runSize;
+    this.fanIn = fanIn;
+    this.directory = directory;
+  }
+
+  /**
+   * Reads open hours from the first line of the file, see CalendarRule.fromHeader, and books all records after it.
+   *
+   * @return a new Scheduler with all bookings of the file made.
+   */
+  public Scheduler load(Path path) throws IOException {
+    try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+      String header = reader.readLine();
+      Scheduler scheduler = Scheduler.withRules(CalendarRule.fromHeader(header == null ? "" : header));
+      bookAllInBookingOrder(reader, scheduler);
+      return scheduler;
+    }
+  }
+
+  /**
+   * Bounded memory version of Scheduler.bookAllInBookingOrder.
+   */
+  public void bookAllInBookingOrder(BufferedReader reader, Scheduler scheduler) throws IOException {
+    BookingMetrics metrics = scheduler.metrics();
+    BookingParser parser = new BookingParser();
+    List<FileRun> spilled = new ArrayList<>();
+    try {
+      List<Booking> bookings = new ArrayList<>();
+      String bookingLine, scheduleLine;
+      while ((bookingLine = reader.readLine()) != null && (scheduleLine = reader.readLine()) != null) {
+        long start = metrics == null ? 0 : System.nanoTime();
+        parser.parse(bookingLine, scheduleLine);
+        bookings.add(parser.toBooking());
+        if (metrics != null) {
+          metrics.recordParse(System.nanoTime() - start);
+        }
+        if (bookings.size() == runSize) {
+          bookings.sort(BY_BOOKED_TIME);
+          spilled.add(spill(bookings));
+          bookings.clear();
+          mergeFullLevels(spilled);
+        }
+      }
+      bookings.sort(BY_BOOKED_TIME);
+      while (spilled.size() >= fanIn) {
+        mergeLast(spilled, fanIn, 0);
+      }
+      List<Run> runs = new ArrayList<>(spilled);
+      runs.add(new MemoryRun(bookings));
+      merge(runs, scheduler::bookTry);
+    } finally {
+      for (Run run : spilled) {
+        run.close();
+      }
+    }
+    scheduler.publishSnapshot();
+  }
+
+  /**
+   * Merges the last fanIn runs into one of the next level as long as they have the same level. Levels don't grow
+   * along the list, so comparing the first and the last of them is enough.
+   */
+  private void mergeFullLevels(List<FileRun> spilled) throws IOException {
+    while (spilled.size() >= fanIn) {
+      int level = spilled.get(spilled.size() - fanIn).level;
+      if (spilled.get(spilled.size() - 1).level != level) {
+        return;
+      }
+      mergeLast(spilled, fanIn, level + 1);
+    }
+  }
+
+  /**
+   * Replaces the last count runs by one run of the given level. They hold consecutive records of the input, so the
+   * merged run keeps its place in input order.
+   */
+  private void mergeLast(List<FileRun> spilled, int count, int level) throws IOException {
+    List<FileRun> last = spilled.subList(spilled.size() - count, spilled.size());
+    FileRun merged;
+    try (RunWriter writer = new RunWriter()) {
+      merge(new ArrayList<>(last), writer::write);
+      merged = writer.finish(level);
+    }
+    for (FileRun run : last) {
+      run.close();
+    }
+    last.clear();
+    spilled.add(merged);
+  }
+
+  /**
+   * Passes the bookings of all runs to the sink in booked time order, bookings of earlier runs first on ties.
+   */
+  private static void merge(List<Run> runs, BookingSink sink) throws IOException {
+    int[] order = new int[1];
+    PriorityQueue<Run> queue = new PriorityQueue<>(runs.size(),
+        Comparator.comparing(Run::head, BY_BOOKED_TIME).thenComparingInt(run -> run.order));
+    for (Run run : runs) {
+      run.order = order[0]++;
+      if (run.next()) {
+        queue.add(run);
+      }
+    }
+    while (!queue.isEmpty()) {
+      Run run = queue.poll();
+      sink.accept(run.head());
+      if (run.next()) {
+        queue.add(run);
+      }
+    }
+  }
+
+  private FileRun spill(List<Booking> bookings) throws IOException {
+    try (RunWriter writer = new RunWriter()) {
+      for (Booking booking : bookings) {
+        writer.write(booking);
+      }
+      return writer.finish(0);
+    }
+  }
+
+  /**
+   * Reserves an int for the length of the record and leaves the position after it.
+   */
+  private static ByteBuffer ensureRemaining(ByteBuffer buffer, int bytes) {
+    if (buffer.remaining() < bytes) {
+      ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+      buffer.flip();
+      buffer = larger.put(buffer);
+    }
+    return (ByteBuffer) buffer.position(buffer.position() + bytes);
+  }
+
+  private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  /**
+   * Sorted bookings, read one after another.
+   */
+  private abstract static class Run implements Closeable {
+
+    /**
+     * Position of the run in input order among the runs merged with it.
+     */
+    private int order;
+    private Booking head;
+
+    Booking head() {
+      return head;
+    }
+
+    /**
+     * Moves head to the next booking.
+     *
+     * @return false if there is none.
+     */
+    boolean next() throws IOException {
+      head = read();
+      return head != null;
+    }
+
+    /**
+     * @return next booking, null at the end of the run.
+     */
+    abstract Booking read() throws IOException;
+  }
+
+  private static final class MemoryRun extends Run {
+
+    private final List<Booking> bookings;
+    private int next;
+
+    MemoryRun(List<Booking> bookings) {
+      this.bookings = bookings;
+    }
+
+    @Override
+    Booking read() {
+      return next < bookings.size() ? bookings.get(next++) : null;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  /**
+   * Writes a spilled run through a buffer, which grows for records larger than it. Deletes the file on close unless
+   * finished.
+   */
+  private final class RunWriter implements Closeable {
+
+    private final Path path;
+    private final FileChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private boolean finished;
+
+    RunWriter() throws IOException {
+      this.path = Files.createTempFile(directory, "booking-run", ".bin");
+      try {
+        this.channel = FileChannel.open(path, StandardOpenOption.WRITE);
+      } catch (IOException | RuntimeException e) {
+        Files.deleteIfExists(path);
+        throw e;
+      }
+    }
+
+    void write(Booking booking) throws IOException {
+      int start = buffer.position();
+      buffer = BookingCodec.put(ensureRemaining(buffer, Integer.BYTES), booking);
+      buffer.putInt(start, buffer.position() - start - Integer.BYTES);
+      if (buffer.position() >= BUFFER_SIZE) {
+        ExternalSortBookingLoader.write(channel, buffer);
+      }
+    }
+
+    /**
+     * @return the written run, read from its start.
+     */
+    FileRun finish(int level) throws IOException {
+      ExternalSortBookingLoader.write(channel, buffer);
+      finished = true;
+      return new FileRun(path, level);
+    }
+
+    @Override
+    public void close() throws IOException {
+      channel.close();
+      if (!finished) {
+        Files.deleteIfExists(path);
+      }
+    }
+  }
+
+  /**
+   * Reads a spilled run through a buffer, which grows for records larger than it. The file is opened on the first
+   * read and deleted on close.
+   */
+  private static final class FileRun extends Run {
+
+    private final Path path;
+    private final int level;
+    private FileChannel channel;
+    private ByteBuffer buffer;
+
+    FileRun(Path path, int level) {
+      this.path = path;
+      this.level = level;
+    }
+
+    @Override
+    Booking read() throws IOException {
+      if (channel == null) {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        buffer = (ByteBuffer) ByteBuffer.allocate(BUFFER_SIZE).flip();
+      }
+      if (!fill(Integer.BYTES)) {
+        if (buffer.hasRemaining()) {
+          throw new IOException("Truncated run: " + path);
+        }
+        return null;
+      }
+      int length = buffer.getInt();
+      if (!fill(length)) {
+        throw new IOException("Truncated run: " + path);
+      }
+      return BookingCodec.get(buffer);
+    }
+
+    /**
+     * @return false if the file ends before bytes are available.
+     */
+    private boolean fill(int bytes) throws IOException {
+      if (buffer.remaining() >= bytes) {
+        return true;
+      }
+      if (buffer.capacity() < bytes) {
+        buffer = ByteBuffer.allocate(bytes).put(buffer);
+      } else {
+        buffer.compact();
+      }
+      while (buffer.position() < bytes) {
+        if (channel.read(buffer) < 0) {
+          buffer.flip();
+          return false;
+        }
+      }
+      buffer.flip();
+      return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (channel != null) {
+        channel.close();
+        channel = null;
+        buffer = null;
+      }
+      Files.deleteIfExists(path);
+    }
+  }
+
+  @FunctionalInterface
+  private interface BookingSink {
+
+    void accept(Booking booking) throws IOException;
+  }
+}
@@ -0,0 +1,139 @@
+package com.marketlogicsoftware;
+
+import com.google.common.collect.AbstractIterator;
+import com.marketlogicsoftware.AvailabilityIndex.IntervalCursor;
+import java.util.List;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+import org.joda.time.Interval;
+import org.joda.time.LocalDate;
+
+/**
+ * Lazily finds free slots of a Scheduler, see Scheduler.findFreeSlots.
+ *
+ * Search runs window by window. Without windowed rules there is one window, from-to. Otherwise every date has the
+ * intersection of the windows of all WindowedBookingRules, clipped to from-to. Inside a window, a cursor of the
+ * AvailabilityIndex walks booked intervals, and slots of every gap long enough are candidates. Candidates are tested
+ * against all rules as a final filter, since some rules have no window. The first candidate of a gap is its start;
+ * while the filter rejects them, candidates move on by STEP until one matches or the gap is exhausted. This linear
+ * probing is a deliberate limit for rules without a window, which can't be searched.
+ */
+class FreeSlotIterator extends AbstractIterator<Interval> {
+
+  private static final String NOBODY = "";
+  /**
+   * Resolution of start times in the input format.
+   */
+  static final long STEP = 60 * 1000;
+
+  private final AvailabilityIndex availableTimes;
+  private final List<BookingRule> ruleList;
+  private final List<WindowedBookingRule> windowedRules;
+  private final DateTime from;
+  private final DateTime to;
+  private final long duration;
+
+  private LocalDate date;
+  private long windowEnd;
+  private long position;
+  private IntervalCursor cursor;
+  private boolean cursorValid;
+  private long gapStart;
+  private long gapEnd;
+
+  FreeSlotIterator(AvailabilityIndex availableTimes, List<BookingRule> ruleList,
+      List<WindowedBookingRule> windowedRules, DateTime from, DateTime to, Duration duration) {
+    if (duration.getMillis() <= 0) {
+      throw new IllegalArgumentException("Duration must be positive: " + duration);
+    }
+    this.availableTimes = availableTimes;
+    this.ruleList = ruleList;
+    this.windowedRules = windowedRules;
+    this.from = from;
+    this.to = to;
+    this.duration = duration.getMillis();
+    this.date = from.toLocalDate();
+    if (windowedRules.isEmpty()) {
+      openWindow(from.getMillis(), to.getMillis());
+    }
+  }
+
+  @Override
+  protected Interval computeNext() {
+    while (cursor != null || nextWindow()) {
+      if (nextGap()) {
+        for (long start = gapStart; gapEnd - start >= duration; start += STEP) {
+          Interval slot = new Interval(start, start + duration);
+          if (rulesMatch(slot)) {
+            return slot;
+          }
+        }
+      }
+    }
+    return endOfData();
+  }
+
+  /**
+   * Moves gapStart and gapEnd to the next gap of the window long enough.
+   *
+   * @return false if there is none in the window, which is done then.
+   */
+  private boolean nextGap() {
+    while (cursorValid && cursor.start() < windowEnd) {
+      gapEnd = cursor.start();
+      gapStart = position;
+      position = Math.max(position, cursor.end());
+      cursorValid = cursor.next();
+      if (gapEnd - gapStart >= duration) {
+        return true;
+      }
+    }
+    cursor = null;
+    gapStart = position;
+    gapEnd = windowEnd;
+    return windowEnd - position >= duration;
+  }
+
+  /**
+   * Opens the window of the next date, if there is one before to.
+   */
+  private boolean nextWindow() {
+    LocalDate lastDate = to.toLocalDate();
+    while (!windowedRules.isEmpty() && !date.isAfter(lastDate)) {
+      long start = from.getMillis();
+      long end = to.getMillis();
+      for (WindowedBookingRule rule : windowedRules) {
+        Interval window = rule.window(date);
+        if (window == null) {
+          start = end;
+          break;
+        }
+        start = Math.max(start, window.getStartMillis());
+        end = Math.min(end, window.getEndMillis());
+      }
+      date = date.plusDays(1);
+      if (end - start >= duration) {
+        openWindow(start, end);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void openWindow(long start, long end) {
+    position = start;
+    windowEnd = end;
+    cursor = availableTimes.bookedAfter(start);
+    cursorValid = cursor.next();
+  }
+
+  private boolean rulesMatch(Interval slot) {
+    Booking probe = new Booking(slot.getStart(), NOBODY, slot.getStart(), slot.getEnd());
+    for (BookingRule rule : ruleList) {
+      if (!rule.test(probe)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
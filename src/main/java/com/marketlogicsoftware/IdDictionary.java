@@ -0,0 +1,194 @@
+package com.marketlogicsoftware;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Maps ids to dense int indexes and back. Base of EmployeeDictionary and ResourceDictionary.
+ *
+ * Lookups take a range of a char or byte buffer, so an id that was seen before costs no allocation.
+ *
+ * Open addressing with linear probing. Not thread safe.
+ */
+abstract class IdDictionary {
+
+  private static final int INITIAL_CAPACITY = 64;
+
+  private final String kind;
+
+  private String[] names = new String[INITIAL_CAPACITY];
+  private byte[][] encodedNames = new byte[INITIAL_CAPACITY][];
+  private int size;
+
+  private int[] charTable = emptyTable(INITIAL_CAPACITY * 2);
+  private int[] byteTable = emptyTable(INITIAL_CAPACITY * 2);
+
+  /**
+   * @param kind of the ids, for messages.
+   */
+  IdDictionary(String kind) {
+    this.kind = kind;
+  }
+
+  /**
+   * @return index of the given id, adding it if it is unknown.
+   */
+  public int intern(String name) {
+    return intern(name, 0, name.length());
+  }
+
+  /**
+   * @return index of the given id, -1 if it is unknown. Never adds it.
+   */
+  public int indexOf(String name) {
+    int mask = charTable.length - 1;
+    for (int slot = hashChars(name, 0, name.length()) & mask; ; slot = (slot + 1) & mask) {
+      int index = charTable[slot];
+      if (index < 0 || sameChars(names[index], name, 0, name.length())) {
+        return index;
+      }
+    }
+  }
+
+  /**
+   * @return index of the chars [start, end) of the given sequence, adding it if it is unknown.
+   */
+  public int intern(CharSequence chars, int start, int end) {
+    int hash = hashChars(chars, start, end);
+    int mask = charTable.length - 1;
+    for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+      int index = charTable[slot];
+      if (index < 0) {
+        index = add(chars.subSequence(start, end).toString());
+        charTable[slot] = index;
+        if (size * 2 > charTable.length) {
+          charTable = rehash(charTable, false);
+        }
+        return index;
+      }
+      if (sameChars(names[index], chars, start, end)) {
+        return index;
+      }
+    }
+  }
+
+  /**
+   * @return index of the UTF-8 bytes [start, end) of the given buffer, adding it if it is unknown. Buffer position
+   * is not changed.
+   */
+  public int intern(ByteBuffer bytes, int start, int end) {
+    int hash = hashBytes(bytes, start, end);
+    int mask = byteTable.length - 1;
+    for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+      int index = byteTable[slot];
+      if (index < 0) {
+        byte[] encoded = new byte[end - start];
+        for (int i = start; i < end; i++) {
+          encoded[i - start] = bytes.get(i);
+        }
+        index = intern(new String(encoded, StandardCharsets.UTF_8));
+        byteTable[slot] = index;
+        if (size * 2 > byteTable.length) {
+          byteTable = rehash(byteTable, true);
+        }
+        return index;
+      }
+      if (sameBytes(encodedNames[index], bytes, start, end)) {
+        return index;
+      }
+    }
+  }
+
+  /**
+   * @return the id for the given index.
+   */
+  public String name(int index) {
+    if (index < 0 || index >= size) {
+      throw new IllegalArgumentException("Unknown " + kind + " index " + index);
+    }
+    return names[index];
+  }
+
+  public int size() {
+    return size;
+  }
+
+  private int add(String name) {
+    if (size == names.length) {
+      names = Arrays.copyOf(names, size * 2);
+      encodedNames = Arrays.copyOf(encodedNames, size * 2);
+    }
+    names[size] = name;
+    encodedNames[size] = name.getBytes(StandardCharsets.UTF_8);
+    return size++;
+  }
+
+  private int[] rehash(int[] table, boolean byteKeyed) {
+    int[] rehashed = emptyTable(table.length * 2);
+    int mask = rehashed.length - 1;
+    for (int index : table) {
+      if (index >= 0) {
+        int hash = byteKeyed
+            ? hashBytes(ByteBuffer.wrap(encodedNames[index]), 0, encodedNames[index].length)
+            : hashChars(names[index], 0, names[index].length());
+        int slot = hash & mask;
+        while (rehashed[slot] >= 0) {
+          slot = (slot + 1) & mask;
+        }
+        rehashed[slot] = index;
+      }
+    }
+    return rehashed;
+  }
+
+  private static int[] emptyTable(int capacity) {
+    int[] table = new int[capacity];
+    Arrays.fill(table, -1);
+    return table;
+  }
+
+  private static int hashChars(CharSequence chars, int start, int end) {
+    int hash = 0;
+    for (int i = start; i < end; i++) {
+      hash = 31 * hash + chars.charAt(i);
+    }
+    return mix(hash);
+  }
+
+  private static int hashBytes(ByteBuffer bytes, int start, int end) {
+    int hash = 0;
+    for (int i = start; i < end; i++) {
+      hash = 31 * hash + bytes.get(i);
+    }
+    return mix(hash);
+  }
+
+  private static int mix(int hash) {
+    return hash ^ (hash >>> 16);
+  }
+
+  private static boolean sameChars(String name, CharSequence chars, int start, int end) {
+    if (name.length() != end - start) {
+      return false;
+    }
+    for (int i = start; i < end; i++) {
+      if (name.charAt(i - start) != chars.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean sameBytes(byte[] name, ByteBuffer bytes, int start, int end) {
+    if (name.length != end - start) {
+      return false;
+    }
+    for (int i = start; i < end; i++) {
+      if (name[i - start] != bytes.get(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,103 @@
+package com.marketlogicsoftware;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of non negative values, typically nanoseconds, recorded from any number of threads without locks.
+ *
+ * Buckets are log-linear like in HdrHistogram: values below 64 have a bucket each, above that every power of two is
+ * split into 32 buckets. So a percentile is off by at most 1/32 of its value, and the whole long range takes 1888
+ * counters. Recording is one atomic increment plus two adders.
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+  /**
+   * Records a value. Negative values count as zero.
+   */
+  public void record(long value) {
+    value = Math.max(value, 0);
+    counts.incrementAndGet(bucket(value));
+    count.increment();
+    sum.add(value);
+    max.accumulate(value);
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  public double getMean() {
+    long total = count.sum();
+    return total == 0 ? 0 : (double) sum.sum() / total;
+  }
+
+  /**
+   * Value below or at which the given share of recorded values lie, rounded up to the end of its bucket. Not atomic
+   * with concurrent recording.
+   *
+   * @param share between 0 and 1, 0.99 for the 99th percentile
+   * @return 0 if nothing was recorded.
+   */
+  public long getValueAtShare(double share) {
+    if (share < 0 || share > 1) {
+      throw new IllegalArgumentException("Share out of range: " + share);
+    }
+    long total = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      total += counts.get(i);
+    }
+    long rank = Math.max(1, (long) Math.ceil(share * total));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts.get(i);
+      if (seen >= rank) {
+        return Math.min(highestValue(i), getMax());
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Clears all values. Values recorded concurrently may be lost or kept.
+   */
+  public void reset() {
+    for (int i = 0; i < BUCKETS; i++) {
+      counts.set(i, 0);
+    }
+    count.reset();
+    sum.reset();
+    max.reset();
+  }
+
+  static int bucket(long value) {
+    int magnitude = Math.max(0, Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+    return magnitude * SUB_BUCKETS + (int) (value >>> magnitude);
+  }
+
+  /**
+   * @return largest value of the bucket.
+   */
+  static long highestValue(int bucket) {
+    if (bucket < 2 * SUB_BUCKETS) {
+      return bucket;
+    }
+    int magnitude = bucket / SUB_BUCKETS - 1;
+    long lowest = (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << magnitude;
+    return lowest + (1L << magnitude) - 1;
+  }
+}
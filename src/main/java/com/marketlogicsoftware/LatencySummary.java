@@ -0,0 +1,62 @@
+package com.marketlogicsoftware;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Point in time summary of a LatencyHistogram. Shown as composite data over JMX.
+ *
+ * Immutable.
+ */
+public class LatencySummary {
+
+  private final long count;
+  private final double mean;
+  private final long median;
+  private final long p99;
+  private final long max;
+
+  @ConstructorProperties({"count", "mean", "median", "p99", "max"})
+  public LatencySummary(long count, double mean, long median, long p99, long max) {
+    this.count = count;
+    this.mean = mean;
+    this.median = median;
+    this.p99 = p99;
+    this.max = max;
+  }
+
+  public static LatencySummary of(LatencyHistogram histogram) {
+    return new LatencySummary(histogram.getCount(), histogram.getMean(), histogram.getValueAtShare(0.5),
+        histogram.getValueAtShare(0.99), histogram.getMax());
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  public double getMean() {
+    return mean;
+  }
+
+  public long getMedian() {
+    return median;
+  }
+
+  public long getP99() {
+    return p99;
+  }
+
+  public long getMax() {
+    return max;
+  }
+
+  @Override
+  public String toString() {
+    return "LatencySummary{" +
+        "count=" + count +
+        ", mean=" + mean +
+        ", median=" + median +
+        ", p99=" + p99 +
+        ", max=" + max +
+        '}';
+  }
+}
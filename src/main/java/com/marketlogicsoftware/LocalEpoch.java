@@ -0,0 +1,120 @@
+package com.marketlogicsoftware;
+
+import org.joda.time.DateTime;
+
+/**
+ * Primitive wall-clock arithmetic.
+ *
+ * Timestamps are counted from 1970-01-01 00:00 of the local calendar, ignoring time zones. This is the same
+ * calendar the input file is written in, so a day number or a minute-of-day can be derived with plain integer
+ * division. Conversions to Joda objects happen in the default time zone, same as Booking.fromString.
+ *
+ * Day/civil conversions use the well known proleptic Gregorian algorithms, see
+ * http://howardhinnant.github.io/date_algorithms.html
+ */
+public final class LocalEpoch {
+
+  public static final int MINUTES_PER_DAY = 24 * 60;
+  public static final int SECONDS_PER_DAY = MINUTES_PER_DAY * 60;
+  public static final long MILLIS_PER_DAY = SECONDS_PER_DAY * 1000L;
+
+  private LocalEpoch() {
+  }
+
+  /**
+   * @return number of days since 1970-01-01 of the given date. Arguments are not validated.
+   */
+  public static long daysFromCivil(int year, int month, int day) {
+    int y = month <= 2 ? year - 1 : year;
+    int era = Math.floorDiv(y, 400);
+    int yearOfEra = y - era * 400;
+    int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+    int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+    return era * 146097L + dayOfEra - 719468;
+  }
+
+  public static int yearOfDay(long epochDay) {
+    long z = epochDay + 719468;
+    long era = Math.floorDiv(z, 146097);
+    int dayOfEra = (int) (z - era * 146097);
+    int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+    int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+    int mp = (5 * dayOfYear + 2) / 153;
+    return (int) (yearOfEra + era * 400) + (mp >= 10 ? 1 : 0);
+  }
+
+  public static int monthOfDay(long epochDay) {
+    int mp = (5 * dayOfShiftedYear(epochDay) + 2) / 153;
+    return mp < 10 ? mp + 3 : mp - 9;
+  }
+
+  public static int dayOfMonth(long epochDay) {
+    int dayOfYear = dayOfShiftedYear(epochDay);
+    int mp = (5 * dayOfYear + 2) / 153;
+    return dayOfYear - (153 * mp + 2) / 5 + 1;
+  }
+
+  /**
+   * @return ISO day of week, 1 is Monday and 7 is Sunday.
+   */
+  public static int dayOfWeek(long epochDay) {
+    return (int) Math.floorMod(epochDay + 3, 7) + 1;
+  }
+
+  /**
+   * Day of year in a calendar starting from March, which puts leap day at the end.
+   */
+  private static int dayOfShiftedYear(long epochDay) {
+    long z = epochDay + 719468;
+    long era = Math.floorDiv(z, 146097);
+    int dayOfEra = (int) (z - era * 146097);
+    int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+    return dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+  }
+
+  public static int daysInMonth(int year, int month) {
+    switch (month) {
+      case 2:
+        return isLeapYear(year) ? 29 : 28;
+      case 4:
+      case 6:
+      case 9:
+      case 11:
+        return 30;
+      default:
+        return 31;
+    }
+  }
+
+  public static boolean isLeapYear(int year) {
+    return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+  }
+
+  /**
+   * @return wall-clock millis since local epoch of the given instant, in its own time zone. Does not allocate.
+   */
+  public static long localMillis(DateTime dateTime) {
+    long millis = dateTime.getMillis();
+    return millis + dateTime.getZone().getOffset(millis);
+  }
+
+  /**
+   * @return instant of the given local epoch minute in the default time zone.
+   */
+  public static DateTime minuteToDateTime(long epochMinute) {
+    long epochDay = Math.floorDiv(epochMinute, MINUTES_PER_DAY);
+    int minuteOfDay = (int) (epochMinute - epochDay * MINUTES_PER_DAY);
+    return new DateTime(yearOfDay(epochDay), monthOfDay(epochDay), dayOfMonth(epochDay),
+        minuteOfDay / 60, minuteOfDay % 60);
+  }
+
+  /**
+   * @return instant of the given local epoch second in the default time zone.
+   */
+  public static DateTime secondToDateTime(long epochSecond) {
+    long epochDay = Math.floorDiv(epochSecond, SECONDS_PER_DAY);
+    int secondOfDay = (int) (epochSecond - epochDay * SECONDS_PER_DAY);
+    return new DateTime(yearOfDay(epochDay), monthOfDay(epochDay), dayOfMonth(epochDay),
+        secondOfDay / 3600, secondOfDay / 60 % 60, secondOfDay % 60);
+  }
+}
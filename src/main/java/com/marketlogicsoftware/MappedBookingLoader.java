@@ -0,0 +1,254 @@
+package com.marketlogicsoftware;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Loads an input file in parallel. Produces the same bookings as App reading it through a BufferedReader.
+ *
+ * The file is memory mapped and cut into chunks of roughly chunkSize bytes at line starts. Whether a line is the
+ * first or second line of a record is only known by counting lines from the header, so chunks count their lines
+ * in parallel first. A chunk starting on a schedule line gives that line to its predecessor. Then every chunk
+ * parses its records on the fork-join pool and stably sorts them by booked time. Sorted chunks are merged into the
+ * Scheduler, earlier chunks first on equal booked times.
+ */
+public class MappedBookingLoader {
+
+  static final int DEFAULT_CHUNK_SIZE = 32 * 1024 * 1024;
+  private static final int MAX_CHUNK_SIZE = 1024 * 1024 * 1024;
+  private static final Comparator<Booking> BY_BOOKED_TIME = Comparator.comparing(Booking::getBookedTime);
+
+  private final ForkJoinPool pool;
+  private final int chunkSize;
+
+  public MappedBookingLoader() {
+    this(ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+  }
+
+  public MappedBookingLoader(ForkJoinPool pool, int chunkSize) {
+    if (chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE) {
+      throw new IllegalArgumentException("Chunk size out of range: " + chunkSize);
+    }
+    this.pool = pool;
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * Reads open hours from the first line of the file, see CalendarRule.fromHeader, and books all records after it.
+   *
+   * @return a new Scheduler with all bookings of the file made.
+   */
+  public Scheduler load(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long headerEnd = lineEnd(channel, 0);
+      String header = read(channel, 0, headerEnd);
+      if (header.endsWith("\r")) {
+        header = header.substring(0, header.length() - 1);
+      }
+      Scheduler scheduler = Scheduler.withRules(CalendarRule.fromHeader(header));
+      bookAllInBookingOrder(channel, Math.min(headerEnd + 1, channel.size()), scheduler);
+      return scheduler;
+    }
+  }
+
+  /**
+   * Parallel version of Scheduler.bookAllInBookingOrder for records of the channel starting at offset.
+   */
+  public void bookAllInBookingOrder(FileChannel channel, long offset, Scheduler scheduler) throws IOException {
+    List<Chunk> chunks = split(channel, offset);
+    forkAndJoin(chunks, Chunk::countLines);
+    alignToRecords(chunks);
+    forkAndJoin(chunks, chunk -> chunk.parse(scheduler.metrics()));
+    merge(chunks, scheduler);
+    scheduler.publishSnapshot();
+  }
+
+  private List<Chunk> split(FileChannel channel, long offset) throws IOException {
+    List<Chunk> chunks = new ArrayList<>();
+    long size = channel.size();
+    long start = offset;
+    while (start < size) {
+      long end = start + chunkSize >= size ? size : Math.min(lineEnd(channel, start + chunkSize - 1) + 1, size);
+      chunks.add(new Chunk(channel, start, end));
+      start = end;
+    }
+    return chunks;
+  }
+
+  /**
+   * Moves chunk boundaries so that no record is split between two chunks.
+   */
+  private static void alignToRecords(List<Chunk> chunks) {
+    long linesBefore = 0;
+    for (int i = 0; i < chunks.size(); i++) {
+      Chunk chunk = chunks.get(i);
+      long lines = chunk.lineCount;
+      if ((linesBefore & 1) == 1) {
+        long secondLine = chunk.start + chunk.firstLineLength + 1;
+        chunks.get(i - 1).end = Math.min(secondLine, chunk.end);
+        chunk.start = Math.min(secondLine, chunk.end);
+      }
+      linesBefore += lines;
+    }
+  }
+
+  /**
+   * Merges sorted chunks. Equal booked times are tried in input order, same as Scheduler.bookAllInBookingOrder.
+   */
+  private static void merge(List<Chunk> chunks, Scheduler scheduler) {
+    PriorityQueue<Chunk> queue = new PriorityQueue<>(Math.max(chunks.size(), 1),
+        Comparator.comparing(Chunk::head, BY_BOOKED_TIME).thenComparingLong(chunk -> chunk.start));
+    chunks.stream()
+        .filter(chunk -> !chunk.bookings.isEmpty())
+        .forEach(queue::add);
+    while (!queue.isEmpty()) {
+      Chunk chunk = queue.poll();
+      scheduler.bookTry(chunk.head());
+      if (++chunk.next < chunk.bookings.size()) {
+        queue.add(chunk);
+      }
+    }
+  }
+
+  private void forkAndJoin(List<Chunk> chunks, ChunkStep step) throws IOException {
+    List<ForkJoinTask<?>> tasks = new ArrayList<>(chunks.size());
+    for (Chunk chunk : chunks) {
+      tasks.add(pool.submit(() -> {
+        try {
+          step.run(chunk);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }));
+    }
+    try {
+      tasks.forEach(ForkJoinTask::join);
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * @return position of the first line feed at or after position, or channel size if there is none.
+   */
+  private static long lineEnd(FileChannel channel, long position) throws IOException {
+    long size = channel.size();
+    while (position < size) {
+      MappedByteBuffer window = channel.map(MapMode.READ_ONLY, position, Math.min(4096, size - position));
+      for (int i = 0; i < window.limit(); i++) {
+        if (window.get(i) == '\n') {
+          return position + i;
+        }
+      }
+      position += window.limit();
+    }
+    return size;
+  }
+
+  private static String read(FileChannel channel, long start, long end) throws IOException {
+    byte[] bytes = new byte[(int) (end - start)];
+    channel.map(MapMode.READ_ONLY, start, end - start).get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  @FunctionalInterface
+  private interface ChunkStep {
+
+    void run(Chunk chunk) throws IOException;
+  }
+
+  /**
+   * A range of lines of the file. Starts at a line start, ends after a line feed or at the end of file.
+   */
+  private static final class Chunk {
+
+    private final FileChannel channel;
+    private long start;
+    private long end;
+
+    private long lineCount;
+    private int firstLineLength;
+
+    private List<Booking> bookings;
+    private int next;
+
+    Chunk(FileChannel channel, long start, long end) {
+      this.channel = channel;
+      this.start = start;
+      this.end = end;
+    }
+
+    Booking head() {
+      return bookings.get(next);
+    }
+
+    void countLines() throws IOException {
+      MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, start, end - start);
+      firstLineLength = -1;
+      for (int i = 0; i < buffer.limit(); i++) {
+        if (buffer.get(i) == '\n') {
+          if (firstLineLength < 0) {
+            firstLineLength = i;
+          }
+          lineCount++;
+        }
+      }
+      if (buffer.limit() > 0 && buffer.get(buffer.limit() - 1) != '\n') {
+        lineCount++;
+        if (firstLineLength < 0) {
+          firstLineLength = buffer.limit();
+        }
+      }
+    }
+
+    /**
+     * @param metrics records parse time of every record, may be null.
+     */
+    void parse(BookingMetrics metrics) throws IOException {
+      MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, start, end - start);
+      BookingParser parser = new BookingParser();
+      bookings = new ArrayList<>();
+      int limit = buffer.limit();
+      int position = 0;
+      while (position < limit) {
+        int bookingEnd = lineFeed(buffer, position);
+        if (bookingEnd + 1 >= limit) {
+          break;
+        }
+        long start = metrics == null ? 0 : System.nanoTime();
+        int scheduleEnd = lineFeed(buffer, bookingEnd + 1);
+        parser.parse(buffer, position, trimCarriageReturn(buffer, position, bookingEnd),
+            bookingEnd + 1, trimCarriageReturn(buffer, bookingEnd + 1, scheduleEnd));
+        bookings.add(parser.toBooking());
+        if (metrics != null) {
+          metrics.recordParse(System.nanoTime() - start);
+        }
+        position = scheduleEnd + 1;
+      }
+      bookings.sort(BY_BOOKED_TIME);
+    }
+
+    private static int lineFeed(MappedByteBuffer buffer, int position) {
+      while (position < buffer.limit() && buffer.get(position) != '\n') {
+        position++;
+      }
+      return position;
+    }
+
+    private static int trimCarriageReturn(MappedByteBuffer buffer, int start, int end) {
+      return end > start && buffer.get(end - 1) == '\r' ? end - 1 : end;
+    }
+  }
+}
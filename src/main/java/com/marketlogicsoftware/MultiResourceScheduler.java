@@ -0,0 +1,219 @@
+package com.marketlogicsoftware;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.TreeMap;
+import org.joda.time.LocalDate;
+
+/**
+ * Schedules many bookable resources, like rooms, at once.
+ *
+ * Every resource has its own Scheduler without rules; rules are tested once per booking here instead. Bookings are
+ * routed to the resource named by Booking.getResourceId.
+ *
+ * Resources can be put into groups to book any free one of them. A group keeps an interval index of its members:
+ * time is cut into segments at every start and end of a member booking, and every segment carries a BitSet of the
+ * members booked during it. Members free for a booking are the clear bits of the union over the segments it
+ * overlaps, so a free member is found by a nextClearBit without trying any member's Scheduler.
+ *
+ * Not thread safe.
+ */
+public class MultiResourceScheduler {
+
+  private final CompiledRules rules;
+  private final ResourceDictionary resourceIds = new ResourceDictionary();
+  private final List<Resource> resources = new ArrayList<>();
+  private final Map<String, Group> groups = new HashMap<>();
+
+  private MultiResourceScheduler(List<BookingRule> ruleList) {
+    this.rules = CompiledRules.compile(ruleList);
+  }
+
+  /**
+   * Static factory method.
+   */
+  public static MultiResourceScheduler withRules(BookingRule... rules) {
+    return new MultiResourceScheduler(new ArrayList<>(Arrays.asList(rules)));
+  }
+
+  /**
+   * Registers a resource and adds it to the given groups. Groups are created on first use.
+   */
+  public void addResource(String resourceId, String... groupNames) {
+    if (resourceIds.indexOf(resourceId) >= 0) {
+      throw new IllegalArgumentException("Resource already exists: " + resourceId);
+    }
+    Resource resource = new Resource(resourceId);
+    resourceIds.intern(resourceId);
+    resources.add(resource);
+    for (String groupName : groupNames) {
+      Group group = groups.computeIfAbsent(groupName, name -> new Group());
+      resource.memberships.add(new Membership(group, group.members.size()));
+      group.members.add(resource);
+    }
+  }
+
+  /**
+   * Try to book the given booking on its resource.
+   *
+   * @return true if it is successfull.
+   * @throws IllegalArgumentException if the resource of the booking is unknown.
+   */
+  public boolean bookTry(Booking booking) {
+    return rulesMatch(booking) && book(resource(booking.getResourceId()), booking);
+  }
+
+  /**
+   * Books the given booking on any free resource of the group.
+   *
+   * @return the booking made, with its resource id set, or empty if rules fail or no resource is free.
+   * @throws IllegalArgumentException if the group is unknown.
+   */
+  public Optional<Booking> bookAny(String groupName, Booking booking) {
+    Group group = groups.get(groupName);
+    if (group == null) {
+      throw new IllegalArgumentException("Unknown group: " + groupName);
+    }
+    if (!rulesMatch(booking)) {
+      return Optional.empty();
+    }
+    long start = booking.getStartTime().getMillis();
+    long end = booking.getEndTime().getMillis();
+    if (start >= end) {
+      throw new IllegalArgumentException("Invalid booking interval: " + booking);
+    }
+    int free = group.busyDuring(start, end).nextClearBit(0);
+    if (free >= group.members.size()) {
+      return Optional.empty();
+    }
+    Booking onResource = booking.withResourceId(group.members.get(free).id);
+    return book(group.members.get(free), onResource) ? Optional.of(onResource) : Optional.empty();
+  }
+
+  private boolean book(Resource resource, Booking booking) {
+    if (!resource.scheduler.bookTry(booking)) {
+      return false;
+    }
+    long start = booking.getStartTime().getMillis();
+    long end = booking.getEndTime().getMillis();
+    for (Membership membership : resource.memberships) {
+      membership.group.markBusy(start, end, membership.index);
+    }
+    return true;
+  }
+
+  /**
+   * @throws IllegalArgumentException if the resource is unknown.
+   */
+  private Resource resource(String resourceId) {
+    int index = resourceIds.indexOf(resourceId);
+    if (index < 0) {
+      throw new IllegalArgumentException("Unknown resource: " + resourceId);
+    }
+    return resources.get(index);
+  }
+
+  /**
+   * @return true if the booking matches all rules.
+   */
+  private boolean rulesMatch(Booking booking) {
+    return rules.test(booking);
+  }
+
+  /**
+   * @return an unmodifiable collection of all valid bookings of all resources in any order.
+   */
+  public Collection<Booking> getBookings() {
+    List<Booking> bookings = new ArrayList<>();
+    resources.forEach(resource -> bookings.addAll(resource.scheduler.getBookings()));
+    return Collections.unmodifiableCollection(bookings);
+  }
+
+  /**
+   * @return all bookings of the resource grouped by their date.
+   */
+  public NavigableMap<LocalDate, Collection<Booking>> getBookingsGrouped(String resourceId) {
+    return resource(resourceId).scheduler.getBookingsGrouped();
+  }
+
+  private static final class Resource {
+
+    private final String id;
+    private final Scheduler scheduler = Scheduler.withRules();
+    private final List<Membership> memberships = new ArrayList<>(1);
+
+    Resource(String id) {
+      this.id = id;
+    }
+  }
+
+  private static final class Membership {
+
+    private final Group group;
+    private final int index;
+
+    Membership(Group group, int index) {
+      this.group = group;
+      this.index = index;
+    }
+  }
+
+  /**
+   * Members of a group and the interval index of their bookings.
+   */
+  private static final class Group {
+
+    private final List<Resource> members = new ArrayList<>();
+
+    /**
+     * Segment start to members booked from it up to the next segment start. The first segment starts at
+     * Long.MIN_VALUE, so every instant is in exactly one segment.
+     */
+    private final TreeMap<Long, BitSet> busyMembers = new TreeMap<>();
+
+    Group() {
+      busyMembers.put(Long.MIN_VALUE, new BitSet());
+    }
+
+    /**
+     * Marks the member as booked during (start, end).
+     */
+    void markBusy(long start, long end, int member) {
+      split(start);
+      split(end);
+      for (BitSet busy : busyMembers.subMap(start, true, end, false).values()) {
+        busy.set(member);
+      }
+    }
+
+    /**
+     * @return members with a booking overlapping (start, end).
+     */
+    BitSet busyDuring(long start, long end) {
+      BitSet busy = (BitSet) busyMembers.floorEntry(start).getValue().clone();
+      for (BitSet segment : busyMembers.subMap(start, false, end, false).values()) {
+        busy.or(segment);
+      }
+      return busy;
+    }
+
+    /**
+     * Starts a segment at the given instant, if there is none yet.
+     */
+    private void split(long at) {
+      Entry<Long, BitSet> segment = busyMembers.floorEntry(at);
+      if (segment.getKey() != at) {
+        busyMembers.put(at, (BitSet) segment.getValue().clone());
+      }
+    }
+  }
+}
@@ -1,5 +1,7 @@
 package com.marketlogicsoftware;
 
+import org.joda.time.Interval;
+import org.joda.time.LocalDate;
 import org.joda.time.LocalTime;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
@@ -11,7 +13,7 @@ import org.joda.time.format.DateTimeFormatter;
  *
  * Immutable.
  */
-public class OpenHoursRule implements BookingRule {
+public class OpenHoursRule implements WindowedBookingRule {
 
   private static final DateTimeFormatter formatter = DateTimeFormat.forPattern("HHmm");
   private final LocalTime openingTime;
@@ -51,6 +53,27 @@ public class OpenHoursRule implements BookingRule {
         && isSameDay(booking);
   }
 
+  @Override
+  public boolean isStateless() {
+    return true;
+  }
+
+  /**
+   * @return a daily window of millis of day, which Schedulers merge with other daily windows.
+   */
+  @Override
+  public CompiledRule compile() {
+    return new CompiledRules.DailyWindow(openingTime.getMillisOfDay(), closingTime.getMillisOfDay());
+  }
+
+  @Override
+  public Interval window(LocalDate date) {
+    if (closingTime.isBefore(openingTime)) {
+      return null;
+    }
+    return new Interval(date.toDateTime(openingTime), date.toDateTime(closingTime));
+  }
+
   private boolean isBeforeOrEquals(LocalTime bookingTime) {
     return openingTime.isBefore(bookingTime) || openingTime.equals(bookingTime);
   }
@@ -0,0 +1,74 @@
+package com.marketlogicsoftware;
+
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeSet;
+import com.google.common.collect.TreeRangeSet;
+import java.util.Collections;
+import java.util.Iterator;
+
+/**
+ * AvailabilityIndex on a Guava RangeSet. It starts with complement of an empty TreeRangeSet, which means it is
+ * available for all bookings.
+ *
+ * This was the original implementation of Scheduler. Simple and obviously right, so it is kept as the reference to
+ * test other implementations against. Allocates a Range and boxes both ends on every call.
+ */
+public class RangeSetAvailabilityIndex implements AvailabilityIndex {
+
+  private final TreeRangeSet<Long> bookedTimes = TreeRangeSet.create();
+  private final RangeSet<Long> availableTimes = bookedTimes.complement();
+
+  @Override
+  public boolean encloses(long start, long end) {
+    return availableTimes.encloses(Range.open(start, end));
+  }
+
+  @Override
+  public void remove(long start, long end) {
+    if (!encloses(start, end)) {
+      throw new IllegalArgumentException(String.format("(%d, %d) is not available", start, end));
+    }
+    availableTimes.remove(Range.open(start, end));
+  }
+
+  @Override
+  public void release(long start, long end) {
+    Range<Long> interval = Range.open(start, end);
+    if (!bookedTimes.subRangeSet(Range.closed(start, end)).asRanges().equals(Collections.singleton(interval))) {
+      throw new IllegalArgumentException(String.format("(%d, %d) is not booked", start, end));
+    }
+    bookedTimes.remove(interval);
+  }
+
+  /**
+   * Walks all booked ranges from the first one, so this is linear.
+   */
+  @Override
+  public IntervalCursor bookedAfter(long from) {
+    Iterator<Range<Long>> ranges = bookedTimes.asRanges().iterator();
+    return new IntervalCursor() {
+      private Range<Long> current;
+
+      @Override
+      public boolean next() {
+        while (ranges.hasNext()) {
+          current = ranges.next();
+          if (current.upperEndpoint() > from) {
+            return true;
+          }
+        }
+        return false;
+      }
+
+      @Override
+      public long start() {
+        return current.lowerEndpoint();
+      }
+
+      @Override
+      public long end() {
+        return current.upperEndpoint();
+      }
+    };
+  }
+}
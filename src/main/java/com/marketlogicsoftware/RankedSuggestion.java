@@ -0,0 +1,57 @@
+package com.marketlogicsoftware;
+
+import java.util.Comparator;
+
+/**
+ * A suggestion and the number of times it occurs in a corpus. Immutable.
+ */
+public final class RankedSuggestion {
+
+  /**
+   * Most frequent first, equal counts in alphabetical order.
+   */
+  static final Comparator<RankedSuggestion> BY_RANK = Comparator.comparingLong(RankedSuggestion::getCount)
+      .reversed()
+      .thenComparing(RankedSuggestion::getText);
+
+  private final String text;
+  private final long count;
+
+  public RankedSuggestion(String text, long count) {
+    this.text = text;
+    this.count = count;
+  }
+
+  public String getText() {
+    return text;
+  }
+
+  /**
+   * @return number of occurrences. A lower bound if SuggestionMiner tracked a limited number of phrases.
+   */
+  public long getCount() {
+    return count;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    RankedSuggestion that = (RankedSuggestion) o;
+    return count == that.count && text.equals(that.text);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * text.hashCode() + Long.hashCode(count);
+  }
+
+  @Override
+  public String toString() {
+    return text + "=" + count;
+  }
+}
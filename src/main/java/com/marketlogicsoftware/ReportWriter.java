@@ -0,0 +1,153 @@
+package com.marketlogicsoftware;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+
+/**
+ * Streams the report of Scheduler.output to a channel, UTF-8 encoded. Output is byte for byte the same.
+ *
+ * Dates and times are formatted from their primitive fields straight into a reusable buffer, which is written out
+ * whenever it fills up. Nothing is allocated per booking, except for employee ids which are not plain ASCII.
+ *
+ * Not thread safe. Does not close the channel.
+ */
+public class ReportWriter implements Flushable {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final int MAX_LINE_PREFIX = "HH:mm HH:mm ".length();
+
+  private final WritableByteChannel channel;
+  private final Flushable target;
+  private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+  public ReportWriter(OutputStream out) {
+    this(Channels.newChannel(out), out);
+  }
+
+  public ReportWriter(WritableByteChannel channel) {
+    this(channel, null);
+  }
+
+  private ReportWriter(WritableByteChannel channel, Flushable target) {
+    this.channel = channel;
+    this.target = target;
+  }
+
+  /**
+   * Writes all days of the given bookings, like Scheduler.output.
+   */
+  public void write(NavigableMap<LocalDate, Collection<Booking>> bookingsGrouped) throws IOException {
+    for (Entry<LocalDate, Collection<Booking>> entry : bookingsGrouped.entrySet()) {
+      writeDay(entry.getKey(), entry.getValue());
+    }
+  }
+
+  /**
+   * Writes the date line followed by a line for every booking.
+   */
+  public void writeDay(LocalDate date, Iterable<Booking> bookings) throws IOException {
+    ensureRemaining(16);
+    putNumber(date.getYear(), 4);
+    buffer.put((byte) '-');
+    putNumber(date.getMonthOfYear(), 2);
+    buffer.put((byte) '-');
+    putNumber(date.getDayOfMonth(), 2);
+    buffer.put((byte) '\n');
+    for (Booking booking : bookings) {
+      writeBooking(booking);
+    }
+  }
+
+  private void writeBooking(Booking booking) throws IOException {
+    ensureRemaining(MAX_LINE_PREFIX);
+    putTime(booking.getStartTime());
+    buffer.put((byte) ' ');
+    putTime(booking.getEndTime());
+    buffer.put((byte) ' ');
+    putText(booking.getBookedBy());
+    ensureRemaining(1);
+    buffer.put((byte) '\n');
+  }
+
+  private void putTime(DateTime time) {
+    putNumber(time.getHourOfDay(), 2);
+    buffer.put((byte) ':');
+    putNumber(time.getMinuteOfHour(), 2);
+  }
+
+  /**
+   * Puts a non negative number, zero padded to width digits.
+   */
+  private void putNumber(int value, int width) {
+    int digits = 1;
+    for (int bound = 10; digits < 10 && value >= bound; bound *= 10) {
+      digits++;
+    }
+    int position = buffer.position();
+    int length = Math.max(digits, width);
+    for (int i = position + length - 1; i >= position; i--) {
+      buffer.put(i, (byte) ('0' + value % 10));
+      value /= 10;
+    }
+    buffer.position(position + length);
+  }
+
+  private void putText(String text) throws IOException {
+    int length = text.length();
+    for (int i = 0; i < length; i++) {
+      if (text.charAt(i) >= 0x80) {
+        putBytes(text.getBytes(StandardCharsets.UTF_8));
+        return;
+      }
+    }
+    for (int i = 0; i < length; i++) {
+      ensureRemaining(1);
+      buffer.put((byte) text.charAt(i));
+    }
+  }
+
+  private void putBytes(byte[] bytes) throws IOException {
+    int offset = 0;
+    while (offset < bytes.length) {
+      ensureRemaining(1);
+      int length = Math.min(buffer.remaining(), bytes.length - offset);
+      buffer.put(bytes, offset, length);
+      offset += length;
+    }
+  }
+
+  private void ensureRemaining(int bytes) throws IOException {
+    if (buffer.remaining() < bytes) {
+      drain();
+    }
+  }
+
+  private void drain() throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  /**
+   * Writes buffered bytes to the channel, and flushes the output stream if there is one.
+   */
+  @Override
+  public void flush() throws IOException {
+    drain();
+    if (target != null) {
+      target.flush();
+    }
+  }
+}
@@ -0,0 +1,13 @@
+package com.marketlogicsoftware;
+
+/**
+ * Maps resource ids to dense int indexes and back, see IdDictionary.
+ *
+ * Not thread safe.
+ */
+public final class ResourceDictionary extends IdDictionary {
+
+  public ResourceDictionary() {
+    super("resource");
+  }
+}
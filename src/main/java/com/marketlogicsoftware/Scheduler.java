@@ -1,62 +1,88 @@
 package com.marketlogicsoftware;
 
-import com.google.common.collect.RangeSet;
-import com.google.common.collect.TreeMultimap;
-import com.google.common.collect.TreeRangeSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
+import com.marketlogicsoftware.AvailabilityIndex.IntervalCursor;
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.NavigableMap;
-import java.util.TreeSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import org.joda.time.DateTime;
+import org.joda.time.Duration;
+import org.joda.time.Interval;
 import org.joda.time.LocalDate;
 
 /**
  * Main business logic. Responsible for all schedules.
  *
- * I have used Guava RangeSet class to handle booking logic. A newly initialized Scheduler is available all time.
- * Every time a new booking is requested, first it has to match every rule and availableTimes should enclose whole
- * booking interval. If it is true this interval is removed from availableTimes. The booking is recorded to another
- * Guava class, TreeMultimap. TreeMultimap is the natural choice to map days to sets of bookings.
+ * Booking logic is handled by an AvailabilityIndex. A newly initialized Scheduler is available all time. Every time
+ * a new booking is requested, first it has to match every rule and availableTimes should enclose whole booking
+ * interval. If it is true this interval is removed from availableTimes. The booking is recorded to a
+ * BookingStore, a Guava TreeMultimap mapping days to sets of bookings by default.
  *
- * Not thread safe.
+ * Rules are compiled to a CompiledRules predicate on primitive fields when the Scheduler is built.
+ *
+ * Booking intervals are given to the index as epoch millis of their start and end times, so the index works on
+ * primitives only.
+ *
+ * Not thread safe, except for snapshot(), which may be called from any thread.
  */
 public class Scheduler {
 
-  private final List<BookingRule> ruleList = new ArrayList<>();
-  private final RangeSet<DateTime> availableTimes = getEmptyTimeRange();
-  private final TreeMultimap<LocalDate, Booking> validBookings = TreeMultimap.create();
+  private final List<BookingRule> ruleList;
+  private final CompiledRules rules;
+  private final CompiledRules statelessRules;
+  private final CompiledRules statefulRules;
+  private final AvailabilityIndex availableTimes;
+  private final BookingStore validBookings;
+  private final List<BookingListener> listeners;
+  private final BookingMetrics metrics;
+  private final Set<LocalDate> changedDays;
+  private volatile SchedulerSnapshot snapshot = SchedulerSnapshot.EMPTY;
 
-  private Scheduler() {
+  private Scheduler(Builder builder) {
+    this.ruleList = new ArrayList<>(builder.ruleList);
+    this.rules = CompiledRules.compile(ruleList);
+    this.statelessRules = CompiledRules.compile(ruleList.stream()
+        .filter(BookingRule::isStateless)
+        .collect(Collectors.toList()));
+    this.statefulRules = CompiledRules.compile(ruleList.stream()
+        .filter(rule -> !rule.isStateless())
+        .collect(Collectors.toList()));
+    this.availableTimes = builder.availableTimes;
+    this.validBookings = builder.validBookings;
+    this.listeners = new ArrayList<>(builder.listeners);
+    this.metrics = builder.metrics;
+    this.changedDays = builder.snapshots ? new HashSet<>() : null;
   }
 
   /**
    * Static factory method.
    */
   public static Scheduler withRules(BookingRule... rules) {
-    Scheduler scheduler = new Scheduler();
-    Arrays.stream(rules)
-        .forEach(scheduler::addRule);
-    return scheduler;
-  }
-
-  /**
-   * This class is necessary because I usually try to make field members final and type inference of generics is not
-   * so smart in Java.
-   */
-  private RangeSet<DateTime> getEmptyTimeRange() {
-    TreeRangeSet<DateTime> tmp = TreeRangeSet.create();
-    return tmp.complement();
+    return builder()
+        .rules(rules)
+        .build();
   }
 
-  private void addRule(BookingRule rule) {
-    ruleList.add(rule);
+  public static Builder builder() {
+    return new Builder();
   }
 
 
@@ -67,6 +93,9 @@ public class Scheduler {
    * @return true if it is successfull.
    */
   public boolean bookTry(Booking booking) {
+    if (metrics != null) {
+      return bookTryMeasured(booking);
+    }
     if (rulesMatch(booking) && isAvailable(booking)) {
       book(booking);
       return true;
@@ -75,18 +104,189 @@ public class Scheduler {
     }
   }
 
+  private boolean bookTryMeasured(Booking booking) {
+    long start = System.nanoTime();
+    boolean rulesMatch = rulesMatch(booking);
+    long rulesTested = System.nanoTime();
+    metrics.recordRule(rulesTested - start);
+    BookingOutcome outcome = BookingOutcome.REJECTED_BY_RULE;
+    if (rulesMatch) {
+      boolean available = isAvailable(booking);
+      metrics.recordAvailability(System.nanoTime() - rulesTested);
+      outcome = BookingOutcome.REJECTED_OVERLAP;
+      if (available) {
+        book(booking);
+        outcome = BookingOutcome.ACCEPTED;
+      }
+    }
+    metrics.recordOutcome(outcome);
+    return outcome == BookingOutcome.ACCEPTED;
+  }
+
+  /**
+   * Tries to book all given bookings in order of booking time, same as calling bookTry for each of them.
+   *
+   * Runs in three phases. Stateless rules are tested in parallel first. Survivors are sorted by booking time;
+   * bookings with equal booking times keep their order in the collection. Finally a sequential pass tests stateful
+   * rules and availability. Sorting is linear for bookings already (nearly) in booking order. Accepted intervals
+   * are collected in a separate index and added to availableTimes in bulk at the end. Listeners are notified after
+   * that, with all accepted bookings in booking order.
+   *
+   * @return outcome of every booking, in iteration order of the collection.
+   * @throws IllegalArgumentException if a booking matching all rules does not start before it ends, like bookTry.
+   * Bookings tried before it stay booked.
+   */
+  public BookingOutcome[] bookAll(Collection<Booking> bookings) {
+    Booking[] batch = bookings.toArray(new Booking[0]);
+    BookingOutcome[] outcomes = new BookingOutcome[batch.length];
+    bookAll(batch, outcomes);
+    return outcomes;
+  }
+
+  /**
+   * Same as bookAll, filling in outcomes as bookings are tried. If a rule or the interval check throws, bookings
+   * accepted before stay booked, also in availableTimes, listeners are notified of them and a snapshot is
+   * published. Their outcomes are set, those of bookings not tried yet are null.
+   */
+  void bookAll(Booking[] batch, BookingOutcome[] outcomes) {
+    long[] ruleNanos = metrics == null ? null : new long[batch.length];
+    IntStream.range(0, batch.length)
+        .parallel()
+        .filter(i -> !test(statelessRules, batch[i], ruleNanos, i))
+        .forEach(i -> outcomes[i] = BookingOutcome.REJECTED_BY_RULE);
+
+    int[] order = IntStream.range(0, batch.length)
+        .filter(i -> outcomes[i] == null)
+        .toArray();
+    long[] bookedTimes = new long[batch.length];
+    for (int i : order) {
+      bookedTimes[i] = batch[i].getBookedTime().getMillis();
+    }
+    BookingOrder.sort(order, bookedTimes);
+
+    AvailabilityIndex accepted = new BlockedAvailabilityIndex();
+    List<Booking> acceptedBookings = new ArrayList<>();
+    try {
+      for (int i : order) {
+        Booking booking = batch[i];
+        long start = booking.getStartTime().getMillis();
+        long end = booking.getEndTime().getMillis();
+        if (!test(statefulRules, booking, ruleNanos, i)) {
+          outcomes[i] = BookingOutcome.REJECTED_BY_RULE;
+        } else if (!isAvailable(start, end, accepted)) {
+          outcomes[i] = BookingOutcome.REJECTED_OVERLAP;
+        } else {
+          accepted.remove(start, end);
+          validBookings.add(booking);
+          changed(booking);
+          acceptedBookings.add(booking);
+          outcomes[i] = BookingOutcome.ACCEPTED;
+        }
+      }
+    } finally {
+      availableTimes.removeAll(accepted.bookedAfter(Long.MIN_VALUE));
+      if (metrics != null) {
+        for (int i = 0; i < batch.length; i++) {
+          metrics.recordRule(ruleNanos[i]);
+          if (outcomes[i] != null) {
+            metrics.recordOutcome(outcomes[i]);
+          }
+        }
+      }
+      if (!acceptedBookings.isEmpty()) {
+        listeners.forEach(listener -> listener.bookedAll(acceptedBookings));
+      }
+      publishSnapshot();
+    }
+  }
+
+  /**
+   * Tests the rules, adding the time taken to ruleNanos[i] if metrics are enabled.
+   */
+  private boolean test(CompiledRules rules, Booking booking, long[] ruleNanos, int i) {
+    if (ruleNanos == null) {
+      return rules.test(booking);
+    }
+    long start = System.nanoTime();
+    boolean matches = rules.test(booking);
+    ruleNanos[i] += System.nanoTime() - start;
+    return matches;
+  }
+
+  /**
+   * @return true if (start, end) is free both in availableTimes and in the intervals accepted by a batch.
+   */
+  private boolean isAvailable(long start, long end, AvailabilityIndex accepted) {
+    if (metrics == null) {
+      return availableTimes.encloses(start, end) && accepted.encloses(start, end);
+    }
+    long started = System.nanoTime();
+    boolean available = availableTimes.encloses(start, end) && accepted.encloses(start, end);
+    metrics.recordAvailability(System.nanoTime() - started);
+    return available;
+  }
+
+  /**
+   * Cancels a booking made before, freeing its interval for new bookings.
+   *
+   * @return false if the booking was not made.
+   */
+  public boolean cancel(Booking booking) {
+    if (!validBookings.remove(booking)) {
+      return false;
+    }
+    changed(booking);
+    availableTimes.release(booking.getStartTime().getMillis(), booking.getEndTime().getMillis());
+    for (BookingListener listener : listeners) {
+      listener.cancelled(booking);
+    }
+    return true;
+  }
+
+  /**
+   * Moves a booking made before to a new start time and duration. The moved booking must match all rules and must
+   * not overlap other bookings, but may overlap its old interval. Nothing changes if it fails, also if a rule throws.
+   *
+   * @return the moved booking, empty if the booking was not made or can't be moved.
+   * @throws IllegalArgumentException if duration is not positive.
+   */
+  public Optional<Booking> reschedule(Booking booking, DateTime newStart, Duration newDuration) {
+    if (newDuration.getMillis() <= 0) {
+      throw new IllegalArgumentException("Duration must be positive: " + newDuration);
+    }
+    if (!validBookings.remove(booking)) {
+      return Optional.empty();
+    }
+    changed(booking);
+    Booking moved = booking.withSchedule(newStart, newStart.plus(newDuration));
+    availableTimes.release(booking.getStartTime().getMillis(), booking.getEndTime().getMillis());
+    boolean accepted = false;
+    try {
+      accepted = rulesMatch(moved) && isAvailable(moved);
+    } finally {
+      restore(accepted ? moved : booking);
+    }
+    if (!accepted) {
+      return Optional.empty();
+    }
+    for (BookingListener listener : listeners) {
+      listener.rescheduled(booking, moved);
+    }
+    return Optional.of(moved);
+  }
+
   /**
    * @return true if the booking matches all rules.
    */
   private boolean rulesMatch(Booking booking) {
-    return ruleList.stream().allMatch(rule -> rule.test(booking));
+    return rules.test(booking);
   }
 
   /**
    * @return true if the booking does not overlap with already made bookings.
    */
   private boolean isAvailable(Booking booking) {
-    return availableTimes.encloses(booking.asRange());
+    return availableTimes.encloses(booking.getStartTime().getMillis(), booking.getEndTime().getMillis());
   }
 
   /**
@@ -94,8 +294,111 @@ public class Scheduler {
    * it does not overlap with future bookings. Add it to validBookings map to query later.
    */
   private void book(Booking booking) {
-    availableTimes.remove(booking.asRange());
-    validBookings.put(booking.getStartTime().toLocalDate(), booking);
+    restore(booking);
+    notifyBooked(booking);
+  }
+
+  private void notifyBooked(Booking booking) {
+    for (BookingListener listener : listeners) {
+      listener.booked(booking);
+    }
+  }
+
+  /**
+   * Makes a booking without testing rules and without notifying listeners. Recovery path of BookingJournal.
+   *
+   * @throws IllegalArgumentException if it overlaps a booking.
+   */
+  void restore(Booking booking) {
+    availableTimes.remove(booking.getStartTime().getMillis(), booking.getEndTime().getMillis());
+    validBookings.add(booking);
+    changed(booking);
+  }
+
+  /**
+   * Cancels a booking without notifying listeners. Recovery path of BookingJournal.
+   *
+   * @throws IllegalArgumentException if the booking was not made.
+   */
+  void restoreCancel(Booking booking) {
+    if (!validBookings.remove(booking)) {
+      throw new IllegalArgumentException("Not booked: " + booking);
+    }
+    changed(booking);
+    availableTimes.release(booking.getStartTime().getMillis(), booking.getEndTime().getMillis());
+  }
+
+  /**
+   * Bulk version of restore(Booking) for a snapshot. Booked intervals must be in time order and cover all bookings.
+   */
+  void restore(IntervalCursor bookedIntervals, Iterable<Booking> bookings) {
+    availableTimes.removeAll(bookedIntervals);
+    for (Booking booking : bookings) {
+      validBookings.add(booking);
+      changed(booking);
+    }
+  }
+
+  private void changed(Booking booking) {
+    if (changedDays != null) {
+      changedDays.add(booking.getStartTime().toLocalDate());
+    }
+  }
+
+  /**
+   * Publishes a snapshot of the current bookings, copying the days changed since the last one. bookAll publishes
+   * when it is done; call it after making bookings by other means. Does nothing if snapshots are disabled.
+   */
+  public void publishSnapshot() {
+    if (changedDays != null && !changedDays.isEmpty()) {
+      snapshot = snapshot.update(changedDays, validBookings.grouped());
+      changedDays.clear();
+    }
+  }
+
+  /**
+   * Lock free, may be called from any thread while bookings are made. Readers never block the booking thread.
+   *
+   * @return the last published snapshot.
+   * @throws IllegalStateException if snapshots are disabled.
+   */
+  public SchedulerSnapshot snapshot() {
+    if (changedDays == null) {
+      throw new IllegalStateException("Snapshots are not enabled");
+    }
+    return snapshot;
+  }
+
+  /**
+   * @return a cursor over all booked intervals in time order, valid until the next booking.
+   */
+  IntervalCursor bookedIntervals() {
+    return availableTimes.bookedAfter(Long.MIN_VALUE);
+  }
+
+  /**
+   * Finds free slots of the given duration between from and to, in time order. A slot is the earliest one of a free
+   * gap matching all rules, starting at the gap start or whole minutes after it, so a gap yields at most one slot.
+   * Gaps are clipped to the windows of WindowedBookingRules like OpenHoursRule, and booking a slot right away
+   * succeeds.
+   *
+   * Slots are found lazily. Taking the first k costs O(log n + k) per window searched, plus a rule test for every
+   * rejected candidate. Rules without a window can only be tested, not searched, so when one rejects a candidate
+   * the search probes the rest of the gap minute by minute, see FreeSlotIterator.STEP. That scan is a deliberate
+   * limit: it stays inside one gap, and is not needed for WindowedBookingRules, whose windows clip gaps up front.
+   * Don't book while consuming the stream.
+   *
+   * @param limit maximum number of slots returned
+   */
+  public Stream<Interval> findFreeSlots(DateTime from, DateTime to, Duration duration, int limit) {
+    List<WindowedBookingRule> windowedRules = ruleList.stream()
+        .filter(WindowedBookingRule.class::isInstance)
+        .map(WindowedBookingRule.class::cast)
+        .collect(Collectors.toList());
+    FreeSlotIterator slots = new FreeSlotIterator(availableTimes, ruleList, windowedRules, from, to, duration);
+    int characteristics = Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL;
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(slots, characteristics), false)
+        .limit(limit);
   }
 
   /**
@@ -109,22 +412,77 @@ public class Scheduler {
    * @return all bookings made grouped by their date.
    */
   public NavigableMap<LocalDate, Collection<Booking>> getBookingsGrouped() {
-    return Collections.unmodifiableNavigableMap(validBookings.asMap());
+    return Collections.unmodifiableNavigableMap(validBookings.grouped());
+  }
+
+  /**
+   * Bookings never overlap, so only the last one starting before from can overlap it. It is found through the
+   * booked intervals of availableTimes, the others are bookings starting between from and to.
+   *
+   * @return a read only live view of bookings overlapping (from, to), in time order. Iterating k of them costs
+   *     O(log n + k). Don't book while iterating.
+   * @throws IllegalArgumentException if from is not before to.
+   */
+  public Collection<Booking> getBookingsOverlapping(DateTime from, DateTime to) {
+    if (!from.isBefore(to)) {
+      throw new IllegalArgumentException(String.format("Invalid interval: (%s, %s)", from, to));
+    }
+    Collection<Booking> starting = validBookings.startingBetween(from, to);
+    return BookingViews.lazy(() -> {
+      IntervalCursor booked = availableTimes.bookedAfter(from.getMillis());
+      if (!booked.next() || booked.start() >= from.getMillis()) {
+        return starting.iterator();
+      }
+      DateTime start = new DateTime(booked.start());
+      Iterator<Booking> first = validBookings.startingBetween(start, start.plusMillis(1)).iterator();
+      return Iterators.concat(first, starting.iterator());
+    });
+  }
+
+  /**
+   * @return a read only live view of bookings of the employee starting at or after from and before to, in time
+   *     order. Iterating k of them costs O(log n + k). Don't book while iterating.
+   * @throws IllegalArgumentException if from is after to.
+   */
+  public Collection<Booking> getBookingsBy(String employee, DateTime from, DateTime to) {
+    return validBookings.byEmployee(employee, from, to);
+  }
+
+  /**
+   * Pages through bookings of the days from from until to, excluding to. Days are found in O(log n), every page is
+   * copied from the live view of the days when it is reached. Don't book while iterating.
+   *
+   * @return pages of pageSize bookings ordered by date and time, the last one may be smaller.
+   * @throws IllegalArgumentException if from is after to or pageSize is not positive.
+   */
+  public Iterable<List<Booking>> getBookingPages(LocalDate from, LocalDate to, int pageSize) {
+    if (from.isAfter(to) || pageSize <= 0) {
+      throw new IllegalArgumentException(String.format("Invalid page range: [%s, %s) by %d", from, to, pageSize));
+    }
+    NavigableMap<LocalDate, Collection<Booking>> days = validBookings.grouped().subMap(from, true, to, false);
+    return Iterables.partition(Iterables.concat(days.values()), pageSize);
   }
 
   /**
    * Assumes reader contains one booking representation for every two lines.
    *
-   * First adds them to a set in order of booking time. Later tries to book them in order.
+   * First reads all of them, then tries to book them in order of booking time with bookAll. Bookings with equal
+   * booking times are tried in input order. Lines are parsed with a BookingParser, which accepts the same records
+   * as Booking.fromString.
    */
   public void bookAllInBookingOrder(BufferedReader reader) throws IOException {
     String bookingLine, scheduleLine;
-    TreeSet<Booking> bookings = new TreeSet<>(Comparator.comparing(Booking::getBookedTime));
+    BookingParser parser = new BookingParser();
+    List<Booking> bookings = new ArrayList<>();
     while ((bookingLine = reader.readLine()) != null && ((scheduleLine = reader.readLine()) != null)) {
-      Booking booking = Booking.fromString(bookingLine, scheduleLine);
-      bookings.add(booking);
+      long start = metrics == null ? 0 : System.nanoTime();
+      parser.parse(bookingLine, scheduleLine);
+      bookings.add(parser.toBooking());
+      if (metrics != null) {
+        metrics.recordParse(System.nanoTime() - start);
+      }
     }
-    bookings.forEach(this::bookTry);
+    bookAll(bookings);
   }
 
   /**
@@ -134,8 +492,40 @@ public class Scheduler {
    * Instead use getBookingsGrouped.
    */
   public String output() {
+    long start = metrics == null ? 0 : System.nanoTime();
+    String output = output(getBookingsGrouped());
+    if (metrics != null) {
+      metrics.recordOutput(System.nanoTime() - start);
+    }
+    return output;
+  }
+
+  /**
+   * Streams output() to the given stream, UTF-8 encoded, without building it in memory. Does not close the stream.
+   */
+  public void output(OutputStream out) throws IOException {
+    long start = metrics == null ? 0 : System.nanoTime();
+    ReportWriter writer = new ReportWriter(out);
+    writer.write(getBookingsGrouped());
+    writer.flush();
+    if (metrics != null) {
+      metrics.recordOutput(System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * @return metrics of this Scheduler, null if disabled.
+   */
+  BookingMetrics metrics() {
+    return metrics;
+  }
+
+  /**
+   * String output of the given bookings, in the format of output().
+   */
+  static String output(NavigableMap<LocalDate, Collection<Booking>> bookingsGrouped) {
     StringBuilder sb = new StringBuilder();
-    for (Entry<LocalDate, Collection<Booking>> localDateCollectionEntry : getBookingsGrouped().entrySet()) {
+    for (Entry<LocalDate, Collection<Booking>> localDateCollectionEntry : bookingsGrouped.entrySet()) {
       sb.append(localDateCollectionEntry.getKey().toString("YYYY-MM-dd"))
           .append("\n");
       for (Booking booking : localDateCollectionEntry.getValue()) {
@@ -149,4 +539,80 @@ public class Scheduler {
     }
     return sb.toString();
   }
+
+  /**
+   * Configures a Scheduler. Rules are empty, availability is kept in a BlockedAvailabilityIndex and bookings in a
+   * TreeBookingStore by default.
+   */
+  public static final class Builder {
+
+    private final List<BookingRule> ruleList = new ArrayList<>();
+    private AvailabilityIndex availableTimes;
+    private BookingStore validBookings;
+    private final List<BookingListener> listeners = new ArrayList<>();
+    private BookingMetrics metrics;
+    private boolean snapshots;
+
+    private Builder() {
+    }
+
+    public Builder rules(BookingRule... rules) {
+      ruleList.addAll(Arrays.asList(rules));
+      return this;
+    }
+
+    /**
+     * @param index an empty index, owned by the Scheduler from now on.
+     */
+    public Builder availabilityIndex(AvailabilityIndex index) {
+      this.availableTimes = index;
+      return this;
+    }
+
+    /**
+     * @param store an empty store, owned by the Scheduler from now on. A CompactBookingStore saves most of the heap
+     * taken by bookings.
+     */
+    public Builder bookingStore(BookingStore store) {
+      this.validBookings = store;
+      return this;
+    }
+
+    /**
+     * Adds a listener notified about every accepted booking.
+     */
+    public Builder listener(BookingListener listener) {
+      listeners.add(listener);
+      return this;
+    }
+
+    /**
+     * Enables snapshots for readers on other threads, see Scheduler.snapshot. They are disabled by default.
+     */
+    public Builder snapshots() {
+      this.snapshots = true;
+      return this;
+    }
+
+    /**
+     * Enables metrics. They are disabled by default.
+     */
+    public Builder metrics(BookingMetrics metrics) {
+      this.metrics = metrics;
+      return this;
+    }
+
+    public Scheduler build() {
+      if (availableTimes == null) {
+        availableTimes = new BlockedAvailabilityIndex();
+      }
+      if (validBookings == null) {
+        validBookings = new TreeBookingStore();
+      }
+      Scheduler scheduler = new Scheduler(this);
+      availableTimes = null;
+      validBookings = null;
+      return scheduler;
+    }
+  }
 }
@@ -0,0 +1,305 @@
+package com.marketlogicsoftware;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Iterables;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.function.Consumer;
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+
+/**
+ * Immutable point in time view of the bookings of a Scheduler, safe to read from any thread.
+ *
+ * A Scheduler publishes a new snapshot at batch boundaries through a volatile field, see Scheduler.snapshot. Days
+ * are kept in a persistent AVL tree: an update copies the changed days and the O(log days) tree nodes on the path
+ * to each of them, everything else is shared with the previous snapshot. Publishing costs O(changed days * log
+ * days), whatever the length of the history. Every day keeps its bookings in time order together with primitive
+ * arrays of their start and end millis, which answer availability by binary search. Views over all days are built
+ * once per snapshot, on first read. Bookings are assumed to be made in the default time zone, like
+ * Booking.fromString makes them.
+ */
+public final class SchedulerSnapshot {
+
+  static final SchedulerSnapshot EMPTY = new SchedulerSnapshot(null, 0, 0);
+
+  private final Node root;
+  private final int size;
+  private final long version;
+  private volatile NavigableMap<LocalDate, Collection<Booking>> grouped;
+
+  private SchedulerSnapshot(Node root, int size, long version) {
+    this.root = root;
+    this.size = size;
+    this.version = version;
+  }
+
+  /**
+   * @return next snapshot, copying the changed days from the bookings of a Scheduler.
+   */
+  SchedulerSnapshot update(Set<LocalDate> changedDays, NavigableMap<LocalDate, Collection<Booking>> bookingsGrouped) {
+    Node updated = root;
+    int updatedSize = size;
+    for (LocalDate date : changedDays) {
+      Node old = Node.floor(updated, date, true);
+      if (old != null && old.date.equals(date)) {
+        updatedSize -= old.day.bookings.size();
+        updated = Node.remove(updated, date);
+      }
+      Collection<Booking> bookings = bookingsGrouped.get(date);
+      if (bookings != null && !bookings.isEmpty()) {
+        Day day = new Day(ImmutableList.copyOf(bookings));
+        updated = Node.put(updated, date, day);
+        updatedSize += day.bookings.size();
+      }
+    }
+    return new SchedulerSnapshot(updated, updatedSize, version + 1);
+  }
+
+  /**
+   * @return number of snapshots published before this one.
+   */
+  public long getVersion() {
+    return version;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return all bookings ordered by date and time.
+   */
+  public Collection<Booking> getBookings() {
+    return new AllBookings();
+  }
+
+  /**
+   * @return all bookings grouped by their date.
+   */
+  public NavigableMap<LocalDate, Collection<Booking>> getBookingsGrouped() {
+    NavigableMap<LocalDate, Collection<Booking>> grouped = this.grouped;
+    if (grouped == null) {
+      ImmutableSortedMap.Builder<LocalDate, Collection<Booking>> builder = ImmutableSortedMap.naturalOrder();
+      Node.forEach(root, node -> builder.put(node.date, node.day.bookings));
+      grouped = builder.build();
+      this.grouped = grouped;
+    }
+    return grouped;
+  }
+
+  /**
+   * @return true if (start, end) overlaps no booking.
+   * @throws IllegalArgumentException if start is not before end.
+   */
+  public boolean isAvailable(DateTime start, DateTime end) {
+    long startMillis = start.getMillis();
+    long endMillis = end.getMillis();
+    if (startMillis >= endMillis) {
+      throw new IllegalArgumentException(String.format("Invalid interval: (%s, %s)", start, end));
+    }
+    Node node = Node.floor(root, new LocalDate(endMillis), true);
+    if (node != null && node.day.lastStartingBefore(endMillis) < 0) {
+      node = Node.floor(root, node.date, false);
+    }
+    if (node == null) {
+      return true;
+    }
+    Day day = node.day;
+    return day.ends[day.lastStartingBefore(endMillis)] <= startMillis;
+  }
+
+  /**
+   * Same as Scheduler.output for the bookings of this snapshot.
+   */
+  public String output() {
+    return Scheduler.output(getBookingsGrouped());
+  }
+
+  /**
+   * Streams output() to the given stream, UTF-8 encoded. Does not close the stream.
+   */
+  public void output(OutputStream out) throws IOException {
+    ReportWriter writer = new ReportWriter(out);
+    writer.write(getBookingsGrouped());
+    writer.flush();
+  }
+
+  private final class AllBookings extends AbstractCollection<Booking> {
+
+    @Override
+    public Iterator<Booking> iterator() {
+      return Iterables.concat(getBookingsGrouped().values()).iterator();
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+  }
+
+  /**
+   * Bookings starting on one date. They don't overlap, so sorting by start sorts ends as well.
+   */
+  private static final class Day {
+
+    private final ImmutableList<Booking> bookings;
+    private final long[] starts;
+    private final long[] ends;
+
+    Day(ImmutableList<Booking> bookings) {
+      this.bookings = bookings;
+      this.starts = new long[bookings.size()];
+      this.ends = new long[bookings.size()];
+      for (int i = 0; i < starts.length; i++) {
+        starts[i] = bookings.get(i).getStartTime().getMillis();
+        ends[i] = bookings.get(i).getEndTime().getMillis();
+      }
+    }
+
+    /**
+     * @return last index of a booking starting before millis, -1 if there is none.
+     */
+    int lastStartingBefore(long millis) {
+      int low = 0;
+      int high = starts.length - 1;
+      while (low <= high) {
+        int middle = (low + high) >>> 1;
+        if (starts[middle] < millis) {
+          low = middle + 1;
+        } else {
+          high = middle - 1;
+        }
+      }
+      return high;
+    }
+  }
+  /**
+   * Immutable AVL tree node from a date to its day. Updates copy the path from the root and share everything else.
+   */
+  private static final class Node {
+
+    private final LocalDate date;
+    private final Day day;
+    private final Node left;
+    private final Node right;
+    private final int height;
+
+    private Node(LocalDate date, Day day, Node left, Node right) {
+      this.date = date;
+      this.day = day;
+      this.left = left;
+      this.right = right;
+      this.height = Math.max(height(left), height(right)) + 1;
+    }
+
+    /**
+     * @return node of the greatest date before date, or at it if inclusive, null if there is none.
+     */
+    static Node floor(Node node, LocalDate date, boolean inclusive) {
+      Node floor = null;
+      while (node != null) {
+        int comparison = date.compareTo(node.date);
+        if (comparison == 0 && inclusive) {
+          return node;
+        }
+        if (comparison > 0) {
+          floor = node;
+          node = node.right;
+        } else {
+          node = node.left;
+        }
+      }
+      return floor;
+    }
+
+    /**
+     * @return root of a tree with the day put at date, replacing the one there.
+     */
+    static Node put(Node node, LocalDate date, Day day) {
+      if (node == null) {
+        return new Node(date, day, null, null);
+      }
+      int comparison = date.compareTo(node.date);
+      if (comparison < 0) {
+        return balance(node.date, node.day, put(node.left, date, day), node.right);
+      }
+      if (comparison > 0) {
+        return balance(node.date, node.day, node.left, put(node.right, date, day));
+      }
+      return new Node(date, day, node.left, node.right);
+    }
+
+    /**
+     * @return root of a tree without date.
+     */
+    static Node remove(Node node, LocalDate date) {
+      if (node == null) {
+        return null;
+      }
+      int comparison = date.compareTo(node.date);
+      if (comparison < 0) {
+        return balance(node.date, node.day, remove(node.left, date), node.right);
+      }
+      if (comparison > 0) {
+        return balance(node.date, node.day, node.left, remove(node.right, date));
+      }
+      if (node.left == null) {
+        return node.right;
+      }
+      if (node.right == null) {
+        return node.left;
+      }
+      Node first = node.right;
+      while (first.left != null) {
+        first = first.left;
+      }
+      return balance(first.date, first.day, node.left, removeFirst(node.right));
+    }
+
+    static void forEach(Node node, Consumer<Node> action) {
+      if (node != null) {
+        forEach(node.left, action);
+        action.accept(node);
+        forEach(node.right, action);
+      }
+    }
+
+    private static Node removeFirst(Node node) {
+      if (node.left == null) {
+        return node.right;
+      }
+      return balance(node.date, node.day, removeFirst(node.left), node.right);
+    }
+
+    private static Node balance(LocalDate date, Day day, Node left, Node right) {
+      if (height(left) > height(right) + 1) {
+        if (height(left.left) >= height(left.right)) {
+          return new Node(left.date, left.day, left.left, new Node(date, day, left.right, right));
+        }
+        Node middle = left.right;
+        return new Node(middle.date, middle.day, new Node(left.date, left.day, left.left, middle.left),
+            new Node(date, day, middle.right, right));
+      }
+      if (height(right) > height(left) + 1) {
+        if (height(right.right) >= height(right.left)) {
+          return new Node(right.date, right.day, new Node(date, day, left, right.left), right.right);
+        }
+        Node middle = right.left;
+        return new Node(middle.date, middle.day, new Node(date, day, left, middle.left),
+            new Node(right.date, right.day, middle.right, right.right));
+      }
+      return new Node(date, day, left, right);
+    }
+
+    private static int height(Node node) {
+      return node == null ? 0 : node.height;
+    }
+  }
+}
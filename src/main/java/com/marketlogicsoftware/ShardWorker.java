@@ -0,0 +1,23 @@
+package com.marketlogicsoftware;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Entry point of a worker process of ShardedBookingRunner. Books the input file given as first argument, which has
+ * the format of App's input, and writes the output of its Scheduler to the file given as second argument.
+ */
+public class ShardWorker {
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      throw new IllegalArgumentException("Usage: ShardWorker <input file> <output file>");
+    }
+    Scheduler scheduler = new MappedBookingLoader().load(Paths.get(args[0]));
+    try (OutputStream out = Files.newOutputStream(Paths.get(args[1]))) {
+      scheduler.output(out);
+    }
+  }
+}
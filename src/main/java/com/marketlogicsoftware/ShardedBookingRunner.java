@@ -0,0 +1,191 @@
+package com.marketlogicsoftware;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import org.joda.time.DateTimeZone;
+
+/**
+ * Books an input file in several worker processes, each running its own Scheduler on a range of dates. Output is
+ * the same as App's.
+ *
+ * The open hours of the header are always a WindowedBookingRule, which only accepts bookings ending on the day they
+ * start. So bookings of different days never compete for an interval, and every day can be booked on its own. Dates
+ * are range partitioned by start date: the input is read once to count records per date, and cut into ranges of
+ * about the same number of records. A second pass writes the records of every range to a shard file, after a copy of
+ * the header and in input order, so ties of booking time are broken the same way. Every shard is booked by a
+ * ShardWorker in a new JVM on the class path of this one. Shard outputs are grouped by date and ranges are in date
+ * order, so the output is their concatenation.
+ */
+public class ShardedBookingRunner {
+
+  private static final int DATE_LENGTH = "YYYY-MM-DD".length();
+
+  private final int shards;
+
+  /**
+   * @param shards maximum number of worker processes.
+   */
+  public ShardedBookingRunner(int shards) {
+    if (shards <= 0) {
+      throw new IllegalArgumentException("Shard count must be positive: " + shards);
+    }
+    this.shards = shards;
+  }
+
+  /**
+   * Books the input file and writes the output of all shards to out. Does not close the stream.
+   *
+   * @throws IOException if a worker fails.
+   */
+  public void run(Path input, OutputStream out) throws IOException {
+    Path directory = Files.createTempDirectory("booking-shards");
+    try {
+      List<String> lastDates = partition(countRecords(input), shards);
+      List<Path> shardInputs = split(input, lastDates, directory);
+      List<Process> workers = new ArrayList<>();
+      List<Path> shardOutputs = new ArrayList<>();
+      try {
+        for (Path shardInput : shardInputs) {
+          Path shardOutput = directory.resolve(shardInput.getFileName() + ".out");
+          workers.add(startWorker(shardInput, shardOutput));
+          shardOutputs.add(shardOutput);
+        }
+        for (Process worker : workers) {
+          waitFor(worker);
+        }
+      } finally {
+        workers.forEach(Process::destroy);
+      }
+      for (Path shardOutput : shardOutputs) {
+        Files.copy(shardOutput, out);
+      }
+      out.flush();
+    } finally {
+      deleteRecursively(directory);
+    }
+  }
+
+  /**
+   * @return number of records of every start date, keyed by ISO date.
+   */
+  private static NavigableMap<String, Integer> countRecords(Path input) throws IOException {
+    NavigableMap<String, Integer> counts = new TreeMap<>();
+    try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+      reader.readLine();
+      String bookingLine, scheduleLine;
+      while ((bookingLine = reader.readLine()) != null && (scheduleLine = reader.readLine()) != null) {
+        counts.merge(startDate(bookingLine, scheduleLine), 1, Integer::sum);
+      }
+    }
+    return counts;
+  }
+
+  /**
+   * Cuts dates into at most shards ranges of about the same number of records.
+   *
+   * @return last date of every range, in order.
+   */
+  static List<String> partition(NavigableMap<String, Integer> recordsPerDate, int shards) {
+    long total = recordsPerDate.values().stream().mapToLong(Integer::longValue).sum();
+    List<String> lastDates = new ArrayList<>();
+    long records = 0;
+    for (Entry<String, Integer> entry : recordsPerDate.entrySet()) {
+      records += entry.getValue();
+      if (records * shards >= total * (lastDates.size() + 1) || entry.getKey().equals(recordsPerDate.lastKey())) {
+        lastDates.add(entry.getKey());
+      }
+    }
+    return lastDates;
+  }
+
+  /**
+   * Writes the records of every date range to its own shard file, each starting with the header of the input.
+   */
+  private static List<Path> split(Path input, List<String> lastDates, Path directory) throws IOException {
+    List<Path> paths = new ArrayList<>();
+    BufferedWriter[] writers = new BufferedWriter[lastDates.size()];
+    try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+      String header = reader.readLine();
+      for (int i = 0; i < writers.length; i++) {
+        Path path = directory.resolve("shard-" + i);
+        paths.add(path);
+        writers[i] = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+        writers[i].write(header);
+        writers[i].write('\n');
+      }
+      String bookingLine, scheduleLine;
+      while ((bookingLine = reader.readLine()) != null && (scheduleLine = reader.readLine()) != null) {
+        int index = Collections.binarySearch(lastDates, startDate(bookingLine, scheduleLine));
+        int shard = index >= 0 ? index : -index - 1;
+        writers[shard].write(bookingLine);
+        writers[shard].write('\n');
+        writers[shard].write(scheduleLine);
+        writers[shard].write('\n');
+      }
+    } finally {
+      for (BufferedWriter writer : writers) {
+        if (writer != null) {
+          writer.close();
+        }
+      }
+    }
+    return paths;
+  }
+
+  private static String startDate(String bookingLine, String scheduleLine) {
+    if (scheduleLine.length() < DATE_LENGTH) {
+      throw new IllegalArgumentException(String.format("Bad arguments: [%s,%s]", bookingLine, scheduleLine));
+    }
+    return scheduleLine.substring(0, DATE_LENGTH);
+  }
+
+  /**
+   * Starts a JVM on the class path and in the time zone of this one. Errors of the worker go to our stderr.
+   */
+  private static Process startWorker(Path shardInput, Path shardOutput) throws IOException {
+    String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+    ProcessBuilder builder = new ProcessBuilder(Arrays.asList(java,
+        "-Duser.timezone=" + DateTimeZone.getDefault().getID(),
+        "-cp", System.getProperty("java.class.path"),
+        ShardWorker.class.getName(), shardInput.toString(), shardOutput.toString()));
+    builder.redirectOutput(new File(shardOutput + ".log"));
+    builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+    return builder.start();
+  }
+
+  private static void waitFor(Process worker) throws IOException {
+    try {
+      int exitValue = worker.waitFor();
+      if (exitValue != 0) {
+        throw new IOException("Shard worker failed with exit value " + exitValue);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for a shard worker", e);
+    }
+  }
+
+  private static void deleteRecursively(Path directory) throws IOException {
+    try (Stream<Path> paths = Files.walk(directory)) {
+      for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+        Files.delete(path);
+      }
+    }
+  }
+}
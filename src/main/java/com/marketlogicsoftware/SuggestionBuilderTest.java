@@ -1,11 +1,9 @@
 package com.marketlogicsoftware;
 
-import com.google.common.collect.Lists;
-import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Set;
+import java.util.function.Consumer;
 
 public class SuggestionBuilderTest {
 
@@ -22,6 +20,22 @@ public class SuggestionBuilderTest {
 		public String toString() {
 			return text;
 		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (o == null || getClass() != o.getClass()) {
+				return false;
+			}
+			return text.equals(((Suggestion) o).text);
+		}
+
+		@Override
+		public int hashCode() {
+			return text.hashCode();
+		}
 	}
 
 	/**
@@ -54,40 +68,112 @@ public class SuggestionBuilderTest {
 	 * "chewing gum", 
 	 * "gum"
 	 * 
+	 * Every window of 1..MAX_COMBINED_TOKENS valid tokens ending at the current
+	 * token is emitted, so the last MAX_COMBINED_TOKENS valid tokens are kept in
+	 * a ring buffer. A stop word or a single character empties it. Stop words
+	 * are matched ignoring case through a StopWords table, without allocating.
 	 */
-	
 	static Set<Suggestion> buildSuggestionsFromTokenStream(Iterator<String> tokens, Set<String> stopWords) {
-		StringBuilder sb = new StringBuilder();
 		Set<Suggestion> results = new HashSet<>();
-		String sep = "";
-		int counter = 0;
-		for (Iterator<String> it = tokens; it.hasNext(); ) {
-			String token = it.next();
-			counter++;
-			String result = sb.toString();
-			if (!result.isEmpty()) {
-				results.add(new Suggestion(result));
+		forEachSuggestion(tokens, new StopWords(stopWords), text -> results.add(new Suggestion(text)));
+		return results;
+	}
+
+	/**
+	 * Gives the text of every suggestion of the token stream to the sink, once
+	 * for every time it occurs.
+	 */
+	static void forEachSuggestion(Iterator<String> tokens, StopWords stopWords, Consumer<String> sink) {
+		String[] window = new String[MAX_COMBINED_TOKENS];
+		int count = 0;
+		int next = 0;
+		StringBuilder sb = new StringBuilder();
+		while (tokens.hasNext()) {
+			String token = tokens.next();
+			if (resetsWindow(token, stopWords)) {
+				count = 0;
+				continue;
 			}
-			if (shouldStop(token, stopWords, counter)) {
+			window[next] = token;
+			next = (next + 1) % MAX_COMBINED_TOKENS;
+			count = Math.min(count + 1, MAX_COMBINED_TOKENS);
+			for (int length = 1; length <= count; length++) {
 				sb.setLength(0);
-				sep = "";
-				counter = 0;
-			} else {
-				sb.append(sep + token);
-				sep = " ";
+				for (int i = length; i > 0; i--) {
+					if (sb.length() > 0) {
+						sb.append(' ');
+					}
+					sb.append(window[(next - i + MAX_COMBINED_TOKENS) % MAX_COMBINED_TOKENS]);
+				}
+				sink.accept(sb.toString());
 			}
 		}
-		String result = sb.toString();
-		if (!result.isEmpty()) {
-			results.add(new Suggestion(result));
-		}
-		return results;
 	}
 
-	private static boolean shouldStop(String word, Set<String> stopWords, int counter) {
-		if (word.length() == 1 || stopWords.contains(word.toLowerCase()) || counter > MAX_COMBINED_TOKENS) {
+	/**
+	 * @return true if no suggestion can contain the token, so suggestions
+	 *         before and after it are independent.
+	 */
+	static boolean resetsWindow(String token, StopWords stopWords) {
+		return token.length() == 1 || stopWords.contains(token);
+	}
+
+	/**
+	 * Open addressing hash set of stop words, looked up ignoring case. Words
+	 * are hashed by their case folded characters, the same way String's
+	 * equalsIgnoreCase compares them, so a token is looked up as it is.
+	 */
+	static final class StopWords {
+		private final String[] table;
+
+		StopWords(Set<String> words) {
+			int capacity = Integer.highestOneBit(Math.max(words.size() * 2, 1)) * 2;
+			table = new String[capacity];
+			for (String word : words) {
+				if (!contains(word)) {
+					table[slot(word)] = word;
+				}
+			}
+		}
+
+		boolean contains(CharSequence word) {
+			return table[slot(word)] != null;
+		}
+
+		/**
+		 * @return slot holding the word, or the empty slot it belongs to.
+		 */
+		private int slot(CharSequence word) {
+			int mask = table.length - 1;
+			int slot = hash(word) & mask;
+			while (table[slot] != null && !equalsIgnoreCase(table[slot], word)) {
+				slot = (slot + 1) & mask;
+			}
+			return slot;
+		}
+
+		private static int hash(CharSequence word) {
+			int hash = 0;
+			for (int i = 0; i < word.length(); i++) {
+				hash = 31 * hash + fold(word.charAt(i));
+			}
+			return hash ^ (hash >>> 16);
+		}
+
+		private static boolean equalsIgnoreCase(String stopWord, CharSequence word) {
+			if (stopWord.length() != word.length()) {
+				return false;
+			}
+			for (int i = 0; i < word.length(); i++) {
+				if (fold(stopWord.charAt(i)) != fold(word.charAt(i))) {
+					return false;
+				}
+			}
 			return true;
 		}
-		return false;
+
+		private static char fold(char c) {
+			return Character.toLowerCase(Character.toUpperCase(c));
+		}
 	}
 }
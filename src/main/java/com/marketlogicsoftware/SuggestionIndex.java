@@ -0,0 +1,457 @@
+package com.marketlogicsoftware;
+
+import com.google.common.primitives.UnsignedBytes;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Immutable autocomplete index of suggestions, answering the most frequent completions of a prefix.
+ *
+ * Suggestions are sorted by their UTF-8 bytes, so those starting with a prefix form one range. Texts are front
+ * coded in blocks of BLOCK_SIZE: the first text of a block is stored whole, others as the length of the prefix they
+ * share with the previous text and the rest. A binary search over the whole first texts and a scan of one block
+ * find either end of a range. Counts are kept in a segment tree holding the index of the most frequent suggestion of
+ * every node, so the k most frequent of a range are picked one by one, splitting the range around each.
+ *
+ * Everything lives in a single ByteBuffer, which is written to a file as is and mapped back by map(Path). A lookup
+ * costs O(|prefix| log n + k log n). It allocates the encoded prefix, a buffer of the longest text, three int arrays
+ * of 2 * min(k, matches) + 1 entries for the heap of ranges, and the results. Thread safe.
+ */
+public final class SuggestionIndex {
+
+  static final int BLOCK_SIZE = 16;
+  private static final int MAGIC = 0x53474931;
+  private static final int HEADER_SIZE = 7 * Integer.BYTES;
+  private static final Comparator<byte[]> UTF8_ORDER = UnsignedBytes.lexicographicalComparator();
+
+  private final ByteBuffer buffer;
+  private final int size;
+  private final int maxLength;
+  private final int leaves;
+  private final int countsOffset;
+  private final int blocksOffset;
+  private final int treeOffset;
+  private final int textsOffset;
+
+  private SuggestionIndex(ByteBuffer buffer) {
+    this.buffer = buffer;
+    if (buffer.getInt(0) != MAGIC) {
+      throw new IllegalArgumentException("Not a suggestion index");
+    }
+    this.size = buffer.getInt(4);
+    this.maxLength = buffer.getInt(8);
+    this.leaves = buffer.getInt(12);
+    this.blocksOffset = buffer.getInt(16);
+    this.treeOffset = buffer.getInt(20);
+    this.textsOffset = buffer.getInt(24);
+    this.countsOffset = HEADER_SIZE;
+  }
+
+  /**
+   * Builds an index of the given suggestions. Counts of equal texts are added up.
+   *
+   * @throws IllegalArgumentException if a count is negative.
+   */
+  public static SuggestionIndex build(Collection<RankedSuggestion> suggestions) {
+    List<Entry> entries = new ArrayList<>(suggestions.size());
+    for (RankedSuggestion suggestion : suggestions) {
+      if (suggestion.getCount() < 0) {
+        throw new IllegalArgumentException("Negative count: " + suggestion);
+      }
+      entries.add(new Entry(suggestion.getText().getBytes(StandardCharsets.UTF_8), suggestion.getCount()));
+    }
+    entries.sort((a, b) -> UTF8_ORDER.compare(a.text, b.text));
+    int unique = 0;
+    for (Entry entry : entries) {
+      if (unique > 0 && Arrays.equals(entries.get(unique - 1).text, entry.text)) {
+        entries.get(unique - 1).count += entry.count;
+      } else {
+        entries.set(unique++, entry);
+      }
+    }
+    return new SuggestionIndex(encode(entries.subList(0, unique)));
+  }
+
+  /**
+   * Builds an index of the output of SuggestionBuilderTest.buildSuggestionsFromTokenStream, every suggestion
+   * counted once.
+   */
+  static SuggestionIndex fromSuggestions(Set<SuggestionBuilderTest.Suggestion> suggestions) {
+    List<RankedSuggestion> ranked = new ArrayList<>(suggestions.size());
+    suggestions.forEach(suggestion -> ranked.add(new RankedSuggestion(suggestion.toString(), 1)));
+    return build(ranked);
+  }
+
+  /**
+   * Maps an index written by writeTo. The file must not change while the index is used.
+   */
+  public static SuggestionIndex map(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      return new SuggestionIndex(channel.map(MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  public void writeTo(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer contents = buffer.duplicate();
+      contents.clear();
+      while (contents.hasRemaining()) {
+        channel.write(contents);
+      }
+      channel.force(true);
+    }
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return at most k suggestions starting with prefix, most frequent first and equal counts in UTF-8 order.
+   * @throws IllegalArgumentException if k is negative.
+   */
+  public List<RankedSuggestion> complete(String prefix, int k) {
+    if (k < 0) {
+      throw new IllegalArgumentException("k must not be negative: " + k);
+    }
+    byte[] key = prefix.getBytes(StandardCharsets.UTF_8);
+    byte[] scratch = new byte[maxLength];
+    int from = firstNotBefore(key, scratch, false);
+    int to = firstNotBefore(key, scratch, true);
+    List<RankedSuggestion> results = new ArrayList<>(Math.min(k, to - from));
+    if (from >= to || k == 0) {
+      return results;
+    }
+    // Binary heap of ranges [starts[i], ends[i]) by count of their most frequent suggestion maxima[i].
+    int[] starts = new int[2 * Math.min(k, to - from) + 1];
+    int[] ends = new int[starts.length];
+    int[] maxima = new int[starts.length];
+    int heapSize = push(starts, ends, maxima, 0, from, to);
+    while (heapSize > 0 && results.size() < k) {
+      int start = starts[0];
+      int end = ends[0];
+      int max = maxima[0];
+      heapSize = pop(starts, ends, maxima, heapSize);
+      results.add(new RankedSuggestion(text(max, scratch), count(max)));
+      heapSize = push(starts, ends, maxima, heapSize, start, max);
+      heapSize = push(starts, ends, maxima, heapSize, max + 1, end);
+    }
+    return results;
+  }
+
+  /**
+   * @return index of the first text whose first |key| bytes are not before key, or after key if after is set.
+   */
+  private int firstNotBefore(byte[] key, byte[] scratch, boolean after) {
+    int blockCount = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    int low = 0;
+    int high = blockCount - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      int offset = blockOffset(middle);
+      int length = readVarint(offset);
+      if (isBefore(comparePrefix(offset + varintSize(length), length, key), after)) {
+        low = middle + 1;
+      } else {
+        high = middle - 1;
+      }
+    }
+    // Block high starts before key, so the first text not before key is in it or starts the next block.
+    if (high < 0) {
+      return 0;
+    }
+    int index = high * BLOCK_SIZE;
+    int end = Math.min(index + BLOCK_SIZE, size);
+    int position = blockOffset(high);
+    for (; index < end; index++) {
+      int shared = 0;
+      if (index % BLOCK_SIZE != 0) {
+        shared = readVarint(position);
+        position += varintSize(shared);
+      }
+      int suffix = readVarint(position);
+      position += varintSize(suffix);
+      for (int i = 0; i < suffix; i++) {
+        scratch[shared + i] = buffer.get(position + i);
+      }
+      position += suffix;
+      if (!isBefore(compareScratch(scratch, shared + suffix, key), after)) {
+        return index;
+      }
+    }
+    return end;
+  }
+
+  private static boolean isBefore(int comparison, boolean after) {
+    return after ? comparison <= 0 : comparison < 0;
+  }
+
+  /**
+   * Compares the first |key| bytes of the text at offset with key.
+   */
+  private int comparePrefix(int offset, int length, byte[] key) {
+    int common = Math.min(length, key.length);
+    for (int i = 0; i < common; i++) {
+      int comparison = UnsignedBytes.compare(buffer.get(offset + i), key[i]);
+      if (comparison != 0) {
+        return comparison;
+      }
+    }
+    return length < key.length ? -1 : 0;
+  }
+
+  private static int compareScratch(byte[] scratch, int length, byte[] key) {
+    int common = Math.min(length, key.length);
+    for (int i = 0; i < common; i++) {
+      int comparison = UnsignedBytes.compare(scratch[i], key[i]);
+      if (comparison != 0) {
+        return comparison;
+      }
+    }
+    return length < key.length ? -1 : 0;
+  }
+
+  /**
+   * Decodes the text at index, using scratch for its bytes.
+   */
+  private String text(int index, byte[] scratch) {
+    int block = index / BLOCK_SIZE;
+    int position = blockOffset(block);
+    int length = 0;
+    for (int i = block * BLOCK_SIZE; i <= index; i++) {
+      int shared = 0;
+      if (i % BLOCK_SIZE != 0) {
+        shared = readVarint(position);
+        position += varintSize(shared);
+      }
+      int suffix = readVarint(position);
+      position += varintSize(suffix);
+      for (int j = 0; j < suffix; j++) {
+        scratch[shared + j] = buffer.get(position + j);
+      }
+      position += suffix;
+      length = shared + suffix;
+    }
+    return new String(scratch, 0, length, StandardCharsets.UTF_8);
+  }
+
+  private long count(int index) {
+    return buffer.getLong(countsOffset + index * Long.BYTES);
+  }
+
+  private int blockOffset(int block) {
+    return textsOffset + buffer.getInt(blocksOffset + block * Integer.BYTES);
+  }
+
+  /**
+   * @return index of the most frequent suggestion in [from, to), the first one of equal counts.
+   */
+  private int maxIndex(int from, int to) {
+    int best = -1;
+    for (int low = from + leaves, high = to + leaves; low < high; low >>>= 1, high >>>= 1) {
+      if ((low & 1) == 1) {
+        best = better(best, node(low++));
+      }
+      if ((high & 1) == 1) {
+        best = better(best, node(--high));
+      }
+    }
+    return best;
+  }
+
+  private int node(int node) {
+    return buffer.getInt(treeOffset + node * Integer.BYTES);
+  }
+
+  private int better(int a, int b) {
+    return better(a, b, this::count);
+  }
+
+  private static int better(int a, int b, IndexCounts counts) {
+    if (a < 0) {
+      return b;
+    }
+    if (b < 0) {
+      return a;
+    }
+    long countA = counts.count(a);
+    long countB = counts.count(b);
+    return countA > countB || (countA == countB && a < b) ? a : b;
+  }
+
+  private int push(int[] starts, int[] ends, int[] maxima, int heapSize, int start, int end) {
+    if (start >= end) {
+      return heapSize;
+    }
+    int max = maxIndex(start, end);
+    int i = heapSize;
+    while (i > 0) {
+      int parent = (i - 1) / 2;
+      if (better(maxima[parent], max) == maxima[parent]) {
+        break;
+      }
+      starts[i] = starts[parent];
+      ends[i] = ends[parent];
+      maxima[i] = maxima[parent];
+      i = parent;
+    }
+    starts[i] = start;
+    ends[i] = end;
+    maxima[i] = max;
+    return heapSize + 1;
+  }
+
+  private int pop(int[] starts, int[] ends, int[] maxima, int heapSize) {
+    heapSize--;
+    int start = starts[heapSize];
+    int end = ends[heapSize];
+    int max = maxima[heapSize];
+    int i = 0;
+    while (2 * i + 1 < heapSize) {
+      int child = 2 * i + 1;
+      if (child + 1 < heapSize && better(maxima[child + 1], maxima[child]) == maxima[child + 1]) {
+        child++;
+      }
+      if (better(max, maxima[child]) == max) {
+        break;
+      }
+      starts[i] = starts[child];
+      ends[i] = ends[child];
+      maxima[i] = maxima[child];
+      i = child;
+    }
+    starts[i] = start;
+    ends[i] = end;
+    maxima[i] = max;
+    return heapSize;
+  }
+
+  private int readVarint(int position) {
+    int value = 0;
+    for (int shift = 0; ; shift += 7) {
+      byte b = buffer.get(position++);
+      value |= (b & 0x7f) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+  }
+
+  private static int varintSize(int value) {
+    int size = 1;
+    while ((value >>>= 7) != 0) {
+      size++;
+    }
+    return size;
+  }
+
+  private static void putVarint(ByteBuffer buffer, int value) {
+    while ((value & ~0x7f) != 0) {
+      buffer.put((byte) ((value & 0x7f) | 0x80));
+      value >>>= 7;
+    }
+    buffer.put((byte) value);
+  }
+
+  /**
+   * Lays out header, counts, block offsets, segment tree and front coded texts of sorted unique entries.
+   */
+  private static ByteBuffer encode(List<Entry> entries) {
+    int size = entries.size();
+    int blockCount = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    int leaves = Integer.highestOneBit(Math.max(size, 1) * 2 - 1);
+    int maxLength = 0;
+    long textsSize = 0;
+    for (int i = 0; i < size; i++) {
+      byte[] text = entries.get(i).text;
+      int shared = i % BLOCK_SIZE == 0 ? 0 : sharedPrefix(entries.get(i - 1).text, text);
+      textsSize += (i % BLOCK_SIZE == 0 ? 0 : varintSize(shared)) + varintSize(text.length - shared)
+          + text.length - shared;
+      maxLength = Math.max(maxLength, text.length);
+    }
+    long blocksOffset = HEADER_SIZE + (long) size * Long.BYTES;
+    long treeOffset = blocksOffset + (long) blockCount * Integer.BYTES;
+    long textsOffset = treeOffset + 2L * leaves * Integer.BYTES;
+    if (textsOffset + textsSize > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Too many suggestions for one index: " + size);
+    }
+    ByteBuffer buffer = ByteBuffer.allocate((int) (textsOffset + textsSize));
+    buffer.putInt(MAGIC).putInt(size).putInt(maxLength).putInt(leaves)
+        .putInt((int) blocksOffset).putInt((int) treeOffset).putInt((int) textsOffset);
+    for (Entry entry : entries) {
+      buffer.putLong(entry.count);
+    }
+
+    int[] tree = new int[2 * leaves];
+    Arrays.fill(tree, -1);
+    for (int i = 0; i < size; i++) {
+      tree[leaves + i] = i;
+    }
+    IndexCounts counts = index -> entries.get(index).count;
+    for (int node = leaves - 1; node > 0; node--) {
+      tree[node] = better(tree[2 * node], tree[2 * node + 1], counts);
+    }
+
+    buffer.position((int) textsOffset);
+    int[] blockOffsets = new int[blockCount];
+    for (int i = 0; i < size; i++) {
+      byte[] text = entries.get(i).text;
+      int shared = 0;
+      if (i % BLOCK_SIZE == 0) {
+        blockOffsets[i / BLOCK_SIZE] = (int) (buffer.position() - textsOffset);
+      } else {
+        shared = sharedPrefix(entries.get(i - 1).text, text);
+        putVarint(buffer, shared);
+      }
+      putVarint(buffer, text.length - shared);
+      buffer.put(text, shared, text.length - shared);
+    }
+    buffer.position((int) blocksOffset);
+    for (int offset : blockOffsets) {
+      buffer.putInt(offset);
+    }
+    for (int node : tree) {
+      buffer.putInt(node);
+    }
+    buffer.clear();
+    return buffer;
+  }
+
+  private static int sharedPrefix(byte[] a, byte[] b) {
+    int length = Math.min(a.length, b.length);
+    int shared = 0;
+    while (shared < length && a[shared] == b[shared]) {
+      shared++;
+    }
+    return shared;
+  }
+
+  @FunctionalInterface
+  private interface IndexCounts {
+
+    long count(int index);
+  }
+
+  private static final class Entry {
+
+    private final byte[] text;
+    private long count;
+
+    Entry(byte[] text, long count) {
+      this.text = text;
+      this.count = count;
+    }
+  }
+}
@@ -0,0 +1,226 @@
+package com.marketlogicsoftware;
+
+import com.marketlogicsoftware.SuggestionBuilderTest.StopWords;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Mines suggestions of SuggestionBuilderTest from a corpus of documents and ranks them by number of occurrences.
+ *
+ * Documents are seen as one sequence of tokens, cut by a fork-join task tree into ranges of about LEAF_SIZE tokens.
+ * Ranges are only cut where the suggestion window resets: at a document start, a single character token like a
+ * punctuation mark, or a stop word. So every range counts its suggestions on its own, into a map of its thread.
+ * Counts of two ranges are merged when their tasks are joined, the larger map absorbing the smaller one. Nothing is
+ * shared between threads while counting.
+ *
+ * With a phrase limit m, counts are Misra-Gries summaries: when a map holds 2m phrases, the (m+1)th largest count is
+ * subtracted from all counts and phrases dropping to zero are removed. Merging two summaries and pruning again keeps
+ * that property, so at most 2m phrases are held per task and a count is off by at most n / (m + 1) for n
+ * occurrences of all phrases. Any phrase occurring more often than that is kept, so top k is exact for phrases
+ * frequent enough; counts are lower bounds.
+ */
+public class SuggestionMiner {
+
+  static final int LEAF_SIZE = 16 * 1024;
+
+  private final StopWords stopWords;
+  private final ForkJoinPool pool;
+  private final int phraseLimit;
+
+  public SuggestionMiner(Set<String> stopWords) {
+    this(stopWords, ForkJoinPool.commonPool(), 0);
+  }
+
+  /**
+   * @param phraseLimit number of phrases a task keeps counts for, 0 for no limit.
+   */
+  public SuggestionMiner(Set<String> stopWords, ForkJoinPool pool, int phraseLimit) {
+    if (phraseLimit < 0) {
+      throw new IllegalArgumentException("Phrase limit must not be negative: " + phraseLimit);
+    }
+    this.stopWords = new StopWords(stopWords);
+    this.pool = pool;
+    this.phraseLimit = phraseLimit;
+  }
+
+  /**
+   * @param documents token lists with fast random access, see SuggestionBuilderTest.buildSuggestionsFromTokenStream.
+   * @return at most k most frequent suggestions, most frequent first and equal counts in alphabetical order.
+   */
+  public List<RankedSuggestion> top(List<? extends List<String>> documents, int k) {
+    if (k <= 0) {
+      throw new IllegalArgumentException("k must be positive: " + k);
+    }
+    long[] documentStarts = new long[documents.size() + 1];
+    for (int i = 0; i < documents.size(); i++) {
+      documentStarts[i + 1] = documentStarts[i] + documents.get(i).size();
+    }
+    Map<String, Count> counts = pool.invoke(new CountTask(documents, documentStarts, 0,
+        documentStarts[documents.size()]));
+    return top(counts, k);
+  }
+
+  /**
+   * Selects top k with a min-heap of k entries, the least ranked on top.
+   */
+  private static List<RankedSuggestion> top(Map<String, Count> counts, int k) {
+    PriorityQueue<RankedSuggestion> heap = new PriorityQueue<>(Math.max(1, Math.min(k, counts.size())),
+        RankedSuggestion.BY_RANK.reversed());
+    for (Entry<String, Count> entry : counts.entrySet()) {
+      long count = entry.getValue().value;
+      RankedSuggestion least = heap.peek();
+      if (heap.size() < k) {
+        heap.add(new RankedSuggestion(entry.getKey(), count));
+      } else if (count > least.getCount()
+          || (count == least.getCount() && entry.getKey().compareTo(least.getText()) < 0)) {
+        heap.poll();
+        heap.add(new RankedSuggestion(entry.getKey(), count));
+      }
+    }
+    List<RankedSuggestion> top = new ArrayList<>(heap);
+    top.sort(RankedSuggestion.BY_RANK);
+    return top;
+  }
+
+  /**
+   * Mutable count, so counting does not box.
+   */
+  private static final class Count {
+
+    private long value;
+
+    Count(long value) {
+      this.value = value;
+    }
+  }
+
+  /**
+   * Counts suggestions of the tokens from start until end, positions in the sequence of all documents.
+   */
+  private final class CountTask extends RecursiveTask<Map<String, Count>> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<? extends List<String>> documents;
+    private final long[] documentStarts;
+    private final long start;
+    private final long end;
+
+    CountTask(List<? extends List<String>> documents, long[] documentStarts, long start, long end) {
+      this.documents = documents;
+      this.documentStarts = documentStarts;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    protected Map<String, Count> compute() {
+      long split = end - start > LEAF_SIZE ? splitPoint(start + (end - start) / 2) : end;
+      if (split >= end) {
+        return count();
+      }
+      CountTask left = new CountTask(documents, documentStarts, start, split);
+      CountTask right = new CountTask(documents, documentStarts, split, end);
+      left.fork();
+      Map<String, Count> rightCounts = right.compute();
+      return merge(left.join(), rightCounts);
+    }
+
+    /**
+     * @return first position at or after position where the window resets, end if there is none.
+     */
+    private long splitPoint(long position) {
+      int document = documentAt(position);
+      long documentEnd = Math.min(documentStarts[document + 1], end);
+      List<String> tokens = documents.get(document);
+      for (long p = position; p < documentEnd; p++) {
+        if (SuggestionBuilderTest.resetsWindow(tokens.get((int) (p - documentStarts[document])), stopWords)) {
+          return p;
+        }
+      }
+      return documentEnd;
+    }
+
+    /**
+     * @return index of the last document starting at or before position.
+     */
+    private int documentAt(long position) {
+      int index = Arrays.binarySearch(documentStarts, position);
+      if (index < 0) {
+        return -index - 2;
+      }
+      while (index + 1 < documentStarts.length - 1 && documentStarts[index + 1] == position) {
+        index++;
+      }
+      return index;
+    }
+
+    private Map<String, Count> count() {
+      Map<String, Count> counts = new HashMap<>();
+      for (int document = documentAt(start); document < documents.size() && documentStarts[document] < end;
+          document++) {
+        int from = (int) (Math.max(start, documentStarts[document]) - documentStarts[document]);
+        int to = (int) (Math.min(end, documentStarts[document + 1]) - documentStarts[document]);
+        Iterator<String> tokens = documents.get(document).subList(from, to).iterator();
+        SuggestionBuilderTest.forEachSuggestion(tokens, stopWords, text -> {
+          Count count = counts.get(text);
+          if (count == null) {
+            counts.put(text, new Count(1));
+            prune(counts);
+          } else {
+            count.value++;
+          }
+        });
+      }
+      return counts;
+    }
+  }
+
+  private Map<String, Count> merge(Map<String, Count> left, Map<String, Count> right) {
+    Map<String, Count> large = left.size() >= right.size() ? left : right;
+    Map<String, Count> small = large == left ? right : left;
+    for (Entry<String, Count> entry : small.entrySet()) {
+      Count count = large.get(entry.getKey());
+      if (count == null) {
+        large.put(entry.getKey(), entry.getValue());
+      } else {
+        count.value += entry.getValue().value;
+      }
+    }
+    prune(large);
+    return large;
+  }
+
+  /**
+   * Brings a map of 2 * phraseLimit phrases or more down to at most phraseLimit, see class comment.
+   */
+  private void prune(Map<String, Count> counts) {
+    if (phraseLimit == 0 || counts.size() < 2 * phraseLimit) {
+      return;
+    }
+    long[] values = new long[counts.size()];
+    int i = 0;
+    for (Count count : counts.values()) {
+      values[i++] = count.value;
+    }
+    Arrays.sort(values);
+    long subtracted = values[values.length - phraseLimit - 1];
+    Iterator<Count> iterator = counts.values().iterator();
+    while (iterator.hasNext()) {
+      Count count = iterator.next();
+      count.value -= subtracted;
+      if (count.value <= 0) {
+        iterator.remove();
+      }
+    }
+  }
+}
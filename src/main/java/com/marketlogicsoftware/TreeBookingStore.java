@@ -0,0 +1,92 @@
+package com.marketlogicsoftware;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.TreeMultimap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+
+/**
+ * BookingStore on a Guava TreeMultimap, which maps days to sets of bookings. Keeps the Booking objects it is given.
+ *
+ * Bookings of every employee are kept in a TreeSet as well, sharing the objects.
+ */
+public class TreeBookingStore implements BookingStore {
+
+  private final TreeMultimap<LocalDate, Booking> bookings = TreeMultimap.create();
+  private final Map<String, NavigableSet<Booking>> bookingsByEmployee = new HashMap<>();
+
+  @Override
+  public boolean add(Booking booking) {
+    if (!bookings.put(booking.getStartTime().toLocalDate(), booking)) {
+      return false;
+    }
+    bookingsByEmployee.computeIfAbsent(booking.getBookedBy(), employee -> new TreeSet<>()).add(booking);
+    return true;
+  }
+
+  @Override
+  public boolean remove(Booking booking) {
+    if (!bookings.remove(booking.getStartTime().toLocalDate(), booking)) {
+      return false;
+    }
+    NavigableSet<Booking> employeeBookings = bookingsByEmployee.get(booking.getBookedBy());
+    employeeBookings.remove(booking);
+    if (employeeBookings.isEmpty()) {
+      bookingsByEmployee.remove(booking.getBookedBy());
+    }
+    return true;
+  }
+
+  @Override
+  public int size() {
+    return bookings.size();
+  }
+
+  @Override
+  public Collection<Booking> values() {
+    return bookings.values();
+  }
+
+  @Override
+  public NavigableMap<LocalDate, Collection<Booking>> grouped() {
+    return bookings.asMap();
+  }
+
+  @Override
+  public Collection<Booking> startingBetween(DateTime from, DateTime to) {
+    BookingViews.checkRange(from, to);
+    NavigableMap<LocalDate, Collection<Booking>> days = BookingViews.daysBetween(bookings.asMap(), from, to);
+    return BookingViews.lazy(() -> Iterables.concat(Iterables.transform(days.values(),
+        day -> startingBetween((NavigableSet<Booking>) day, from, to))).iterator());
+  }
+
+  /**
+   * Employee sets are sorted naturally, not by date first. Their order differs from values() only for bookings
+   * made in different time zones.
+   */
+  @Override
+  public Collection<Booking> byEmployee(String employee, DateTime from, DateTime to) {
+    BookingViews.checkRange(from, to);
+    return BookingViews.lazy(() -> startingBetween(
+        bookingsByEmployee.getOrDefault(employee, Collections.emptyNavigableSet()), from, to).iterator());
+  }
+
+  private static NavigableSet<Booking> startingBetween(NavigableSet<Booking> bookings, DateTime from, DateTime to) {
+    return bookings.subSet(probe(from), true, probe(to), false);
+  }
+
+  /**
+   * @return an empty booking at time. It sorts after bookings starting before time and before other bookings, as
+   *     long as those are not empty.
+   */
+  private static Booking probe(DateTime time) {
+    return new Booking(time, "", time, time);
+  }
+}
@@ -0,0 +1,18 @@
+package com.marketlogicsoftware;
+
+import org.joda.time.Interval;
+import org.joda.time.LocalDate;
+
+/**
+ * A BookingRule which only allows bookings inside one time window per day. Lets Scheduler search free slots
+ * within the windows instead of trying bookings one by one.
+ */
+public interface WindowedBookingRule extends BookingRule {
+
+  /**
+   * A booking starting on the given date matches the rule if and only if it lies within the returned interval.
+   *
+   * @return the window of the date, null if no booking may start on it.
+   */
+  Interval window(LocalDate date);
+}
@@ -0,0 +1,218 @@
+package com.marketlogicsoftware;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import com.marketlogicsoftware.AvailabilityIndex.IntervalCursor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class AvailabilityIndexTest {
+
+  @Test
+  public void shouldAllowAdjacentIntervals() {
+    AvailabilityIndex index = new BlockedAvailabilityIndex();
+    index.remove(10, 20);
+
+    assertEquals(true, index.encloses(0, 10));
+    assertEquals(true, index.encloses(20, 30));
+    assertEquals(false, index.encloses(19, 21));
+    assertEquals(false, index.encloses(0, 30));
+    assertEquals(false, index.encloses(12, 13));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldThrowIAEOnEmptyInterval() {
+    new BlockedAvailabilityIndex().encloses(10, 10);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldThrowIAEOnRemovingBookedInterval() {
+    AvailabilityIndex index = new BlockedAvailabilityIndex();
+    index.remove(10, 20);
+    index.remove(15, 25);
+  }
+
+  @Test
+  public void shouldMatchRangeSetOnRandomOperations() {
+    Random random = new Random(7);
+    for (int round = 0; round < 20; round++) {
+      AvailabilityIndex expected = new RangeSetAvailabilityIndex();
+      AvailabilityIndex actual = new BlockedAvailabilityIndex();
+      int span = 1000 + random.nextInt(100_000);
+      for (int i = 0; i < 5000; i++) {
+        long start = random.nextInt(span) - span / 2;
+        long end = start + random.nextInt(20) - 1;
+        boolean encloses;
+        try {
+          encloses = expected.encloses(start, end);
+        } catch (IllegalArgumentException e) {
+          assertThrowsIAE(actual, start, end);
+          continue;
+        }
+        assertEquals(String.format("(%d, %d)", start, end), encloses, actual.encloses(start, end));
+        if (encloses) {
+          expected.remove(start, end);
+          actual.remove(start, end);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void shouldMatchRangeSetOnAppends() {
+    AvailabilityIndex expected = new RangeSetAvailabilityIndex();
+    AvailabilityIndex actual = new BlockedAvailabilityIndex();
+    for (long start = 0; start < 10 * BlockedAvailabilityIndex.BLOCK_SIZE; start += 2) {
+      expected.remove(start, start + 2);
+      actual.remove(start, start + 2);
+    }
+    for (long start = -1; start < 10 * BlockedAvailabilityIndex.BLOCK_SIZE + 2; start++) {
+      assertEquals(expected.encloses(start, start + 1), actual.encloses(start, start + 1));
+      assertEquals(expected.encloses(start, start + 2), actual.encloses(start, start + 2));
+    }
+  }
+
+  @Test
+  public void shouldIterateSameIntervalsAsRangeSet() {
+    Random random = new Random(11);
+    AvailabilityIndex expected = new RangeSetAvailabilityIndex();
+    AvailabilityIndex actual = new BlockedAvailabilityIndex();
+    for (int i = 0; i < 3000; i++) {
+      long start = random.nextInt(50_000);
+      long end = start + 1 + random.nextInt(20);
+      if (expected.encloses(start, end)) {
+        expected.remove(start, end);
+        actual.remove(start, end);
+      }
+    }
+    for (long from = -10; from < 50_100; from += 1 + random.nextInt(500)) {
+      IntervalCursor expectedCursor = expected.bookedAfter(from);
+      IntervalCursor actualCursor = actual.bookedAfter(from);
+      boolean hasNext;
+      do {
+        hasNext = expectedCursor.next();
+        assertEquals(hasNext, actualCursor.next());
+        if (hasNext) {
+          assertEquals(expectedCursor.start(), actualCursor.start());
+          assertEquals(expectedCursor.end(), actualCursor.end());
+        }
+      } while (hasNext);
+    }
+  }
+
+  @Test
+  public void shouldMatchRangeSetAfterBulkRemove() {
+    Random random = new Random(5);
+    for (int batchSize : new int[]{10, 5000}) {
+      AvailabilityIndex expected = new RangeSetAvailabilityIndex();
+      AvailabilityIndex actual = new BlockedAvailabilityIndex();
+      BlockedAvailabilityIndex batch = new BlockedAvailabilityIndex();
+      for (int i = 0; i < 5000 + batchSize; i++) {
+        long start = random.nextInt(1_000_000);
+        long end = start + 1 + random.nextInt(100);
+        if (expected.encloses(start, end) && batch.encloses(start, end)) {
+          expected.remove(start, end);
+          if (i < 5000) {
+            actual.remove(start, end);
+          } else {
+            batch.remove(start, end);
+          }
+        }
+      }
+
+      actual.removeAll(batch.bookedAfter(Long.MIN_VALUE));
+
+      for (int i = 0; i < 20_000; i++) {
+        long start = random.nextInt(1_000_000);
+        long end = start + 1 + random.nextInt(100);
+        assertEquals(expected.encloses(start, end), actual.encloses(start, end));
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldThrowIAEOnBulkRemovingBookedInterval() {
+    AvailabilityIndex index = new BlockedAvailabilityIndex();
+    index.remove(10, 20);
+    BlockedAvailabilityIndex batch = new BlockedAvailabilityIndex();
+    batch.remove(0, 5);
+    batch.remove(15, 25);
+
+    index.removeAll(batch.bookedAfter(Long.MIN_VALUE));
+  }
+
+  private static void assertThrowsIAE(AvailabilityIndex index, long start, long end) {
+    try {
+      index.encloses(start, end);
+      fail("Expected IllegalArgumentException for " + start + ", " + end);
+    } catch (IllegalArgumentException expected) {
+      // expected
+    }
+  }
+
+  @Test
+  public void shouldJoinFreeGapsOnRelease() {
+    for (AvailabilityIndex index : new AvailabilityIndex[]{new BlockedAvailabilityIndex(),
+        new RangeSetAvailabilityIndex()}) {
+      index.remove(0, 10);
+      index.remove(10, 20);
+      index.remove(20, 30);
+
+      index.release(10, 20);
+      assertEquals(true, index.encloses(10, 20));
+      assertEquals(false, index.encloses(9, 20));
+      index.release(0, 10);
+      assertEquals(true, index.encloses(-5, 20));
+      assertEquals(false, index.encloses(-5, 21));
+    }
+  }
+
+  @Test
+  public void shouldThrowIAEOnReleasingUnbookedInterval() {
+    for (AvailabilityIndex index : new AvailabilityIndex[]{new BlockedAvailabilityIndex(),
+        new RangeSetAvailabilityIndex()}) {
+      index.remove(10, 20);
+      for (long[] interval : new long[][]{{10, 15}, {5, 20}, {20, 30}, {10, 21}}) {
+        try {
+          index.release(interval[0], interval[1]);
+          fail("Expected IllegalArgumentException for " + interval[0] + ", " + interval[1]);
+        } catch (IllegalArgumentException expected) {
+          // expected
+        }
+      }
+    }
+  }
+
+  @Test
+  public void shouldMatchRangeSetOnRandomReleases() {
+    Random random = new Random(13);
+    AvailabilityIndex expected = new RangeSetAvailabilityIndex();
+    AvailabilityIndex actual = new BlockedAvailabilityIndex();
+    List<long[]> booked = new ArrayList<>();
+    for (int i = 0; i < 20_000; i++) {
+      if (random.nextInt(3) == 0 && !booked.isEmpty()) {
+        long[] interval = booked.remove(random.nextInt(booked.size()));
+        expected.release(interval[0], interval[1]);
+        actual.release(interval[0], interval[1]);
+      } else {
+        long start = random.nextInt(100_000);
+        long end = start + 1 + random.nextInt(50);
+        assertEquals(expected.encloses(start, end), actual.encloses(start, end));
+        if (expected.encloses(start, end)) {
+          expected.remove(start, end);
+          actual.remove(start, end);
+          booked.add(new long[]{start, end});
+        }
+      }
+    }
+    while (!booked.isEmpty()) {
+      long[] interval = booked.remove(booked.size() - 1);
+      actual.release(interval[0], interval[1]);
+    }
+    assertEquals(false, actual.bookedAfter(Long.MIN_VALUE).next());
+    actual.remove(0, 100_000);
+  }
+}
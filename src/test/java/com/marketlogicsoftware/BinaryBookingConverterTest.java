@@ -0,0 +1,58 @@
+package com.marketlogicsoftware;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import org.joda.time.DateTime;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BinaryBookingConverterTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void shouldConvertTextToBinaryAndBack() throws Exception {
+    String input = "0900 1730; SUN closed\n"
+        + "2015-08-17 10:17:06 EMP001\n"
+        + "2015-08-21 09:00 2\n"
+        + "2015-08-16 12:34:56 EMP002\n"
+        + "2015-08-21 09:00 2 ROOM1\n"
+        + "2015-08-16 09:28:23 EMP003\n"
+        + "2015-08-22 14:00 12\n";
+    Path file = folder.newFile().toPath();
+
+    long count;
+    try (FileChannel out = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      count = BinaryBookingConverter.toBinary(new BufferedReader(new StringReader(input + "2015-08-01 00:00:00 X")),
+          out, 2, false);
+    }
+    StringWriter text = new StringWriter();
+    BinaryBookingConverter.toText(file, text);
+
+    assertEquals(3, count);
+    assertEquals(input, text.toString());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldThrowIAEOnDurationOfMinutes() throws Exception {
+    Booking booking = new Booking(new DateTime(2015, 8, 17, 10, 17, 6), "EMP001",
+        new DateTime(2015, 8, 21, 9, 0), new DateTime(2015, 8, 21, 9, 30));
+    Path file = folder.newFile().toPath();
+    try (FileChannel out = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      BinaryBookingWriter writer = new BinaryBookingWriter(out, "0900 1730", 16, false);
+      writer.writeAll(Collections.singletonList(booking));
+      writer.finish();
+    }
+
+    BinaryBookingConverter.toText(file, new StringWriter());
+  }
+}
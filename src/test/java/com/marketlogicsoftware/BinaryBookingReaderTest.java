@@ -0,0 +1,215 @@
+package com.marketlogicsoftware;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import org.joda.time.DateTime;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BinaryBookingReaderTest {
+
+  private static final String HEADER = "0800 1800";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void shouldReadBackWrittenBookings() throws Exception {
+    List<Booking> bookings = randomBookings(1000);
+    for (int blockSize : new int[]{1, 7, 256, 5000}) {
+      for (boolean compress : new boolean[]{false, true}) {
+        Path file = write(bookings, blockSize, compress);
+
+        try (BinaryBookingReader reader = BinaryBookingReader.open(file)) {
+          assertEquals(HEADER, reader.getHeader());
+          assertEquals(bookings.size(), reader.size());
+          assertEquals((bookings.size() + blockSize - 1) / blockSize, reader.getBlocks().size());
+          assertEquals(bookings, reader.readAll());
+        }
+      }
+    }
+  }
+
+  @Test
+  public void shouldReadEmptyFile() throws Exception {
+    Path file = write(new ArrayList<>(), 16, true);
+
+    try (BinaryBookingReader reader = BinaryBookingReader.open(file)) {
+      assertEquals(0, reader.size());
+      assertTrue(reader.getBlocks().isEmpty());
+      assertTrue(reader.readAll().isEmpty());
+    }
+  }
+
+  @Test
+  public void shouldViewStoredBlocksInPlace() throws Exception {
+    Path file = write(randomBookings(100), 10, false);
+
+    try (BinaryBookingReader reader = BinaryBookingReader.open(file)) {
+      BinaryBookingReader.Block block = reader.getBlocks().get(3);
+      ByteBuffer records = block.records();
+
+      assertFalse(block.isDeflated());
+      assertTrue(records.isDirect());
+      assertTrue(records.isReadOnly());
+      assertEquals(10 * BinaryBookingFormat.RECORD_SIZE, records.remaining());
+    }
+  }
+
+  @Test
+  public void shouldDeflateRepetitiveBlocks() throws Exception {
+    Booking booking = Booking.fromString("2015-08-17 10:17:06 EMP001", "2015-08-21 09:00 2");
+    List<Booking> bookings = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      bookings.add(booking);
+    }
+    Path compressed = write(bookings, 50, true);
+
+    assertTrue(Files.size(compressed) < Files.size(write(bookings, 50, false)));
+    try (BinaryBookingReader reader = BinaryBookingReader.open(compressed)) {
+      assertTrue(reader.getBlocks().get(0).isDeflated());
+      assertEquals(booking, reader.getBlocks().get(1).get(49));
+      assertEquals(bookings, reader.readAll());
+    }
+  }
+
+  @Test
+  public void shouldReadOverlappingBookingsOnly() throws Exception {
+    List<Booking> bookings = randomBookings(1000);
+    bookings.sort((a, b) -> a.getStartTime().compareTo(b.getStartTime()));
+    Path file = write(bookings, 32, true);
+    DateTime from = new DateTime(2015, 9, 2, 10, 0);
+    DateTime to = new DateTime(2015, 9, 3, 12, 0);
+
+    List<Booking> overlapping = new ArrayList<>();
+    try (BinaryBookingReader reader = BinaryBookingReader.open(file)) {
+      reader.forEachOverlapping(from, to, overlapping::add);
+    }
+
+    assertEquals(bookings.stream()
+        .filter(booking -> booking.getStartTime().isBefore(to) && booking.getEndTime().isAfter(from))
+        .collect(Collectors.toList()), overlapping);
+  }
+
+  @Test
+  public void shouldLoadSameBookingsAsSequentialPath() throws Exception {
+    StringBuilder input = new StringBuilder(HEADER + "\n");
+    for (Booking booking : randomBookings(2000)) {
+      BinaryBookingConverter.appendRecord(input, booking);
+    }
+    Scheduler sequential = Scheduler.withRules(OpenHoursRule.fromString(HEADER));
+    BufferedReader text = new BufferedReader(new StringReader(input.toString()));
+    text.readLine();
+    sequential.bookAllInBookingOrder(text);
+
+    Path file = folder.newFile().toPath();
+    try (FileChannel out = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      BinaryBookingConverter.toBinary(new BufferedReader(new StringReader(input.toString())), out, 100, true);
+    }
+
+    assertEquals(sequential.output(), BinaryBookingReader.load(file).output());
+  }
+
+  @Test
+  public void shouldExportSchedulerBookings() throws Exception {
+    Scheduler scheduler = Scheduler.withRules(OpenHoursRule.fromString(HEADER));
+    scheduler.bookAll(randomBookings(500));
+    Path file = folder.newFile().toPath();
+    try (FileChannel out = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      BinaryBookingWriter writer = new BinaryBookingWriter(out, HEADER, 16, true);
+      writer.writeAll(scheduler);
+      writer.finish();
+    }
+
+    assertEquals(scheduler.output(), BinaryBookingReader.load(file).output());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldThrowIAEOnStartWithSeconds() throws Exception {
+    Booking booking = new Booking(new DateTime(2015, 8, 17, 10, 17, 6), "EMP001",
+        new DateTime(2015, 8, 21, 9, 0, 30), new DateTime(2015, 8, 21, 11, 0));
+
+    write(Arrays.asList(booking), 16, false);
+  }
+
+  @Test
+  public void shouldKeepBlockAlignedAfterRejectedBooking() throws Exception {
+    Booking farFuture = new Booking(new DateTime(2015, 8, 17, 10, 17, 6), "EMP001",
+        new DateTime(9000, 8, 21, 9, 0), new DateTime(9000, 8, 21, 11, 0));
+    Booking valid = Booking.fromString("2015-08-17 10:17:06 EMP002", "2015-08-21 09:00 2");
+    Path file = folder.newFile().toPath();
+    try (FileChannel out = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      BinaryBookingWriter writer = new BinaryBookingWriter(out, HEADER, 16, false);
+      try {
+        writer.write(farFuture);
+        throw new AssertionError("Booking out of range accepted");
+      } catch (IllegalArgumentException expected) {
+        // not written
+      }
+      writer.write(valid);
+      writer.finish();
+    }
+
+    try (BinaryBookingReader reader = BinaryBookingReader.open(file)) {
+      assertEquals(Arrays.asList(valid), reader.readAll());
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void shouldThrowIOEOnOtherFile() throws Exception {
+    Path file = folder.newFile().toPath();
+    Files.write(file, "0900 1730\n2015-08-17 10:17:06 EMP001\n2015-08-21 09:00 2\n".getBytes("UTF-8"));
+
+    BinaryBookingReader.open(file);
+  }
+
+  @Test(expected = IOException.class)
+  public void shouldThrowIOEOnTruncatedFile() throws Exception {
+    Path file = write(randomBookings(100), 10, false);
+    byte[] bytes = Files.readAllBytes(file);
+    Files.write(file, Arrays.copyOf(bytes, bytes.length - 100));
+
+    BinaryBookingReader.open(file);
+  }
+
+  private Path write(List<Booking> bookings, int blockSize, boolean compress) throws IOException {
+    Path file = folder.newFile().toPath();
+    try (FileChannel out = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      BinaryBookingWriter writer = new BinaryBookingWriter(out, HEADER, blockSize, compress);
+      writer.writeAll(bookings);
+      writer.finish();
+    }
+    return file;
+  }
+
+  private static List<Booking> randomBookings(int count) {
+    Random random = new Random(42);
+    List<Booking> bookings = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      DateTime start = new DateTime(2015, 9, 1 + random.nextInt(5), 7 + random.nextInt(12), random.nextInt(2) * 30);
+      bookings.add(new Booking(
+          new DateTime(2015, 8, 1 + random.nextInt(28), random.nextInt(24), random.nextInt(60), random.nextInt(3)),
+          String.format("EMP%03d", random.nextInt(50)),
+          start,
+          start.plusHours(1 + random.nextInt(3)),
+          i % 5 == 0 ? "ROOM" + random.nextInt(3) : Booking.DEFAULT_RESOURCE));
+    }
+    return bookings;
+  }
+}
@@ -0,0 +1,197 @@
+package com.marketlogicsoftware;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BookingJournalTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void shouldRecoverBookingsFromJournal() throws Exception {
+    Path directory = folder.getRoot().toPath();
+    List<Booking> bookings = randomBookings(500);
+    String expected;
+    try (BookingJournal journal = BookingJournal.open(directory, builder())) {
+      bookings.forEach(journal.scheduler()::bookTry);
+      expected = journal.scheduler().output();
+    }
+
+    try (BookingJournal journal = BookingJournal.open(directory, builder())) {
+      assertEquals(expected, journal.scheduler().output());
+    }
+  }
+
+  @Test
+  public void shouldRecoverFromSnapshotAndJournalTail() throws Exception {
+    Path directory = folder.getRoot().toPath();
+    List<Booking> bookings = randomBookings(2000);
+    Scheduler reference = builder().build();
+    try (BookingJournal journal = BookingJournal.open(directory, builder(), 100, 0)) {
+      for (Booking booking : bookings.subList(0, 1000)) {
+        assertEquals(reference.bookTry(booking), journal.scheduler().bookTry(booking));
+      }
+      journal.scheduler().bookAll(bookings.subList(1000, 2000));
+      reference.bookAll(bookings.subList(1000, 2000));
+    }
+    assertTrue(Files.exists(directory.resolve("snapshot")));
+
+    try (BookingJournal journal = BookingJournal.open(directory, builder(), 100, 0)) {
+      assertEquals(reference.output(), journal.scheduler().output());
+      for (Booking booking : randomBookings(200)) {
+        assertEquals(reference.bookTry(booking), journal.scheduler().bookTry(booking));
+      }
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void shouldThrowIOEOnSnapshotWithTooManyIntervals() throws Exception {
+    Path directory = folder.getRoot().toPath();
+    try (BookingJournal journal = BookingJournal.open(directory, builder(), 100, 0)) {
+      journal.scheduler().bookAll(randomBookings(200));
+      journal.compact();
+    }
+    assertTrue(Files.exists(directory.resolve("snapshot")));
+    try (FileChannel channel = FileChannel.open(directory.resolve("snapshot"), StandardOpenOption.WRITE)) {
+      // 2^28 intervals of 16 bytes, 2^32 bytes, which is 0 in int arithmetic
+      channel.write((ByteBuffer) ByteBuffer.allocate(Integer.BYTES).putInt(1 << 28).flip(),
+          Integer.BYTES + Long.BYTES);
+    }
+
+    BookingJournal.open(directory, builder(), 100, 0).close();
+  }
+
+  @Test
+  public void shouldCompactAfterWholeBatch() throws Exception {
+    Path directory = folder.getRoot().toPath();
+    DateTime start = new DateTime(2015, 8, 21, 9, 0);
+    List<Booking> bookings = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      bookings.add(new Booking(start.minusDays(1), "EMP00" + i, start.plusHours(i), start.plusHours(i + 1)));
+    }
+    try (BookingJournal journal = BookingJournal.open(directory, builder(), 3, 0)) {
+      journal.scheduler().bookAll(bookings);
+    }
+
+    try (BookingJournal journal = BookingJournal.open(directory, builder(), 3, 0)) {
+      assertEquals(5, journal.scheduler().getBookings().size());
+    }
+  }
+
+  @Test
+  public void shouldDropTornRecordAtEndOfJournal() throws Exception {
+    Path directory = folder.getRoot().toPath();
+    DateTime start = new DateTime(2015, 8, 21, 9, 0);
+    Booking first = new Booking(start.minusDays(3), "EMP001", start, start.plusHours(1));
+    Booking second = new Booking(start.minusDays(2), "EMP002", start.plusHours(2), start.plusHours(3));
+    try (BookingJournal journal = BookingJournal.open(directory, builder())) {
+      journal.scheduler().bookTry(first);
+      journal.scheduler().bookTry(second);
+    }
+    Path journalFile = directory.resolve("journal-0");
+    long size = Files.size(journalFile);
+    try (FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.WRITE)) {
+      channel.truncate(size - 5);
+    }
+
+    try (BookingJournal journal = BookingJournal.open(directory, builder())) {
+      assertEquals(1, journal.scheduler().getBookings().size());
+      assertTrue(journal.scheduler().getBookings().contains(first));
+      assertTrue(journal.scheduler().bookTry(second));
+    }
+    try (BookingJournal journal = BookingJournal.open(directory, builder())) {
+      assertEquals(2, journal.scheduler().getBookings().size());
+    }
+  }
+
+  @Test
+  public void shouldDropRecordWithBadChecksum() throws Exception {
+    Path directory = folder.getRoot().toPath();
+    DateTime start = new DateTime(2015, 8, 21, 9, 0);
+    try (BookingJournal journal = BookingJournal.open(directory, builder())) {
+      journal.scheduler().bookTry(new Booking(start.minusDays(3), "EMP001", start, start.plusHours(1)));
+    }
+    Path journalFile = directory.resolve("journal-0");
+    try (FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.wrap(new byte[]{42}), Files.size(journalFile) - 1);
+    }
+
+    try (BookingJournal journal = BookingJournal.open(directory, builder())) {
+      assertTrue(journal.scheduler().getBookings().isEmpty());
+    }
+  }
+
+  @Test
+  public void shouldKeepOverlapsRejectedAfterRecovery() throws IOException {
+    Path directory = folder.getRoot().toPath();
+    DateTime start = new DateTime(2015, 8, 21, 9, 0);
+    try (BookingJournal journal = BookingJournal.open(directory, builder(), 1, 0)) {
+      journal.scheduler().bookTry(new Booking(start.minusDays(3), "EMP001", start, start.plusHours(2)));
+    }
+
+    try (BookingJournal journal = BookingJournal.open(directory, builder(), 1, 0)) {
+      assertFalse(journal.scheduler().bookTry(
+          new Booking(start.minusDays(2), "EMP002", start.plusHours(1), start.plusHours(3))));
+    }
+  }
+
+  private static Scheduler.Builder builder() {
+    return Scheduler.builder().rules(OpenHoursRule.fromString("0900 1730"));
+  }
+
+  private static List<Booking> randomBookings(int count) {
+    Random random = new Random(count);
+    DateTime origin = new DateTime(2015, 8, 1, 0, 0);
+    List<Booking> bookings = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      DateTime start = origin.plusDays(random.nextInt(60)).plusHours(8 + random.nextInt(10));
+      bookings.add(new Booking(origin.minusSeconds(count - i), "EMP" + random.nextInt(100), start,
+          start.plusHours(1 + random.nextInt(3)), random.nextInt(5) == 0 ? "ROOM1" : ""));
+    }
+    return bookings;
+  }
+
+  @Test
+  public void shouldRecoverCancelsAndReschedules() throws Exception {
+    Path directory = folder.getRoot().toPath();
+    List<Booking> bookings = randomBookings(300);
+    String expected;
+    try (BookingJournal journal = BookingJournal.open(directory, builder(), 250, 0)) {
+      Scheduler scheduler = journal.scheduler();
+      bookings.forEach(scheduler::bookTry);
+      Random random = new Random(1);
+      for (int i = 0; i < 200; i++) {
+        List<Booking> booked = new ArrayList<>(scheduler.getBookings());
+        Booking booking = booked.get(random.nextInt(booked.size()));
+        if (random.nextBoolean()) {
+          scheduler.cancel(booking);
+        } else {
+          scheduler.reschedule(booking, booking.getStartTime().plusHours(random.nextInt(5) - 2),
+              Duration.standardHours(1));
+        }
+      }
+      expected = scheduler.output();
+    }
+
+    try (BookingJournal journal = BookingJournal.open(directory, builder(), 250, 0)) {
+      assertEquals(expected, journal.scheduler().output());
+    }
+  }
+}
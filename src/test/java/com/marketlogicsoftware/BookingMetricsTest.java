@@ -0,0 +1,87 @@
+package com.marketlogicsoftware;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import org.junit.Test;
+
+public class BookingMetricsTest {
+
+  private static final String INPUT = "2015-08-17 10:17:06 EMP001\n"
+      + "2015-08-21 09:00 2\n"
+      + "2015-08-16 12:34:56 EMP002\n"
+      + "2015-08-21 09:00 2\n"
+      + "2015-08-16 09:28:23 EMP003\n"
+      + "2015-08-22 14:00 2\n"
+      + "2015-08-17 11:23:45 EMP004\n"
+      + "2015-08-22 16:00 1\n"
+      + "2015-08-15 17:29:12 EMP005\n"
+      + "2015-08-21 16:00 3\n";
+
+  @Test
+  public void shouldCountOutcomesOfBatch() throws Exception {
+    BookingMetrics metrics = new BookingMetrics();
+    Scheduler scheduler = Scheduler.builder()
+        .rules(OpenHoursRule.fromString("0900 1730"))
+        .metrics(metrics)
+        .build();
+
+    scheduler.bookAllInBookingOrder(new BufferedReader(new StringReader(INPUT)));
+    scheduler.output();
+
+    assertEquals(3, metrics.getAccepted());
+    assertEquals(1, metrics.getRejectedByRule());
+    assertEquals(1, metrics.getRejectedOverlap());
+    assertEquals(5, metrics.getParseLatency().getCount());
+    assertEquals(5, metrics.getRuleLatency().getCount());
+    assertEquals(4, metrics.getAvailabilityLatency().getCount());
+    assertEquals(1, metrics.getOutputLatency().getCount());
+  }
+
+  @Test
+  public void shouldCountOutcomesOfBookTry() {
+    BookingMetrics metrics = new BookingMetrics();
+    Scheduler scheduler = Scheduler.builder()
+        .rules(OpenHoursRule.fromString("0900 1730"))
+        .metrics(metrics)
+        .build();
+
+    scheduler.bookTry(Booking.fromString("2015-08-17 10:17:06 EMP001", "2015-08-21 09:00 2"));
+    scheduler.bookTry(Booking.fromString("2015-08-17 10:17:07 EMP002", "2015-08-21 10:00 2"));
+    scheduler.bookTry(Booking.fromString("2015-08-17 10:17:08 EMP003", "2015-08-21 17:00 2"));
+
+    assertEquals(1, metrics.getAccepted());
+    assertEquals(1, metrics.getRejectedByRule());
+    assertEquals(1, metrics.getRejectedOverlap());
+    assertEquals(3, metrics.getRuleLatency().getCount());
+    assertEquals(2, metrics.getAvailabilityLatency().getCount());
+
+    metrics.reset();
+    assertEquals(0, metrics.getAccepted());
+    assertEquals(0, metrics.getRuleLatency().getCount());
+  }
+
+  @Test
+  public void shouldExposeMetricsThroughJmx() throws Exception {
+    BookingMetrics metrics = new BookingMetrics();
+    Scheduler scheduler = Scheduler.builder()
+        .metrics(metrics)
+        .build();
+    scheduler.bookTry(Booking.fromString("2015-08-17 10:17:06 EMP001", "2015-08-21 09:00 2"));
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+    ObjectName name = metrics.register("test");
+    try {
+      assertEquals(1L, server.getAttribute(name, "Accepted"));
+      CompositeData rules = (CompositeData) server.getAttribute(name, "RuleLatency");
+      assertEquals(1L, rules.get("count"));
+    } finally {
+      server.unregisterMBean(name);
+    }
+  }
+}
@@ -0,0 +1,41 @@
+package com.marketlogicsoftware;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.IntStream;
+import org.junit.Test;
+
+public class BookingOrderTest {
+
+  @Test
+  public void shouldKeepInputOrderOfEqualKeys() {
+    long[] keys = {5, 3, 5, 3, 1, 5};
+    int[] indexes = {0, 1, 2, 3, 4, 5};
+
+    BookingOrder.sort(indexes, keys);
+
+    assertArrayEquals(new int[]{4, 1, 3, 0, 2, 5}, indexes);
+  }
+
+  @Test
+  public void shouldMatchStableSortOnRandomInput() {
+    Random random = new Random(1);
+    for (int round = 0; round < 100; round++) {
+      int length = random.nextInt(1000);
+      long[] keys = new long[length];
+      for (int i = 0; i < length; i++) {
+        keys[i] = round % 2 == 0 ? random.nextInt(50) : i / 3 - (random.nextInt(10) == 0 ? 5 : 0);
+      }
+      int[] indexes = IntStream.range(0, length).toArray();
+      Integer[] expected = IntStream.range(0, length).boxed().toArray(Integer[]::new);
+      Arrays.sort(expected, Comparator.comparingLong(i -> keys[i]));
+
+      BookingOrder.sort(indexes, keys);
+
+      assertArrayEquals(Arrays.stream(expected).mapToInt(Integer::intValue).toArray(), indexes);
+    }
+  }
+}
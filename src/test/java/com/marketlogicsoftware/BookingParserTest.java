@@ -0,0 +1,120 @@
+package com.marketlogicsoftware;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+public class BookingParserTest {
+
+  private BookingParser parser = new BookingParser();
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldThrowIAE() {
+    parser.parse("ILLEGAL", "ILLEGAL");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldThrowIAEOnInvalidDate() {
+    parser.parse("2015-02-29 10:17:06 EMP001", "2015-08-21 09:00 2");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldThrowIAEOnMissingDuration() {
+    parser.parse("2015-08-17 10:17:06 EMP001", "2015-08-21 09:00");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldThrowIAEOnEmptyResource() {
+    parser.parse("2015-08-17 10:17:06 EMP001", "2015-08-21 09:00 2  ROOM1");
+  }
+
+  @Test
+  public void shouldAcceptSameRecordsAsBookingFromString() {
+    String[][] records = {
+        {"2015-08-17 10:17:06 EMP001 ", "2015-08-21 09:00 2"},
+        {"2015-08-17 10:17:06 EMP001", "2015-08-21 09:00 +2"},
+        {"2015-08-17 10:17:06 EMP001", "2015-08-21 09:00 2 "},
+        {"2015-08-17 10:17:06 EMP001", "2015-08-21 09:00 2 ROOM1  "},
+        {"2015-08-17 10:17:06 EMP001", "2015-08-21 09:00 0002"},
+        {"2015-08-17 10:17:06 EMP001", "2015-08-21 09:00 1234567"},
+        {"2015-08-17 10:17:06 EMP001", "2015-08-21 09:00 -2"},
+        {"2015-08-17 10:17:06 EMP001", "2015-08-21 09:00 2x"},
+        {"2015-08-17  10:17:06 EMP001", "2015-08-21 09:00 2"},
+        {" 2015-08-17 10:17:06 EMP001", "2015-08-21 09:00 2"},
+        {"2015-08-17 10:17:06 EMP001", "2015-08-21 9:00 2"},
+        {"2015-08-17 10:17:06 EMP001", "2015-08-21 09:00 2 ROOM1 X"},
+    };
+    for (String[] record : records) {
+      assertSameAsBookingFromString(record[0], record[1]);
+    }
+  }
+
+  @Test
+  public void shouldMatchBookingFromString() {
+    String[][] records = {
+        {"2015-08-17 10:17:06 EMP001", "2015-08-21 09:00 2"},
+        {"2016-02-29 23:59:59 EMP002", "2016-03-01 00:00 24"},
+        {"1969-12-31 00:00:00 EMP003", "2000-01-01 17:30 1"},
+        {"2015-08-17 10:17:06 EMP001", "2015-08-21 09:00 2 ROOM1"},
+    };
+    for (String[] record : records) {
+      parser.parse(record[0], record[1]);
+
+      assertEquals(Booking.fromString(record[0], record[1]), parser.toBooking());
+    }
+  }
+
+  @Test
+  public void shouldParseBytes() {
+    String input = "2015-08-17 10:17:06 EMP001\n2015-08-21 09:00 2\n";
+    ByteBuffer buffer = ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8));
+
+    parser.parse(buffer, 0, 26, 27, 45);
+
+    assertEquals(Booking.fromString("2015-08-17 10:17:06 EMP001", "2015-08-21 09:00 2"), parser.toBooking());
+    assertEquals(120, parser.getDurationMinutes());
+  }
+
+  @Test
+  public void shouldParseBytesSlowly() {
+    String input = "2015-08-17 10:17:06 EMP001 \n2015-08-21 09:00 +2\n";
+    ByteBuffer buffer = ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8));
+
+    parser.parse(buffer, 0, 27, 28, 47);
+
+    assertEquals(Booking.fromString("2015-08-17 10:17:06 EMP001 ", "2015-08-21 09:00 +2"), parser.toBooking());
+    assertEquals("EMP001", parser.getEmployee());
+    assertEquals(120, parser.getDurationMinutes());
+  }
+
+  @Test
+  public void shouldInternEmployees() {
+    parser.parse("2015-08-17 10:17:06 EMP001", "2015-08-21 09:00 2");
+    String first = parser.getEmployee();
+    parser.parse("2015-08-18 10:17:06 EMP001", "2015-08-22 09:00 2");
+
+    assertSame(first, parser.getEmployee());
+    assertEquals(1, parser.getEmployees().size());
+  }
+
+  private void assertSameAsBookingFromString(String bookingLine, String scheduleLine) {
+    Booking expected;
+    try {
+      expected = Booking.fromString(bookingLine, scheduleLine);
+    } catch (IllegalArgumentException e) {
+      try {
+        parser.parse(bookingLine, scheduleLine);
+        parser.toBooking();
+      } catch (IllegalArgumentException parserException) {
+        assertEquals(e.getMessage(), parserException.getMessage());
+        return;
+      }
+      throw new AssertionError("Accepted [" + bookingLine + "," + scheduleLine + "]");
+    }
+    parser.parse(bookingLine, scheduleLine);
+    assertEquals(expected, parser.toBooking());
+  }
+}
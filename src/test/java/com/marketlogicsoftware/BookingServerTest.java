@@ -0,0 +1,173 @@
+package com.marketlogicsoftware;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+
+public class BookingServerTest {
+
+  @Test
+  public void shouldAnswerPipelinedRequestsInOrder() throws Exception {
+    try (BookingServer server = BookingServer.start(Scheduler.withRules(OpenHoursRule.fromString("0900 1730")), 0);
+        Socket socket = connect(server)) {
+      String requests = "2015-08-17 10:17:06 EMP001\n"
+          + "2015-08-21 09:00 2\n"
+          + "2015-08-17 12:34:56 EMP002\r\n"
+          + "2015-08-21 10:00 2\r\n"
+          + "2015-08-16 09:28:23 EMP003\n"
+          + "2015-08-22 17:00 2\n"
+          + "HELLO\n"
+          + "2015-08-16 09:28:23 EMP003\n"
+          + "2015-08-22 14:00\n"
+          + "2015-08-17 11:23:45 EMP004\n"
+          + "2015-08-22 16:00 1\n"
+          + "QUERY\n";
+      OutputStream out = socket.getOutputStream();
+      out.write(requests.getBytes(StandardCharsets.UTF_8));
+      out.flush();
+      BufferedReader in = reader(socket);
+
+      assertEquals("ACCEPTED", in.readLine());
+      assertEquals("REJECTED OVERLAP", in.readLine());
+      assertEquals("REJECTED RULE", in.readLine());
+      assertEquals("ERROR Unknown command: HELLO", in.readLine());
+      assertEquals(true, in.readLine().startsWith("ERROR "));
+      assertEquals("ACCEPTED", in.readLine());
+      assertEquals("2015-08-21", in.readLine());
+      assertEquals("09:00 11:00 EMP001", in.readLine());
+      assertEquals("2015-08-22", in.readLine());
+      assertEquals("16:00 17:00 EMP004", in.readLine());
+      assertEquals("END", in.readLine());
+    }
+  }
+
+  @Test
+  public void shouldAnswerBookingsStoredBeforeFailingRule() throws Exception {
+    BookingRule failsForEmp002 = booking -> {
+      if (booking.getBookedBy().equals("EMP002")) {
+        throw new IllegalStateException("Rule failed");
+      }
+      return true;
+    };
+    try (BookingServer server = BookingServer.start(Scheduler.withRules(failsForEmp002), 0);
+        Socket socket = connect(server)) {
+      String requests = "2015-08-17 10:17:06 EMP001\n"
+          + "2015-08-21 09:00 2\n"
+          + "2015-08-17 12:34:56 EMP002\n"
+          + "2015-08-21 12:00 2\n"
+          + "QUERY\n";
+      OutputStream out = socket.getOutputStream();
+      out.write(requests.getBytes(StandardCharsets.UTF_8));
+      out.flush();
+      BufferedReader in = reader(socket);
+
+      assertEquals("ACCEPTED", in.readLine());
+      assertEquals("ERROR Rule failed", in.readLine());
+      assertEquals("2015-08-21", in.readLine());
+      assertEquals("09:00 11:00 EMP001", in.readLine());
+      assertEquals("END", in.readLine());
+    }
+  }
+
+  @Test
+  public void shouldAnswerErrorForEmptyIntervalOnly() throws Exception {
+    try (BookingServer server = BookingServer.start(Scheduler.withRules(OpenHoursRule.fromString("0900 1730")), 0);
+        Socket socket = connect(server)) {
+      String requests = "2015-08-17 10:17:06 EMP001\n"
+          + "2015-08-21 09:00 2\n"
+          + "2015-08-17 11:17:06 EMP002\n"
+          + "2015-08-21 08:00 0\n"
+          + "2015-08-17 12:17:06 EMP003\n"
+          + "2015-08-21 12:00 0\n"
+          + "2015-08-17 13:17:06 EMP004\n"
+          + "2015-08-21 14:00 2\n"
+          + "QUERY\n";
+      OutputStream out = socket.getOutputStream();
+      out.write(requests.getBytes(StandardCharsets.UTF_8));
+      out.flush();
+      BufferedReader in = reader(socket);
+
+      assertEquals("ACCEPTED", in.readLine());
+      assertEquals("REJECTED RULE", in.readLine());
+      assertEquals(true, in.readLine().startsWith("ERROR "));
+      assertEquals("ACCEPTED", in.readLine());
+      assertEquals("2015-08-21", in.readLine());
+      assertEquals("09:00 11:00 EMP001", in.readLine());
+      assertEquals("14:00 16:00 EMP004", in.readLine());
+      assertEquals("END", in.readLine());
+    }
+  }
+
+  @Test
+  public void shouldBookEverySlotOnceForConcurrentClients() throws Exception {
+    int clients = 16;
+    int days = 20;
+    ExecutorService executor = Executors.newFixedThreadPool(clients);
+    Scheduler scheduler = Scheduler.withRules(OpenHoursRule.fromString("0900 1700"));
+    try (BookingServer server = BookingServer.start(scheduler, 0)) {
+      List<Future<Integer>> accepted = new ArrayList<>();
+      for (int client = 0; client < clients; client++) {
+        String employee = String.format("EMP%03d", client);
+        accepted.add(executor.submit(() -> bookAllSlots(server, employee, days)));
+      }
+      int total = 0;
+      for (Future<Integer> future : accepted) {
+        total += future.get();
+      }
+
+      assertEquals(days * 8, total);
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals(days * 8, scheduler.getBookings().size());
+  }
+
+  /**
+   * Pipelines a booking for every hour of every day, then reads all responses.
+   *
+   * @return number of accepted bookings.
+   */
+  private static int bookAllSlots(BookingServer server, String employee, int days) throws IOException {
+    try (Socket socket = connect(server)) {
+      PrintWriter out = new PrintWriter(socket.getOutputStream());
+      for (int day = 1; day <= days; day++) {
+        for (int hour = 9; hour < 17; hour++) {
+          out.printf("2015-08-17 10:17:06 %s\n2015-09-%02d %02d:00 1\n", employee, day, hour);
+        }
+      }
+      out.flush();
+      BufferedReader in = reader(socket);
+      int accepted = 0;
+      for (int i = 0; i < days * 8; i++) {
+        String response = in.readLine();
+        if (response.equals("ACCEPTED")) {
+          accepted++;
+        } else {
+          assertEquals("REJECTED OVERLAP", response);
+        }
+      }
+      return accepted;
+    }
+  }
+
+  private static Socket connect(BookingServer server) throws IOException {
+    return new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+  }
+
+  private static BufferedReader reader(Socket socket) throws IOException {
+    return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,190 @@
+package com.marketlogicsoftware;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.stream.Collectors;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+import org.junit.Test;
+
+public class BookingStoreTest {
+
+  @Test
+  public void shouldMatchTreeStoreOnRandomBookings() {
+    Random random = new Random(3);
+    BookingStore expected = new TreeBookingStore();
+    BookingStore actual = new CompactBookingStore();
+    DateTime origin = new DateTime(2015, 3, 1, 0, 0);
+    List<Booking> bookings = new ArrayList<>();
+    for (int i = 0; i < 5000; i++) {
+      DateTime start = origin.plusMinutes(random.nextInt(60 * 24 * 60));
+      Booking booking = new Booking(origin.minusSeconds(random.nextInt(1_000_000)), "EMP" + random.nextInt(20),
+          start, start.plusMinutes(1 + random.nextInt(300)), random.nextInt(4) == 0 ? "ROOM" + random.nextInt(3) : "");
+      bookings.add(booking);
+      if (random.nextInt(10) == 0 && !bookings.isEmpty()) {
+        bookings.add(bookings.get(random.nextInt(bookings.size())));
+      }
+    }
+    for (Booking booking : bookings) {
+      assertEquals(expected.add(booking), actual.add(booking));
+    }
+
+    assertEquals(expected.size(), actual.size());
+    assertEquals(ImmutableList.copyOf(expected.values()), ImmutableList.copyOf(actual.values()));
+    assertSameGroups(expected.grouped(), actual.grouped());
+  }
+
+  @Test
+  public void shouldKeepDaysAcrossDaylightSavingChange() {
+    DateTimeZone defaultZone = DateTimeZone.getDefault();
+    DateTimeZone.setDefault(DateTimeZone.forID("Europe/Berlin"));
+    try {
+      BookingStore expected = new TreeBookingStore();
+      BookingStore actual = new CompactBookingStore();
+      DateTime start = new DateTime(2015, 3, 28, 22, 0);
+      for (int i = 0; i < 12; i++) {
+        Booking booking = new Booking(start.minusDays(1), "EMP001", start, start.plusHours(1));
+        expected.add(booking);
+        actual.add(booking);
+        start = start.plusHours(1);
+      }
+
+      assertSameGroups(expected.grouped(), actual.grouped());
+    } finally {
+      DateTimeZone.setDefault(defaultZone);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldThrowIAEOnSecondsInSchedule() {
+    DateTime start = new DateTime(2015, 3, 1, 9, 0, 30);
+    new CompactBookingStore().add(new Booking(start, "EMP001", start, start.plusHours(1)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldThrowIAEOnOtherTimeZone() {
+    DateTime start = new DateTime(2015, 3, 1, 9, 0, DateTimeZone.forOffsetHours(13));
+    new CompactBookingStore().add(new Booking(start, "EMP001", start, start.plusHours(1)));
+  }
+
+  @Test
+  public void shouldProduceSameOutputInScheduler() throws Exception {
+    Scheduler expected = Scheduler.withRules(OpenHoursRule.fromString("0900 1730"));
+    Scheduler actual = Scheduler.builder()
+        .rules(OpenHoursRule.fromString("0900 1730"))
+        .bookingStore(new CompactBookingStore())
+        .build();
+    List<Booking> bookings = ImmutableList.of(
+        Booking.fromString("2015-08-17 10:17:06 EMP001", "2015-08-21 09:00 2"),
+        Booking.fromString("2015-08-16 12:34:56 EMP002", "2015-08-21 09:00 2"),
+        Booking.fromString("2015-08-16 09:28:23 EMP003", "2015-08-22 14:00 2"),
+        Booking.fromString("2015-08-17 11:23:45 EMP004", "2015-08-22 16:00 1"),
+        Booking.fromString("2015-08-15 17:29:12 EMP005", "2015-08-21 16:00 3"));
+
+    expected.bookAll(bookings);
+    actual.bookAll(bookings);
+
+    assertEquals(expected.output(), actual.output());
+    assertEquals(ImmutableList.copyOf(expected.getBookings()), ImmutableList.copyOf(actual.getBookings()));
+  }
+
+  private static void assertSameGroups(NavigableMap<LocalDate, Collection<Booking>> expected,
+      NavigableMap<LocalDate, Collection<Booking>> actual) {
+    assertEquals(expected.keySet(), actual.keySet());
+    for (Entry<LocalDate, Collection<Booking>> entry : expected.entrySet()) {
+      assertEquals(ImmutableList.copyOf(entry.getValue()), ImmutableList.copyOf(actual.get(entry.getKey())));
+    }
+  }
+
+  @Test
+  public void shouldMatchTreeStoreOnRemove() {
+    Random random = new Random(5);
+    BookingStore expected = new TreeBookingStore();
+    BookingStore actual = new CompactBookingStore();
+    DateTime origin = new DateTime(2015, 3, 1, 0, 0);
+    List<Booking> bookings = new ArrayList<>();
+    for (int i = 0; i < 3000; i++) {
+      DateTime start = origin.plusMinutes(random.nextInt(10 * 24 * 60));
+      Booking booking = new Booking(origin.minusSeconds(random.nextInt(1000)), "EMP" + random.nextInt(5), start,
+          start.plusMinutes(1 + random.nextInt(30)));
+      bookings.add(booking);
+      assertEquals(expected.add(booking), actual.add(booking));
+    }
+    for (int i = 0; i < 4000; i++) {
+      Booking booking = bookings.get(random.nextInt(bookings.size()));
+      assertEquals(expected.remove(booking), actual.remove(booking));
+    }
+
+    assertEquals(expected.size(), actual.size());
+    assertSameGroups(expected.grouped(), actual.grouped());
+  }
+
+  @Test
+  public void shouldQueryRangesLikeFilteringValues() {
+    Random random = new Random(7);
+    BookingStore[] stores = {new TreeBookingStore(), new CompactBookingStore()};
+    DateTime origin = new DateTime(2015, 3, 1, 0, 0);
+    List<Booking> bookings = new ArrayList<>();
+    for (int i = 0; i < 3000; i++) {
+      DateTime start = origin.plusMinutes(random.nextInt(30 * 24 * 60));
+      bookings.add(new Booking(origin.minusSeconds(random.nextInt(1000)), "EMP" + random.nextInt(5), start,
+          start.plusMinutes(1 + random.nextInt(600))));
+    }
+    for (BookingStore store : stores) {
+      bookings.forEach(store::add);
+      bookings.subList(0, 500).forEach(store::remove);
+    }
+
+    for (int i = 0; i < 200; i++) {
+      DateTime from = origin.plusSeconds(random.nextInt(32 * 24 * 60 * 60));
+      DateTime to = from.plusSeconds(random.nextInt(5 * 24 * 60 * 60));
+      String employee = "EMP" + random.nextInt(6);
+      for (BookingStore store : stores) {
+        List<Booking> starting = store.values().stream()
+            .filter(booking -> !booking.getStartTime().isBefore(from) && booking.getStartTime().isBefore(to))
+            .collect(Collectors.toList());
+        List<Booking> byEmployee = starting.stream()
+            .filter(booking -> booking.getBookedBy().equals(employee))
+            .collect(Collectors.toList());
+
+        assertEquals(starting, ImmutableList.copyOf(store.startingBetween(from, to)));
+        assertEquals(starting.size(), store.startingBetween(from, to).size());
+        assertEquals(byEmployee, ImmutableList.copyOf(store.byEmployee(employee, from, to)));
+      }
+    }
+  }
+
+  @Test
+  public void shouldNotInternUnknownEmployeeOnQueryOrRemove() {
+    CompactBookingStore store = new CompactBookingStore();
+    Booking booking = Booking.fromString("2015-08-17 10:17:06 EMP001", "2015-08-21 09:00 2");
+    DateTime from = new DateTime(2015, 8, 21, 0, 0);
+    DateTime to = new DateTime(2015, 8, 22, 0, 0);
+    store.add(booking);
+    Collection<Booking> unknown = store.byEmployee("EMP002", from, to);
+
+    assertEquals(0, unknown.size());
+    assertEquals(false, store.remove(Booking.fromString("2015-08-17 10:17:06 EMP003", "2015-08-21 09:00 2")));
+    assertEquals(false, store.remove(booking.withResourceId("ROOM1")));
+    assertEquals(1, store.employeeCount());
+
+    Booking later = Booking.fromString("2015-08-17 10:17:06 EMP002", "2015-08-21 12:00 2");
+    store.add(later);
+    assertEquals(Collections.singletonList(later), new ArrayList<>(unknown));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldThrowIAEOnReversedRange() {
+    DateTime time = new DateTime(2015, 3, 1, 9, 0);
+    new CompactBookingStore().startingBetween(time, time.minusMinutes(1));
+  }
+}
@@ -20,4 +20,13 @@ public class BookingTest {
     assertEquals(Booking.scheduleFormatter.parseDateTime("2015-08-21 09:00"), booking.getStartTime());
     assertEquals(Booking.scheduleFormatter.parseDateTime("2015-08-21 11:00"), booking.getEndTime());
   }
+
+  @Test
+  public void shouldConstructWithResource() {
+    Booking booking = Booking.fromString("2015-08-17 10:17:06 EMP001", "2015-08-21 09:00 2 ROOM1");
+
+    assertEquals("ROOM1", booking.getResourceId());
+    assertEquals(Booking.DEFAULT_RESOURCE, Booking.fromString("2015-08-17 10:17:06 EMP001", "2015-08-21 09:00 2")
+        .getResourceId());
+  }
 }
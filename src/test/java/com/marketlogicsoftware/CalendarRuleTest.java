@@ -0,0 +1,98 @@
+package com.marketlogicsoftware;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Random;
+import org.joda.time.DateTime;
+import org.joda.time.Interval;
+import org.joda.time.LocalDate;
+import org.junit.Test;
+
+public class CalendarRuleTest {
+
+  private CalendarRule rule = CalendarRule.fromString(
+      "0900 1730; MON-THU 0800 1800; SAT 1000 1400; SUN closed; 2015-12-25 closed; 2015-12-24 0900 1300");
+
+  @Test
+  public void shouldUseWeekdayHours() {
+    assertEquals(true, rule.test(booking("2015-08-17 08:00 10")));
+    assertEquals(false, rule.test(booking("2015-08-21 08:00 2")));
+    assertEquals(true, rule.test(booking("2015-08-21 09:00 2")));
+    assertEquals(true, rule.test(booking("2015-08-22 10:00 4")));
+    assertEquals(false, rule.test(booking("2015-08-22 10:00 5")));
+    assertEquals(false, rule.test(booking("2015-08-23 10:00 1")));
+  }
+
+  @Test
+  public void shouldUseDateExceptions() {
+    assertEquals(false, rule.test(booking("2015-12-25 10:00 1")));
+    assertEquals(true, rule.test(booking("2015-12-24 09:00 4")));
+    assertEquals(false, rule.test(booking("2015-12-24 09:00 5")));
+    assertEquals(true, rule.test(booking("2015-12-23 08:00 10")));
+  }
+
+  @Test
+  public void shouldUseFarApartDateExceptions() {
+    CalendarRule calendar = CalendarRule.fromString(
+        "0900 1730; 0001-01-01 closed; 2015-12-24 1000 1200; 9999-12-31 closed; 2015-12-24 0900 1300");
+
+    assertNull(calendar.window(new LocalDate(1, 1, 1)));
+    assertNull(calendar.window(new LocalDate(9999, 12, 31)));
+    assertEquals(true, calendar.test(booking("2015-12-24 09:00 4")));
+    assertEquals(true, calendar.test(booking("2015-12-23 09:00 8")));
+    assertEquals(new Interval(new DateTime(5000, 6, 2, 9, 0), new DateTime(5000, 6, 2, 17, 30)),
+        calendar.window(new LocalDate(5000, 6, 2)));
+  }
+
+  @Test
+  public void shouldReturnWindows() {
+    assertEquals(new Interval(new DateTime(2015, 12, 24, 9, 0), new DateTime(2015, 12, 24, 13, 0)),
+        rule.window(new LocalDate(2015, 12, 24)));
+    assertEquals(new Interval(new DateTime(2015, 8, 17, 8, 0), new DateTime(2015, 8, 17, 18, 0)),
+        rule.window(new LocalDate(2015, 8, 17)));
+    assertNull(rule.window(new LocalDate(2015, 12, 25)));
+    assertNull(rule.window(new LocalDate(2015, 8, 23)));
+  }
+
+  @Test
+  public void shouldMatchOpenHoursRuleWithoutExceptions() {
+    Random random = new Random(23);
+    CalendarRule calendar = CalendarRule.fromString("0900 1730;");
+    OpenHoursRule openHours = OpenHoursRule.fromString("0900 1730");
+    CompiledRules compiled = CompiledRules.compile(Collections.singletonList(calendar));
+    for (int i = 0; i < 10_000; i++) {
+      DateTime start = new DateTime(2015, 1, 1, 0, 0).plusMinutes(random.nextInt(365 * 24 * 60));
+      Booking booking = new Booking(start, "EMP001", start, start.plusMinutes(random.nextInt(16 * 60)));
+      assertEquals(openHours.test(booking), calendar.test(booking));
+      assertEquals(openHours.test(booking), compiled.test(booking));
+    }
+  }
+
+  @Test
+  public void shouldKeepPlainHeaderAsOpenHoursRule() {
+    assertTrue(CalendarRule.fromHeader("0900 1730") instanceof OpenHoursRule);
+    assertTrue(CalendarRule.fromHeader("0900 1730; SUN closed") instanceof CalendarRule);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldThrowIAEOnUnknownWeekday() {
+    CalendarRule.fromString("0900 1730; MOO closed");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldThrowIAEOnBadDate() {
+    CalendarRule.fromString("0900 1730; 2015-13-01 closed");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldThrowIAEOnMissingTime() {
+    CalendarRule.fromString("0900 1730; MON 0800");
+  }
+
+  private static Booking booking(String scheduleLine) {
+    return Booking.fromString("2015-08-10 10:17:06 EMP001", scheduleLine);
+  }
+}
@@ -0,0 +1,67 @@
+package com.marketlogicsoftware;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+public class CompiledRulesTest {
+
+  @Test
+  public void shouldMatchOpenHoursRuleOnRandomBookings() {
+    Random random = new Random(17);
+    DateTimeZone[] zones = {DateTimeZone.UTC, DateTimeZone.forID("Europe/Berlin"),
+        DateTimeZone.forID("America/New_York"), DateTimeZone.forOffsetHours(-11)};
+    for (int round = 0; round < 50; round++) {
+      List<BookingRule> rules = Arrays.asList(randomOpenHours(random), randomOpenHours(random));
+      CompiledRules compiled = CompiledRules.compile(rules);
+      for (int i = 0; i < 2000; i++) {
+        DateTimeZone zone = zones[random.nextInt(zones.length)];
+        DateTime start = new DateTime(2015, 1, 1, 0, 0, zone)
+            .plusMillis(random.nextInt(365 * 24 * 60 * 60) * 1000 + random.nextInt(2) * random.nextInt(1000));
+        DateTime end = start.plusSeconds(random.nextInt(20 * 60 * 60) - 60 * 60);
+        Booking booking = new Booking(start, "EMP001", start, end);
+
+        boolean expected = rules.stream().allMatch(rule -> rule.test(booking));
+        assertEquals(booking + " " + rules, expected, compiled.test(booking));
+      }
+    }
+  }
+
+  @Test
+  public void shouldTestCustomRulesThroughFallback() {
+    BookingRule noEmp002 = booking -> !booking.getBookedBy().equals("EMP002");
+    CompiledRules compiled = CompiledRules.compile(Arrays.asList(noEmp002, OpenHoursRule.fromString("0900 1730")));
+
+    assertEquals(true, compiled.test(Booking.fromString("2015-08-17 10:17:06 EMP001", "2015-08-21 09:00 2")));
+    assertEquals(false, compiled.test(Booking.fromString("2015-08-17 10:17:06 EMP002", "2015-08-21 09:00 2")));
+    assertEquals(false, compiled.test(Booking.fromString("2015-08-17 10:17:06 EMP001", "2015-08-21 17:00 2")));
+  }
+
+  @Test
+  public void shouldTestCheapRulesFirst() {
+    BookingRule custom = mock(BookingRule.class);
+    when(custom.test(any(Booking.class))).thenReturn(true);
+    CompiledRules compiled = CompiledRules.compile(Arrays.asList(custom, OpenHoursRule.fromString("0900 1730")));
+
+    compiled.test(Booking.fromString("2015-08-17 10:17:06 EMP001", "2015-08-21 17:00 2"));
+
+    verify(custom, never()).test(any(Booking.class));
+  }
+
+  private static OpenHoursRule randomOpenHours(Random random) {
+    int opening = random.nextInt(24 * 60);
+    int closing = random.nextInt(10) == 0 ? random.nextInt(24 * 60) : opening + random.nextInt(24 * 60 - opening);
+    return OpenHoursRule.fromString(String.format("%02d%02d %02d%02d", opening / 60, opening % 60, closing / 60,
+        closing % 60));
+  }
+}
@@ -0,0 +1,121 @@
+package com.marketlogicsoftware;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+import org.junit.Test;
+
+public class ConcurrentSchedulerTest {
+
+  private Booking validBooking1 = Booking.fromString("2015-08-17 10:17:06 EMP001", "2015-08-21 09:00 2");
+  private Booking overlappingBooking1 = Booking.fromString("2015-08-17 10:17:06 EMP001", "2015-08-21 10:00 2");
+  private Booking multiDayBooking = Booking.fromString("2015-08-17 10:17:06 EMP001", "2015-08-20 20:00 14");
+
+  @Test
+  public void shouldNotAllowOverlappingBooking() {
+    ConcurrentScheduler scheduler = ConcurrentScheduler.withRules();
+
+    assertEquals(true, scheduler.bookTry(validBooking1));
+    assertEquals(false, scheduler.bookTry(overlappingBooking1));
+  }
+
+  @Test
+  public void shouldNotAllowOverlapAcrossDays() {
+    ConcurrentScheduler scheduler = ConcurrentScheduler.withRules();
+
+    assertEquals(true, scheduler.bookTry(multiDayBooking));
+    assertEquals(false, scheduler.bookTry(validBooking1));
+  }
+
+  @Test
+  public void shouldOutputSameAsScheduler() {
+    OpenHoursRule rule = OpenHoursRule.fromString("0900 1730");
+    Scheduler scheduler = Scheduler.withRules(rule);
+    ConcurrentScheduler concurrentScheduler = ConcurrentScheduler.withRules(rule);
+    for (Booking booking : new Booking[]{validBooking1, overlappingBooking1, multiDayBooking}) {
+      assertEquals(scheduler.bookTry(booking), concurrentScheduler.bookTry(booking));
+    }
+
+    assertEquals(scheduler.output(), concurrentScheduler.output());
+  }
+
+  @Test
+  public void shouldNeverAdmitOverlappingBookingsUnderContention() throws Exception {
+    ConcurrentScheduler scheduler = ConcurrentScheduler.withRules();
+    int threads = 8;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<Integer>> results = new ArrayList<>();
+    for (int thread = 0; thread < threads; thread++) {
+      Random random = new Random(thread);
+      String bookedBy = "EMP" + thread;
+      results.add(executor.submit((Callable<Integer>) () -> {
+        start.await();
+        int accepted = 0;
+        for (int i = 0; i < 20_000; i++) {
+          DateTime startTime = new DateTime(2015, 8, 21 + random.nextInt(4), 0, 0).plusMinutes(random.nextInt(1440));
+          DateTime endTime = startTime.plusMinutes(1 + random.nextInt(240));
+          if (scheduler.bookTry(new Booking(startTime, bookedBy, startTime, endTime))) {
+            accepted++;
+          }
+        }
+        return accepted;
+      }));
+    }
+    start.countDown();
+    int accepted = 0;
+    for (Future<Integer> result : results) {
+      accepted += result.get();
+    }
+    executor.shutdown();
+
+    List<Booking> bookings = new ArrayList<>(scheduler.getBookings());
+    bookings.sort(Comparator.comparing(Booking::getStartTime));
+    assertEquals(accepted, bookings.size());
+    for (int i = 1; i < bookings.size(); i++) {
+      Booking previous = bookings.get(i - 1);
+      Booking current = bookings.get(i);
+      assertTrue(previous + " overlaps " + current, !previous.getEndTime().isAfter(current.getStartTime()));
+    }
+  }
+
+  @Test
+  public void shouldCancelAndRescheduleAcrossDays() {
+    ConcurrentScheduler scheduler = ConcurrentScheduler.withRules();
+    scheduler.bookTry(multiDayBooking);
+
+    Optional<Booking> moved = scheduler.reschedule(multiDayBooking, new DateTime(2015, 8, 25, 9, 0),
+        Duration.standardHours(2));
+
+    assertTrue(moved.isPresent());
+    assertEquals(true, scheduler.bookTry(validBooking1));
+    assertEquals(false, scheduler.cancel(multiDayBooking));
+    assertEquals(true, scheduler.cancel(moved.get()));
+    assertEquals(Collections.singletonList(validBooking1), new ArrayList<>(scheduler.getBookings()));
+  }
+
+  @Test
+  public void shouldKeepOldIntervalIfRescheduleOverlaps() {
+    ConcurrentScheduler scheduler = ConcurrentScheduler.withRules();
+    scheduler.bookTry(validBooking1);
+    Booking other = Booking.fromString("2015-08-17 10:17:06 EMP002", "2015-08-22 09:00 2");
+    scheduler.bookTry(other);
+
+    assertEquals(Optional.empty(), scheduler.reschedule(validBooking1, new DateTime(2015, 8, 22, 10, 0),
+        Duration.standardHours(1)));
+    assertEquals(false, scheduler.bookTry(overlappingBooking1));
+  }
+}
@@ -0,0 +1,138 @@
+package com.marketlogicsoftware;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ExternalSortBookingLoaderTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void shouldMatchSequentialPathOnExample() throws Exception {
+    String input = "0900 1730\n"
+        + "2015-08-17 10:17:06 EMP001\n"
+        + "2015-08-21 09:00 2\n"
+        + "2015-08-16 12:34:56 EMP002\n"
+        + "2015-08-21 09:00 2\n"
+        + "2015-08-16 09:28:23 EMP003\n"
+        + "2015-08-22 14:00 2\n"
+        + "2015-08-17 11:23:45 EMP004\n"
+        + "2015-08-22 16:00 1\n"
+        + "2015-08-15 17:29:12 EMP005\n"
+        + "2015-08-21 16:00 3\n";
+
+    assertSameOutput(input, 2);
+    assertSameOutput(input, ExternalSortBookingLoader.DEFAULT_RUN_SIZE);
+  }
+
+  @Test
+  public void shouldMatchSequentialPathOnRandomInput() throws Exception {
+    String input = "0800 1800\n" + randomInput(2000) + "2015-08-01 00:00:00 DANGLING";
+
+    for (int runSize : new int[]{1, 7, 500, 100000}) {
+      assertSameOutput(input, runSize);
+    }
+  }
+
+  @Test
+  public void shouldMergeManySmallRunsWithBoundedFanIn() throws Exception {
+    File runs = folder.newFolder();
+    String input = randomInput(2000);
+    Scheduler sequential = Scheduler.withRules(OpenHoursRule.fromString("0800 1800"));
+    sequential.bookAllInBookingOrder(new BufferedReader(new StringReader(input)));
+
+    for (int runSize : new int[]{1, 2, 5}) {
+      int[] maxRunFiles = new int[1];
+      BookingRule countRunFiles = booking -> {
+        maxRunFiles[0] = Math.max(maxRunFiles[0], runs.list().length);
+        return true;
+      };
+      Scheduler external = Scheduler.withRules(OpenHoursRule.fromString("0800 1800"), countRunFiles);
+
+      new ExternalSortBookingLoader(runSize, 3, runs.toPath())
+          .bookAllInBookingOrder(new BufferedReader(new StringReader(input)), external);
+
+      assertEquals(sequential.output(), external.output());
+      assertTrue(maxRunFiles[0] <= 3);
+      assertArrayEquals(new String[0], runs.list());
+    }
+  }
+
+  @Test
+  public void shouldDeleteSpilledRuns() throws Exception {
+    File runs = folder.newFolder();
+    String records = "2015-08-17 10:17:06 EMP001\n2015-08-21 09:00 2\n"
+        + "2015-08-16 12:34:56 EMP002\n2015-08-21 09:00 2\n"
+        + "2015-08-16 09:28:23 EMP003\n2015-08-22 14:00 2\n";
+    Scheduler scheduler = Scheduler.withRules(OpenHoursRule.fromString("0900 1730"));
+
+    new ExternalSortBookingLoader(1, runs.toPath())
+        .bookAllInBookingOrder(new BufferedReader(new StringReader(records)), scheduler);
+
+    assertEquals(2, scheduler.getBookings().size());
+    assertArrayEquals(new String[0], runs.list());
+  }
+
+  @Test
+  public void shouldDeleteSpilledRunsOnMalformedRecord() throws Exception {
+    File runs = folder.newFolder();
+    String records = "2015-08-17 10:17:06 EMP001\n2015-08-21 09:00 2\n"
+        + "2015-08-16 12:34:56 EMP002\nILLEGAL\n";
+
+    try {
+      new ExternalSortBookingLoader(1, runs.toPath()).bookAllInBookingOrder(
+          new BufferedReader(new StringReader(records)), Scheduler.withRules(OpenHoursRule.fromString("0900 1730")));
+    } catch (IllegalArgumentException expected) {
+      assertArrayEquals(new String[0], runs.list());
+      return;
+    }
+    throw new AssertionError("Malformed record accepted");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldThrowIAEOnNonPositiveRunSize() {
+    new ExternalSortBookingLoader(0, folder.getRoot().toPath());
+  }
+
+  /**
+   * @return count random records, some with equal booked times.
+   */
+  private static String randomInput(int count) {
+    Random random = new Random(42);
+    StringBuilder input = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      input.append(String.format("2015-08-%02d %02d:%02d:%02d EMP%03d\n", 1 + random.nextInt(28),
+          random.nextInt(24), random.nextInt(60), random.nextInt(3), random.nextInt(50)));
+      input.append(String.format("2015-09-%02d %02d:%02d %d\n", 1 + random.nextInt(5), 7 + random.nextInt(12),
+          random.nextInt(2) * 30, 1 + random.nextInt(3)));
+    }
+    return input.toString();
+  }
+
+  private void assertSameOutput(String input, int runSize) throws IOException {
+    File file = folder.newFile();
+    Files.write(file.toPath(), input.getBytes(StandardCharsets.UTF_8));
+    Scheduler sequential;
+    try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+      sequential = Scheduler.withRules(OpenHoursRule.fromString(reader.readLine()));
+      sequential.bookAllInBookingOrder(reader);
+    }
+
+    Scheduler external = new ExternalSortBookingLoader(runSize, folder.getRoot().toPath()).load(file.toPath());
+
+    assertEquals(sequential.output(), external.output());
+  }
+}
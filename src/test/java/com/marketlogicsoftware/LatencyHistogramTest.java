@@ -0,0 +1,63 @@
+package com.marketlogicsoftware;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+  @Test
+  public void shouldKeepSmallValuesExact() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int value = 0; value < 64; value++) {
+      histogram.record(value);
+    }
+
+    assertEquals(64, histogram.getCount());
+    assertEquals(31, histogram.getValueAtShare(0.5));
+    assertEquals(63, histogram.getValueAtShare(1));
+    assertEquals(31.5, histogram.getMean(), 0);
+  }
+
+  @Test
+  public void shouldFindPercentilesWithinBucketPrecision() {
+    Random random = new Random(29);
+    long[] values = new long[100_000];
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 0; i < values.length; i++) {
+      values[i] = (long) Math.exp(random.nextDouble() * 30);
+      histogram.record(values[i]);
+    }
+    Arrays.sort(values);
+
+    for (double share : new double[]{0.01, 0.5, 0.9, 0.99, 0.999, 1}) {
+      long expected = values[(int) Math.ceil(share * values.length) - 1];
+      long actual = histogram.getValueAtShare(share);
+      assertTrue(share + ": " + expected + " " + actual, actual >= expected && actual <= expected + expected / 32);
+    }
+    assertEquals(values[values.length - 1], histogram.getMax());
+  }
+
+  @Test
+  public void shouldMapEveryValueIntoItsBucket() {
+    long[] values = {0, 1, 63, 64, 65, 127, 128, 1 << 20, (1L << 40) + 12345, Long.MAX_VALUE};
+    for (long value : values) {
+      int bucket = LatencyHistogram.bucket(value);
+      assertTrue(value + "", value <= LatencyHistogram.highestValue(bucket));
+      assertTrue(value + "", bucket == 0 || value > LatencyHistogram.highestValue(bucket - 1));
+    }
+  }
+
+  @Test
+  public void shouldCountConcurrentRecords() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    IntStream.range(0, 1_000_000).parallel().forEach(histogram::record);
+
+    assertEquals(1_000_000, histogram.getCount());
+    assertEquals(999_999, histogram.getMax());
+  }
+}
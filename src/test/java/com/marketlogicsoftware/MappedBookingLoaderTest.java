@@ -0,0 +1,89 @@
+package com.marketlogicsoftware;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MappedBookingLoaderTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final ForkJoinPool pool = new ForkJoinPool(4);
+
+  @After
+  public void shutDownPool() {
+    pool.shutdownNow();
+  }
+
+  @Test
+  public void shouldMatchSequentialPathOnExample() throws Exception {
+    String input = "0900 1730\n"
+        + "2015-08-17 10:17:06 EMP001\n"
+        + "2015-08-21 09:00 2\n"
+        + "2015-08-16 12:34:56 EMP002\n"
+        + "2015-08-21 09:00 2\n"
+        + "2015-08-16 09:28:23 EMP003\n"
+        + "2015-08-22 14:00 2\n"
+        + "2015-08-17 11:23:45 EMP004\n"
+        + "2015-08-22 16:00 1\n"
+        + "2015-08-15 17:29:12 EMP005\n"
+        + "2015-08-21 16:00 3\n";
+
+    assertSameOutput(input, 16);
+    assertSameOutput(input, MappedBookingLoader.DEFAULT_CHUNK_SIZE);
+  }
+
+  @Test
+  public void shouldMatchSequentialPathOnRandomInput() throws Exception {
+    Random random = new Random(42);
+    StringBuilder input = new StringBuilder("0800 1800\r\n");
+    for (int i = 0; i < 2000; i++) {
+      input.append(String.format("2015-08-%02d %02d:%02d:%02d EMP%03d\n", 1 + random.nextInt(28),
+          random.nextInt(24), random.nextInt(60), random.nextInt(3), random.nextInt(50)));
+      input.append(String.format("2015-09-%02d %02d:%02d %d%s", 1 + random.nextInt(5), 7 + random.nextInt(12),
+          random.nextInt(2) * 30, 1 + random.nextInt(3), i % 7 == 0 ? "\r\n" : "\n"));
+    }
+    input.append("2015-08-01 00:00:00 DANGLING");
+
+    for (int chunkSize : new int[]{1, 37, 1000, 100000}) {
+      assertSameOutput(input.toString(), chunkSize);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldThrowIAEOnMalformedRecord() throws Exception {
+    File file = write("0900 1730\n2015-08-17 10:17:06 EMP001\nILLEGAL\n");
+
+    new MappedBookingLoader(ForkJoinPool.commonPool(), 8).load(file.toPath());
+  }
+
+  private void assertSameOutput(String input, int chunkSize) throws IOException {
+    File file = write(input);
+    Scheduler sequential;
+    try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+      sequential = Scheduler.withRules(OpenHoursRule.fromString(reader.readLine()));
+      sequential.bookAllInBookingOrder(reader);
+    }
+
+    Scheduler parallel = new MappedBookingLoader(pool, chunkSize).load(file.toPath());
+
+    assertEquals(sequential.output(), parallel.output());
+  }
+
+  private File write(String input) throws IOException {
+    File file = folder.newFile();
+    Files.write(file.toPath(), input.getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+}
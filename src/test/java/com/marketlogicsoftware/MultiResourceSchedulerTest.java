@@ -0,0 +1,72 @@
+package com.marketlogicsoftware;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Optional;
+import org.junit.Test;
+
+public class MultiResourceSchedulerTest {
+
+  private Booking validBooking1 = Booking.fromString("2015-08-17 10:17:06 EMP001", "2015-08-21 09:00 2 ROOM1");
+  private Booking overlappingBooking1 = Booking.fromString("2015-08-17 10:17:06 EMP002", "2015-08-21 10:00 2");
+
+  @Test
+  public void shouldBookOnNamedResource() {
+    MultiResourceScheduler scheduler = MultiResourceScheduler.withRules();
+    scheduler.addResource("ROOM1");
+    scheduler.addResource("ROOM2");
+
+    assertEquals(true, scheduler.bookTry(validBooking1));
+    assertEquals(false, scheduler.bookTry(overlappingBooking1.withResourceId("ROOM1")));
+    assertEquals(true, scheduler.bookTry(overlappingBooking1.withResourceId("ROOM2")));
+    assertEquals(1, scheduler.getBookingsGrouped("ROOM2").size());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldThrowIAEOnUnknownResource() {
+    MultiResourceScheduler.withRules().bookTry(validBooking1);
+  }
+
+  @Test
+  public void shouldBookAnyFreeResourceOfGroup() {
+    MultiResourceScheduler scheduler = MultiResourceScheduler.withRules(OpenHoursRule.fromString("0900 1730"));
+    scheduler.addResource("ROOM1", "FLOOR1");
+    scheduler.addResource("ROOM2", "FLOOR1", "FLOOR2");
+    scheduler.addResource("ROOM3", "FLOOR2");
+
+    assertEquals(Optional.of(validBooking1), scheduler.bookAny("FLOOR1", validBooking1));
+    assertEquals("ROOM2", scheduler.bookAny("FLOOR1", overlappingBooking1).get().getResourceId());
+    assertEquals(Optional.empty(), scheduler.bookAny("FLOOR1", overlappingBooking1));
+    assertEquals("ROOM3", scheduler.bookAny("FLOOR2", overlappingBooking1).get().getResourceId());
+    assertEquals(3, scheduler.getBookings().size());
+  }
+
+  @Test
+  public void shouldReuseBusyResourceWhenItIsFree() {
+    MultiResourceScheduler scheduler = MultiResourceScheduler.withRules();
+    scheduler.addResource("ROOM1", "FLOOR1");
+    Booking later = Booking.fromString("2015-08-17 10:17:06 EMP002", "2015-08-21 13:00 2");
+
+    assertEquals(true, scheduler.bookAny("FLOOR1", validBooking1).isPresent());
+    assertEquals(true, scheduler.bookAny("FLOOR1", later).isPresent());
+    assertEquals(false, scheduler.bookAny("FLOOR1", overlappingBooking1).isPresent());
+  }
+
+  @Test
+  public void shouldFindFreeMemberAmongBusyOnes() {
+    MultiResourceScheduler scheduler = MultiResourceScheduler.withRules();
+    for (int room = 0; room < 5; room++) {
+      scheduler.addResource("ROOM" + room, "FLOOR1");
+      String hour = String.format("%02d", 9 + 2 * room);
+      scheduler.bookTry(Booking.fromString("2015-08-17 10:17:06 EMP001", "2015-08-21 " + hour + ":00 2 ROOM" + room));
+    }
+    Booking request = Booking.fromString("2015-08-17 10:17:06 EMP002", "2015-08-21 10:00 3");
+
+    assertEquals("ROOM2", scheduler.bookAny("FLOOR1", request).get().getResourceId());
+    assertEquals("ROOM3", scheduler.bookAny("FLOOR1", request).get().getResourceId());
+    assertEquals("ROOM4", scheduler.bookAny("FLOOR1", request).get().getResourceId());
+    assertEquals(Optional.empty(), scheduler.bookAny("FLOOR1", request));
+    assertEquals("ROOM0", scheduler.bookAny("FLOOR1",
+        Booking.fromString("2015-08-17 10:17:06 EMP002", "2015-08-21 11:00 2")).get().getResourceId());
+  }
+}
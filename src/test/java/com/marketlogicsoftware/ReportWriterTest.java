@@ -0,0 +1,40 @@
+package com.marketlogicsoftware;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+public class ReportWriterTest {
+
+  @Test
+  public void shouldWriteSameAsOutput() throws Exception {
+    Scheduler scheduler = Scheduler.withRules();
+    scheduler.bookTry(Booking.fromString("2015-08-17 10:17:06 EMP001", "2015-08-21 09:00 2"));
+    scheduler.bookTry(Booking.fromString("2015-08-17 10:17:06 ÇALIŞAN", "2015-08-22 23:00 1"));
+    scheduler.bookTry(Booking.fromString("2015-08-17 10:17:06 EMP003", "0999-01-02 00:05 3"));
+
+    assertEquals(scheduler.output(), write(scheduler));
+  }
+
+  @Test
+  public void shouldWriteSameAsOutputOverManyBuffers() throws Exception {
+    Random random = new Random(9);
+    Scheduler scheduler = Scheduler.withRules();
+    for (int i = 0; i < 50_000; i++) {
+      DateTime start = new DateTime(2015, 1, 1, 0, 0).plusMinutes(random.nextInt(500_000));
+      scheduler.bookTry(new Booking(start, "EMP" + random.nextInt(1000), start, start.plusMinutes(1 + random.nextInt(60))));
+    }
+
+    assertEquals(scheduler.output(), write(scheduler));
+  }
+
+  private static String write(Scheduler scheduler) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    scheduler.output(out);
+    return new String(out.toByteArray(), StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,153 @@
+package com.marketlogicsoftware;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+import org.junit.Test;
+
+public class SchedulerSnapshotTest {
+
+  private Booking validBooking1 = Booking.fromString("2015-08-17 10:17:06 EMP001", "2015-08-21 09:00 2");
+  private Booking validBooking2 = Booking.fromString("2015-08-17 10:17:06 EMP002", "2015-08-22 11:00 2");
+
+  @Test
+  public void shouldPublishAtBatchBoundaries() {
+    Scheduler scheduler = Scheduler.builder().snapshots().build();
+    SchedulerSnapshot empty = scheduler.snapshot();
+
+    scheduler.bookTry(validBooking1);
+    assertSame(empty, scheduler.snapshot());
+    scheduler.publishSnapshot();
+    SchedulerSnapshot first = scheduler.snapshot();
+    scheduler.bookAll(Arrays.asList(validBooking2));
+    SchedulerSnapshot second = scheduler.snapshot();
+    String output = scheduler.output();
+    scheduler.cancel(validBooking1);
+
+    assertEquals(0, empty.size());
+    assertEquals(ImmutableList.of(validBooking1), ImmutableList.copyOf(first.getBookings()));
+    assertEquals(ImmutableList.of(validBooking1, validBooking2), ImmutableList.copyOf(second.getBookings()));
+    assertEquals(2, second.getVersion());
+    assertEquals(output, second.output());
+    assertSame(second, scheduler.snapshot());
+  }
+
+  @Test
+  public void shouldShareUnchangedDays() {
+    Scheduler scheduler = Scheduler.builder().snapshots().build();
+    scheduler.bookAll(Arrays.asList(validBooking1, validBooking2));
+    SchedulerSnapshot first = scheduler.snapshot();
+
+    scheduler.cancel(validBooking1);
+    scheduler.publishSnapshot();
+    SchedulerSnapshot second = scheduler.snapshot();
+
+    LocalDate day = validBooking2.getStartTime().toLocalDate();
+    assertSame(first.getBookingsGrouped().get(day), second.getBookingsGrouped().get(day));
+    assertEquals(false, second.getBookingsGrouped().containsKey(validBooking1.getStartTime().toLocalDate()));
+    assertEquals(1, second.size());
+  }
+
+  @Test
+  public void shouldFollowBookingsOverManyDaysAndPublishes() {
+    Random random = new Random(5);
+    Scheduler scheduler = Scheduler.builder().snapshots().build();
+    DateTime origin = new DateTime(2015, 1, 1, 9, 0);
+    List<Booking> booked = new ArrayList<>();
+    for (int batch = 0; batch < 50; batch++) {
+      List<Booking> bookings = new ArrayList<>();
+      for (int i = 0; i < 20; i++) {
+        DateTime start = origin.plusDays(random.nextInt(1000)).plusHours(random.nextInt(8));
+        bookings.add(new Booking(origin, "EMP" + i, start, start.plusHours(1)));
+      }
+      scheduler.bookAll(bookings);
+      booked.addAll(bookings);
+      for (int i = 0; i < 10; i++) {
+        scheduler.cancel(booked.remove(random.nextInt(booked.size())));
+      }
+      scheduler.publishSnapshot();
+
+      SchedulerSnapshot snapshot = scheduler.snapshot();
+      assertEquals(scheduler.output(), snapshot.output());
+      assertEquals(scheduler.getBookings().size(), snapshot.size());
+    }
+  }
+
+  @Test
+  public void shouldAnswerAvailabilityLikeBookings() {
+    Random random = new Random(11);
+    Scheduler scheduler = Scheduler.builder().snapshots().bookingStore(new CompactBookingStore()).build();
+    DateTime origin = new DateTime(2015, 8, 1, 0, 0);
+    List<Booking> bookings = new ArrayList<>();
+    for (int i = 0; i < 2000; i++) {
+      DateTime start = origin.plusMinutes(30 * random.nextInt(10 * 48));
+      bookings.add(new Booking(origin, "EMP" + i, start, start.plusMinutes(30 * (1 + random.nextInt(60)))));
+    }
+    scheduler.bookAll(bookings);
+    SchedulerSnapshot snapshot = scheduler.snapshot();
+
+    assertEquals(scheduler.getBookings().size(), snapshot.size());
+    for (int i = 0; i < 1000; i++) {
+      DateTime start = origin.plusMinutes(random.nextInt(11 * 24 * 60));
+      DateTime end = start.plusMinutes(1 + random.nextInt(600));
+      boolean expected = scheduler.getBookings().stream()
+          .noneMatch(booking -> booking.getStartTime().isBefore(end) && booking.getEndTime().isAfter(start));
+      assertEquals(expected, snapshot.isAvailable(start, end));
+    }
+  }
+
+  @Test
+  public void shouldReadConsistentSnapshotsWhileBooking() throws Exception {
+    int batchSize = 8;
+    Scheduler scheduler = Scheduler.builder().snapshots().build();
+    AtomicBoolean done = new AtomicBoolean();
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<Integer> reads = executor.submit(() -> {
+        int count = 0;
+        long lastVersion = -1;
+        while (!done.get()) {
+          SchedulerSnapshot snapshot = scheduler.snapshot();
+          assertTrue(snapshot.getVersion() >= lastVersion);
+          assertEquals(snapshot.getVersion() * batchSize, snapshot.size());
+          assertEquals(snapshot.size(), ImmutableList.copyOf(snapshot.getBookings()).size());
+          lastVersion = snapshot.getVersion();
+          count++;
+        }
+        return count;
+      });
+      DateTime origin = new DateTime(2015, 8, 1, 9, 0);
+      for (int batch = 0; batch < 500; batch++) {
+        List<Booking> bookings = new ArrayList<>();
+        for (int i = 0; i < batchSize; i++) {
+          DateTime start = origin.plusDays(batch).plusHours(i);
+          bookings.add(new Booking(origin, "EMP001", start, start.plusHours(1)));
+        }
+        scheduler.bookAll(bookings);
+      }
+      done.set(true);
+
+      assertTrue(reads.get() > 0);
+      assertEquals(500 * batchSize, scheduler.snapshot().size());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void shouldThrowISEIfDisabled() {
+    Scheduler.withRules().snapshot();
+  }
+}
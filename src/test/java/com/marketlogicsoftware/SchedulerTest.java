@@ -5,11 +5,24 @@ import static org.hamcrest.collection.IsIterableContainingInAnyOrder.containsInA
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Mockito.mock;
 
+import com.google.common.collect.ImmutableList;
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.StringReader;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.stream.Collectors;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+import org.joda.time.Interval;
+import org.joda.time.LocalDate;
 import org.junit.Test;
 
 public class SchedulerTest {
@@ -79,4 +92,318 @@ public class SchedulerTest {
 
     assertEquals(scheduler.output(), expected);
   }
+
+  @Test
+  public void shouldFindFreeSlotsInOpenHours() {
+    Scheduler scheduler = Scheduler.withRules(OpenHoursRule.fromString("0900 1730"));
+    scheduler.bookTry(validBooking1);
+    scheduler.bookTry(validBooking2);
+
+    List<Interval> slots = scheduler.findFreeSlots(new DateTime(2015, 8, 21, 0, 0), new DateTime(2015, 8, 23, 0, 0),
+        Duration.standardHours(2), 10)
+        .collect(Collectors.toList());
+
+    assertEquals(2, slots.size());
+    assertEquals(new Interval(new DateTime(2015, 8, 21, 13, 0), new DateTime(2015, 8, 21, 15, 0)), slots.get(0));
+    assertEquals(new Interval(new DateTime(2015, 8, 22, 9, 0), new DateTime(2015, 8, 22, 11, 0)), slots.get(1));
+  }
+
+  @Test
+  public void shouldFindLaterSlotOfGapIfRuleRejectsItsStart() {
+    BookingRule notBeforeTen = booking -> booking.getStartTime().getHourOfDay() >= 10;
+    Scheduler scheduler = Scheduler.withRules(notBeforeTen);
+    scheduler.bookTry(Booking.fromString("2015-08-17 10:17:06 EMP001", "2015-08-21 12:00 1"));
+
+    List<Interval> slots = scheduler.findFreeSlots(new DateTime(2015, 8, 21, 8, 0), new DateTime(2015, 8, 21, 18, 0),
+        Duration.standardHours(1), 10)
+        .collect(Collectors.toList());
+
+    assertEquals(2, slots.size());
+    assertEquals(new Interval(new DateTime(2015, 8, 21, 10, 0), new DateTime(2015, 8, 21, 11, 0)), slots.get(0));
+    assertEquals(new Interval(new DateTime(2015, 8, 21, 13, 0), new DateTime(2015, 8, 21, 14, 0)), slots.get(1));
+  }
+
+  @Test
+  public void shouldFindFreeSlotsBetweenBookings() {
+    Scheduler scheduler = Scheduler.withRules();
+    scheduler.bookTry(validBooking1);
+    scheduler.bookTry(Booking.fromString("2015-08-17 10:17:06 EMP001", "2015-08-21 12:00 2"));
+
+    List<Interval> slots = scheduler.findFreeSlots(new DateTime(2015, 8, 21, 8, 0), new DateTime(2015, 8, 21, 18, 0),
+        Duration.standardHours(1), 10)
+        .collect(Collectors.toList());
+
+    assertEquals(3, slots.size());
+    assertEquals(new DateTime(2015, 8, 21, 8, 0), slots.get(0).getStart());
+    assertEquals(new DateTime(2015, 8, 21, 11, 0), slots.get(1).getStart());
+    assertEquals(new DateTime(2015, 8, 21, 14, 0), slots.get(2).getStart());
+    for (Interval slot : slots) {
+      assertEquals(true, scheduler.bookTry(new Booking(slot.getStart(), "EMP002", slot.getStart(), slot.getEnd())));
+    }
+  }
+
+  @Test
+  public void shouldReportOutcomeOfEveryBooking() {
+    Scheduler scheduler = Scheduler.withRules(OpenHoursRule.fromString("0900 1730"));
+    Booking afterHours = Booking.fromString("2015-08-17 10:17:06 EMP002", "2015-08-21 17:00 2");
+
+    BookingOutcome[] outcomes = scheduler.bookAll(Arrays.asList(validBooking1, afterHours, overlappingBooking1,
+        validBooking2));
+
+    BookingOutcome[] expected = {BookingOutcome.ACCEPTED, BookingOutcome.REJECTED_BY_RULE,
+        BookingOutcome.REJECTED_OVERLAP, BookingOutcome.ACCEPTED};
+    assertEquals(Arrays.asList(expected), Arrays.asList(outcomes));
+    assertThat(scheduler.getBookings(), containsInAnyOrder(validBooking1, validBooking2));
+  }
+
+  @Test
+  public void shouldBookAllSameAsBookTryInBookingOrder() {
+    Random random = new Random(3);
+    for (int round = 0; round < 10; round++) {
+      Booking[] bookings = new Booking[500 + random.nextInt(2000)];
+      for (int i = 0; i < bookings.length; i++) {
+        DateTime startTime = new DateTime(2015, 8, 21 + random.nextInt(3), 8, 0).plusMinutes(30 * random.nextInt(20));
+        bookings[i] = new Booking(new DateTime(2015, 8, 1, 0, 0).plusMinutes(random.nextInt(100_000)), "EMP" + i,
+            startTime, startTime.plusHours(1 + random.nextInt(3)));
+      }
+      Scheduler expected = Scheduler.withRules(OpenHoursRule.fromString("0900 1730"));
+      expected.bookTry(validBooking1);
+      Booking[] sorted = bookings.clone();
+      Arrays.sort(sorted, Comparator.comparing(Booking::getBookedTime));
+      Arrays.stream(sorted).forEach(expected::bookTry);
+      Scheduler actual = Scheduler.withRules(OpenHoursRule.fromString("0900 1730"));
+      actual.bookTry(validBooking1);
+
+      actual.bookAll(Arrays.asList(bookings));
+
+      assertEquals(expected.output(), actual.output());
+    }
+  }
+
+  @Test
+  public void shouldKeepBookingsWithSameBookingTime() throws Exception {
+    Scheduler scheduler = Scheduler.withRules(OpenHoursRule.fromString("0900 1730"));
+
+    String input = "2015-08-17 10:17:06 EMP001\n"
+        + "2015-08-21 09:00 2\n"
+        + "2015-08-17 10:17:06 EMP002\n"
+        + "2015-08-21 10:00 2\n"
+        + "2015-08-17 10:17:06 EMP003\n"
+        + "2015-08-21 11:00 2\n"
+        + "2015-08-16 10:17:06 EMP004\n"
+        + "2015-08-22 11:00 2\n"
+        + "2015-08-16 10:17:06 EMP005\n"
+        + "2015-08-22 12:00 2\n";
+
+    InputStream stream = new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8));
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream))) {
+      scheduler.bookAllInBookingOrder(reader);
+    }
+
+    String expected = "2015-08-21\n"
+        + "09:00 11:00 EMP001\n"
+        + "11:00 13:00 EMP003\n"
+        + "2015-08-22\n"
+        + "11:00 13:00 EMP004\n";
+
+    assertEquals(expected, scheduler.output());
+  }
+
+  @Test
+  public void shouldRejectEmptyIntervalByRuleLikeBookTry() throws Exception {
+    Scheduler scheduler = Scheduler.withRules(OpenHoursRule.fromString("0900 1730"));
+    Scheduler reference = Scheduler.withRules(OpenHoursRule.fromString("0900 1730"));
+    String input = "2015-08-17 10:17:06 EMP001\n"
+        + "2015-08-21 09:00 2\n"
+        + "2015-08-17 11:17:06 EMP002\n"
+        + "2015-08-21 08:00 0\n"
+        + "2015-08-17 12:17:06 EMP003\n"
+        + "2015-08-21 14:00 2\n";
+
+    try (BufferedReader reader = new BufferedReader(new StringReader(input))) {
+      scheduler.bookAllInBookingOrder(reader);
+    }
+    assertEquals(true, reference.bookTry(Booking.fromString("2015-08-17 10:17:06 EMP001", "2015-08-21 09:00 2")));
+    assertEquals(false, reference.bookTry(Booking.fromString("2015-08-17 11:17:06 EMP002", "2015-08-21 08:00 0")));
+    assertEquals(true, reference.bookTry(Booking.fromString("2015-08-17 12:17:06 EMP003", "2015-08-21 14:00 2")));
+
+    assertEquals(reference.output(), scheduler.output());
+  }
+
+  @Test
+  public void shouldKeepBookingsBeforeEmptyIntervalMatchingRules() throws Exception {
+    Scheduler scheduler = Scheduler.withRules(OpenHoursRule.fromString("0900 1730"));
+    String input = "2015-08-17 10:17:06 EMP001\n"
+        + "2015-08-21 09:00 2\n"
+        + "2015-08-17 11:17:06 EMP002\n"
+        + "2015-08-21 12:00 0\n"
+        + "2015-08-17 12:17:06 EMP003\n"
+        + "2015-08-21 14:00 2\n";
+
+    try (BufferedReader reader = new BufferedReader(new StringReader(input))) {
+      scheduler.bookAllInBookingOrder(reader);
+      throw new AssertionError("Empty interval accepted");
+    } catch (IllegalArgumentException expected) {
+      // bookings tried before stay booked
+    }
+
+    assertEquals("2015-08-21\n09:00 11:00 EMP001\n", scheduler.output());
+    assertEquals(false, scheduler.bookTry(Booking.fromString("2015-08-17 13:17:06 EMP004", "2015-08-21 10:00 1")));
+    assertEquals(true, scheduler.bookTry(Booking.fromString("2015-08-17 13:17:06 EMP003", "2015-08-21 14:00 2")));
+  }
+
+  @Test
+  public void shouldKeepBookingsConsistentIfRuleThrows() {
+    Booking throwing = Booking.fromString("2015-08-17 11:17:06 EMP002", "2015-08-21 12:00 1");
+    Booking later = Booking.fromString("2015-08-17 12:17:06 EMP003", "2015-08-21 14:00 2");
+    Scheduler scheduler = Scheduler.withRules(booking -> {
+      if (booking == throwing) {
+        throw new IllegalStateException("Rule failed");
+      }
+      return true;
+    });
+    BookingOutcome[] outcomes = new BookingOutcome[3];
+
+    try {
+      scheduler.bookAll(new Booking[]{validBooking1, throwing, later}, outcomes);
+      throw new AssertionError("Rule did not throw");
+    } catch (IllegalStateException expected) {
+      // first booking stays booked
+    }
+
+    assertEquals(BookingOutcome.ACCEPTED, outcomes[0]);
+    assertEquals(null, outcomes[1]);
+    assertEquals(null, outcomes[2]);
+    assertThat(scheduler.getBookings(), containsInAnyOrder(validBooking1));
+    assertEquals(false, scheduler.bookTry(overlappingBooking1));
+    assertEquals(true, scheduler.bookTry(later));
+  }
+
+  @Test
+  public void shouldFreeIntervalOnCancel() {
+    Scheduler scheduler = Scheduler.withRules();
+    scheduler.bookTry(validBooking1);
+
+    assertEquals(true, scheduler.cancel(validBooking1));
+    assertEquals(false, scheduler.cancel(validBooking1));
+    assertEquals(true, scheduler.getBookings().isEmpty());
+    assertEquals(true, scheduler.bookTry(overlappingBooking1));
+  }
+
+  @Test
+  public void shouldRescheduleOverItsOwnInterval() {
+    Scheduler scheduler = Scheduler.withRules(OpenHoursRule.fromString("0900 1730"));
+    scheduler.bookTry(validBooking1);
+
+    Optional<Booking> moved = scheduler.reschedule(validBooking1, new DateTime(2015, 8, 21, 10, 0),
+        Duration.standardHours(3));
+
+    assertEquals(Optional.of(validBooking1.withSchedule(new DateTime(2015, 8, 21, 10, 0),
+        new DateTime(2015, 8, 21, 13, 0))), moved);
+    assertThat(scheduler.getBookings(), containsInAnyOrder(moved.get()));
+    assertEquals(true, scheduler.bookTry(Booking.fromString("2015-08-17 10:17:06 EMP002", "2015-08-21 09:00 1")));
+  }
+
+  @Test
+  public void shouldKeepOldIntervalIfRescheduleFails() {
+    Scheduler scheduler = Scheduler.withRules(OpenHoursRule.fromString("0900 1730"));
+    scheduler.bookTry(validBooking1);
+    scheduler.bookTry(validBooking2);
+
+    assertEquals(Optional.empty(), scheduler.reschedule(validBooking1, new DateTime(2015, 8, 21, 10, 0),
+        Duration.standardHours(2)));
+    assertEquals(Optional.empty(), scheduler.reschedule(validBooking1, new DateTime(2015, 8, 21, 17, 0),
+        Duration.standardHours(2)));
+    assertEquals(Optional.empty(), scheduler.reschedule(overlappingBooking1, new DateTime(2015, 8, 22, 10, 0),
+        Duration.standardHours(2)));
+
+    assertThat(scheduler.getBookings(), containsInAnyOrder(validBooking1, validBooking2));
+    assertEquals(false, scheduler.bookTry(overlappingBooking1));
+  }
+
+  @Test
+  public void shouldKeepOldIntervalIfRescheduleRuleThrows() {
+    Scheduler scheduler = Scheduler.withRules(booking -> {
+      if (booking.getStartTime().getHourOfDay() == 15) {
+        throw new IllegalStateException("Rule failed");
+      }
+      return true;
+    });
+    scheduler.bookTry(validBooking1);
+
+    try {
+      scheduler.reschedule(validBooking1, new DateTime(2015, 8, 21, 15, 0), Duration.standardHours(1));
+      throw new AssertionError("Rule did not throw");
+    } catch (IllegalStateException expected) {
+      // booking stays at its old interval
+    }
+
+    assertThat(scheduler.getBookings(), containsInAnyOrder(validBooking1));
+    assertEquals(false, scheduler.bookTry(overlappingBooking1));
+    assertEquals(true, scheduler.cancel(validBooking1));
+  }
+
+  @Test
+  public void shouldCancelFromCompactStore() {
+    Scheduler scheduler = Scheduler.builder()
+        .bookingStore(new CompactBookingStore())
+        .build();
+    scheduler.bookTry(validBooking1);
+    scheduler.bookTry(validBooking2);
+
+    assertEquals(true, scheduler.cancel(validBooking1));
+    assertThat(scheduler.getBookings(), containsInAnyOrder(validBooking2));
+    assertEquals(true, scheduler.bookTry(Booking.fromString("2015-08-17 10:17:06 EMP002", "2015-08-21 09:00 2")));
+  }
+
+  @Test
+  public void shouldFindBookingsOverlappingInterval() {
+    Scheduler scheduler = Scheduler.withRules();
+    Booking overnight = Booking.fromString("2015-08-17 10:17:06 EMP002", "2015-08-20 20:00 12");
+    scheduler.bookTry(overnight);
+    scheduler.bookTry(validBooking1);
+    scheduler.bookTry(Booking.fromString("2015-08-17 10:17:06 EMP003", "2015-08-21 14:00 2"));
+
+    assertEquals(Arrays.asList(overnight, validBooking1), ImmutableList.copyOf(scheduler.getBookingsOverlapping(
+        new DateTime(2015, 8, 21, 7, 0), new DateTime(2015, 8, 21, 14, 0))));
+    assertEquals(Arrays.asList(validBooking1), ImmutableList.copyOf(scheduler.getBookingsOverlapping(
+        new DateTime(2015, 8, 21, 8, 0), new DateTime(2015, 8, 21, 11, 0))));
+    assertEquals(Arrays.asList(validBooking1), ImmutableList.copyOf(scheduler.getBookingsOverlapping(
+        new DateTime(2015, 8, 21, 10, 0), new DateTime(2015, 8, 21, 10, 30))));
+    assertEquals(true, scheduler.getBookingsOverlapping(new DateTime(2015, 8, 21, 11, 0),
+        new DateTime(2015, 8, 21, 14, 0)).isEmpty());
+  }
+
+  @Test
+  public void shouldFindBookingsOfEmployee() {
+    Scheduler scheduler = Scheduler.withRules();
+    Booking otherEmployee = Booking.fromString("2015-08-17 10:17:06 EMP002", "2015-08-21 12:00 2");
+    Booking nextMonth = Booking.fromString("2015-08-17 10:17:06 EMP001", "2015-09-01 09:00 2");
+    scheduler.bookAll(Arrays.asList(validBooking1, otherEmployee, nextMonth));
+
+    Collection<Booking> august = scheduler.getBookingsBy("EMP001", new DateTime(2015, 8, 1, 0, 0),
+        new DateTime(2015, 9, 1, 0, 0));
+    assertEquals(Arrays.asList(validBooking1), ImmutableList.copyOf(august));
+
+    scheduler.cancel(validBooking1);
+    assertEquals(true, august.isEmpty());
+  }
+
+  @Test
+  public void shouldPageThroughDateRange() {
+    Scheduler scheduler = Scheduler.withRules();
+    for (int day = 20; day < 25; day++) {
+      for (int hour = 9; hour < 12; hour++) {
+        scheduler.bookTry(new Booking(new DateTime(2015, 8, 17, 10, 0), "EMP001",
+            new DateTime(2015, 8, day, hour, 0), new DateTime(2015, 8, day, hour + 1, 0)));
+      }
+    }
+
+    List<List<Booking>> pages = ImmutableList.copyOf(scheduler.getBookingPages(new LocalDate(2015, 8, 21),
+        new LocalDate(2015, 8, 24), 4));
+
+    assertEquals(Arrays.asList(4, 4, 1), pages.stream().map(List::size).collect(Collectors.toList()));
+    assertEquals(new DateTime(2015, 8, 21, 9, 0), pages.get(0).get(0).getStartTime());
+    assertEquals(new DateTime(2015, 8, 23, 11, 0), pages.get(2).get(0).getStartTime());
+  }
 }
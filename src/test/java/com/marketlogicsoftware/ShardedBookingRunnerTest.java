@@ -0,0 +1,56 @@
+package com.marketlogicsoftware;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.ImmutableSortedMap;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ShardedBookingRunnerTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void shouldMatchSingleSchedulerWithTwoWorkers() throws Exception {
+    Random random = new Random(17);
+    StringBuilder input = new StringBuilder("0900 1730; SAT 1000 1400; SUN closed\r\n");
+    for (int i = 0; i < 3000; i++) {
+      input.append(String.format("2015-08-%02d %02d:%02d:%02d EMP%03d\n", 1 + random.nextInt(28),
+          random.nextInt(24), random.nextInt(60), random.nextInt(3), random.nextInt(50)));
+      input.append(String.format("2015-%02d-%02d %02d:%02d %d\n", 9 + random.nextInt(3), 1 + random.nextInt(28),
+          7 + random.nextInt(12), random.nextInt(2) * 30, 1 + random.nextInt(3)));
+    }
+    File file = folder.newFile();
+    Files.write(file.toPath(), input.toString().getBytes(StandardCharsets.UTF_8));
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    new MappedBookingLoader().load(file.toPath()).output(expected);
+
+    ByteArrayOutputStream actual = new ByteArrayOutputStream();
+    new ShardedBookingRunner(2).run(file.toPath(), actual);
+
+    assertEquals(expected.toString("UTF-8"), actual.toString("UTF-8"));
+  }
+
+  @Test
+  public void shouldCutDatesIntoBalancedRanges() {
+    ImmutableSortedMap<String, Integer> counts = ImmutableSortedMap.of("2015-08-21", 5, "2015-08-22", 1,
+        "2015-08-23", 4, "2015-08-24", 10);
+
+    assertEquals(Arrays.asList("2015-08-23", "2015-08-24"), ShardedBookingRunner.partition(counts, 2));
+    assertEquals(Arrays.asList("2015-08-21", "2015-08-23", "2015-08-24"), ShardedBookingRunner.partition(counts, 4));
+    assertEquals(Arrays.asList("2015-08-24"), ShardedBookingRunner.partition(counts, 1));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldThrowIAEOnNoShards() {
+    new ShardedBookingRunner(0);
+  }
+}
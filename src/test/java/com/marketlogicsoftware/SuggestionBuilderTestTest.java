@@ -2,11 +2,13 @@ package com.marketlogicsoftware;
 
 import static org.junit.Assert.*;
 
+import com.marketlogicsoftware.SuggestionBuilderTest.StopWords;
 import com.marketlogicsoftware.SuggestionBuilderTest.Suggestion;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
 import org.junit.Test;
 
 /**
@@ -22,8 +24,34 @@ public class SuggestionBuilderTestTest {
         "like", "chewing", "gum", ".");
     Set<Suggestion> suggestions = SuggestionBuilderTest.buildSuggestionsFromTokenStream(tokens.iterator(), stopWord);
 
-    int tmp = 1 + 1;
+    Set<Suggestion> expected = Arrays.asList("beautiful", "beautiful girl", "beautiful girl from", "girl", "girl from",
+        "from", "farmers", "farmers market", "market", "like", "like chewing", "like chewing gum", "chewing",
+        "chewing gum", "gum").stream()
+        .map(Suggestion::new)
+        .collect(Collectors.toSet());
+    assertEquals(expected, suggestions);
+  }
 
+  @Test
+  public void shouldEmitEveryWindowOfLongRunsOnce() {
+    List<String> tokens = Arrays.asList("one", "two", "three", "four", "one", "two", "three");
+    Set<Suggestion> suggestions = SuggestionBuilderTest.buildSuggestionsFromTokenStream(tokens.iterator(),
+        new HashSet<>());
+
+    assertEquals(12, suggestions.size());
+    assertTrue(suggestions.contains(new Suggestion("two three four")));
+    assertTrue(suggestions.contains(new Suggestion("four one two")));
+    assertFalse(suggestions.contains(new Suggestion("one two three four")));
+  }
 
+  @Test
+  public void shouldMatchStopWordsIgnoringCase() {
+    StopWords stopWords = new StopWords(new HashSet<>(Arrays.asList("is", "Can", "the")));
+
+    assertTrue(stopWords.contains("THE"));
+    assertTrue(stopWords.contains("can"));
+    assertTrue(stopWords.contains("iS"));
+    assertFalse(stopWords.contains("them"));
+    assertFalse(new StopWords(new HashSet<>()).contains("the"));
   }
 }
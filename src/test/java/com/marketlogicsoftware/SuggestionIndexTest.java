@@ -0,0 +1,90 @@
+package com.marketlogicsoftware;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.primitives.UnsignedBytes;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SuggestionIndexTest {
+
+  private static final String LETTERS = "abcü ";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void shouldCompleteLikeScanningAllSuggestions() throws Exception {
+    Random random = new Random(13);
+    List<RankedSuggestion> suggestions = new ArrayList<>();
+    for (int i = 0; i < 3000; i++) {
+      suggestions.add(new RankedSuggestion(word(random, 1 + random.nextInt(8)), random.nextInt(50)));
+    }
+    SuggestionIndex built = SuggestionIndex.build(suggestions);
+    File file = folder.newFile();
+    built.writeTo(file.toPath());
+    SuggestionIndex mapped = SuggestionIndex.map(file.toPath());
+    List<RankedSuggestion> unique = merge(suggestions);
+
+    assertEquals(unique.size(), mapped.size());
+    for (int i = 0; i < 300; i++) {
+      String prefix = word(random, random.nextInt(4));
+      int k = random.nextInt(20);
+      List<RankedSuggestion> expected = unique.stream()
+          .filter(suggestion -> suggestion.getText().startsWith(prefix))
+          .sorted(Comparator.comparingLong(RankedSuggestion::getCount).reversed()
+              .thenComparing(suggestion -> suggestion.getText().getBytes(StandardCharsets.UTF_8),
+                  UnsignedBytes.lexicographicalComparator()))
+          .limit(k)
+          .collect(Collectors.toList());
+
+      assertEquals(expected, built.complete(prefix, k));
+      assertEquals(expected, mapped.complete(prefix, k));
+    }
+  }
+
+  @Test
+  public void shouldIndexBuiltSuggestions() {
+    List<String> tokens = Arrays.asList("The", "beautiful", "girl", "from", "the", "farmers", "market", ".", "I",
+        "like", "chewing", "gum", ".");
+    SuggestionIndex index = SuggestionIndex.fromSuggestions(SuggestionBuilderTest.buildSuggestionsFromTokenStream(
+        tokens.iterator(), new HashSet<>(Arrays.asList("is", "can", "the"))));
+
+    assertEquals(15, index.size());
+    assertEquals(Arrays.asList(new RankedSuggestion("girl", 1), new RankedSuggestion("girl from", 1),
+        new RankedSuggestion("gum", 1)), index.complete("g", 5));
+    assertEquals(new ArrayList<>(), index.complete("x", 5));
+  }
+
+  @Test
+  public void shouldCompleteEmptyIndex() {
+    assertEquals(new ArrayList<>(), SuggestionIndex.build(new ArrayList<>()).complete("", 3));
+  }
+
+  private static List<RankedSuggestion> merge(List<RankedSuggestion> suggestions) {
+    return suggestions.stream()
+        .collect(Collectors.groupingBy(RankedSuggestion::getText,
+            Collectors.summingLong(RankedSuggestion::getCount)))
+        .entrySet().stream()
+        .map(entry -> new RankedSuggestion(entry.getKey(), entry.getValue()))
+        .collect(Collectors.toList());
+  }
+
+  private static String word(Random random, int length) {
+    StringBuilder word = new StringBuilder();
+    for (int i = 0; i < length; i++) {
+      word.append(LETTERS.charAt(random.nextInt(LETTERS.length())));
+    }
+    return word.toString();
+  }
+}
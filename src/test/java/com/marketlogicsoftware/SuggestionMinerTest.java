@@ -0,0 +1,112 @@
+package com.marketlogicsoftware;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.marketlogicsoftware.SuggestionBuilderTest.StopWords;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import org.junit.After;
+import org.junit.Test;
+
+public class SuggestionMinerTest {
+
+  private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList("is", "can", "the"));
+  private static final String[] WORDS = {"the", "beautiful", "girl", "from", "farmers", "market", ".", "like",
+      "chewing", "gum", "is", "I", "can", "sweet", "red", "apple"};
+
+  private final ForkJoinPool pool = new ForkJoinPool(4);
+
+  @After
+  public void shutDownPool() {
+    pool.shutdownNow();
+  }
+
+  @Test
+  public void shouldRankExampleSentences() {
+    List<String> sentence = Arrays.asList("The", "beautiful", "girl", "from", "the", "farmers", "market", ".", "I",
+        "like", "chewing", "gum", ".");
+    List<String> other = Arrays.asList("I", "like", "the", "farmers", "market");
+
+    List<RankedSuggestion> top = new SuggestionMiner(STOP_WORDS).top(Arrays.asList(sentence, other, sentence), 3);
+
+    assertEquals(Arrays.asList(new RankedSuggestion("farmers", 3), new RankedSuggestion("farmers market", 3),
+        new RankedSuggestion("like", 3)), top);
+  }
+
+  @Test
+  public void shouldCountLikeSingleThreadOnLargeCorpus() {
+    List<List<String>> documents = corpus(new Random(5), 200, 3 * SuggestionMiner.LEAF_SIZE);
+    Map<String, Long> expected = new HashMap<>();
+    StopWords stopWords = new StopWords(STOP_WORDS);
+    for (List<String> document : documents) {
+      SuggestionBuilderTest.forEachSuggestion(document.iterator(), stopWords, text -> expected.merge(text, 1L,
+          Long::sum));
+    }
+    List<RankedSuggestion> expectedTop = expected.entrySet().stream()
+        .map(entry -> new RankedSuggestion(entry.getKey(), entry.getValue()))
+        .sorted(RankedSuggestion.BY_RANK)
+        .limit(50)
+        .collect(Collectors.toList());
+
+    List<RankedSuggestion> top = new SuggestionMiner(STOP_WORDS, pool, 0).top(documents, 50);
+
+    assertEquals(expectedTop, top);
+  }
+
+  @Test
+  public void shouldKeepHeavyHittersWithPhraseLimit() {
+    Random random = new Random(9);
+    List<List<String>> documents = new ArrayList<>();
+    long total = 0;
+    for (int i = 0; i < 2000; i++) {
+      List<String> document = new ArrayList<>();
+      for (int j = 0; j < 50; j++) {
+        document.add(j % 5 == 0 ? "frequent" : "w" + random.nextInt(100_000));
+        document.add(".");
+        total++;
+      }
+      documents.add(document);
+    }
+
+    List<RankedSuggestion> top = new SuggestionMiner(STOP_WORDS, pool, 100).top(documents, 1);
+
+    assertEquals("frequent", top.get(0).getText());
+    assertTrue(top.get(0).getCount() <= 20_000);
+    assertTrue(top.get(0).getCount() >= 20_000 - total / 101);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldThrowIAEOnNonPositiveK() {
+    new SuggestionMiner(STOP_WORDS).top(new ArrayList<List<String>>(), 0);
+  }
+
+  /**
+   * Random documents of short sentences, and one document of about the given length.
+   */
+  private static List<List<String>> corpus(Random random, int documentCount, int longDocumentLength) {
+    List<List<String>> documents = new ArrayList<>();
+    for (int i = 0; i < documentCount; i++) {
+      documents.add(words(random, random.nextInt(500)));
+    }
+    documents.add(random.nextInt(documentCount), words(random, longDocumentLength));
+    documents.add(new ArrayList<>());
+    return documents;
+  }
+
+  private static List<String> words(Random random, int length) {
+    List<String> words = new ArrayList<>(length);
+    for (int i = 0; i < length; i++) {
+      words.add(WORDS[random.nextInt(WORDS.length)]);
+    }
+    return words;
+  }
+}